@@ -6,20 +6,26 @@ import static com.google.common.util.concurrent.Futures.transform;
 import static org.opensha2.calc.AsyncList.createWithCapacity;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opensha2.calc.Transforms.ClusterCurveConsolidator;
 import org.opensha2.calc.Transforms.ClusterGroundMotionsToCurves;
 import org.opensha2.calc.Transforms.ClusterInputsToGroundMotions;
+import org.opensha2.calc.Transforms.ClusterInputsToSiteInputs;
 import org.opensha2.calc.Transforms.ClusterSourceToInputs;
 import org.opensha2.calc.Transforms.CurveConsolidator;
 import org.opensha2.calc.Transforms.CurveSetConsolidator;
 import org.opensha2.calc.Transforms.GroundMotionsToCurves;
 import org.opensha2.calc.Transforms.InputsToGroundMotions;
+import org.opensha2.calc.Transforms.InputsToSiteInputs;
+import org.opensha2.calc.Transforms.SourceToCurves;
 import org.opensha2.calc.Transforms.SourceToInputs;
+import org.opensha2.calc.Transforms.SourcesToCurveSet;
 import org.opensha2.data.ArrayXY_Sequence;
 import org.opensha2.eq.model.ClusterSource;
 import org.opensha2.eq.model.ClusterSourceSet;
@@ -32,7 +38,6 @@ import org.opensha2.gmm.GroundMotionModel;
 import org.opensha2.gmm.Imt;
 
 import com.google.common.base.Function;
-import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Table;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -55,16 +60,48 @@ final class AsyncCalc {
 	static final AsyncList<InputList> toInputs(
 			final SourceSet<? extends Source> sourceSet,
 			final Site site,
+			final PreparedCalc calc,
 			final Executor ex) {
 
-		Function<Source, InputList> function = new SourceToInputs(site);
+		return toInputs(sourceSet, Collections.singletonList(site), calc, ex);
+	}
+
+	/**
+	 * Convert a SourceSet to a List of future HazardInputs for the first of a
+	 * List of site variants. Sources are those that may contribute to the
+	 * curves of any variant.
+	 */
+	static final AsyncList<InputList> toInputs(
+			final SourceSet<? extends Source> sourceSet,
+			final List<Site> sites,
+			final PreparedCalc calc,
+			final Executor ex) {
+
+		Function<Source, InputList> function = new SourceToInputs(sites.get(0));
 		AsyncList<InputList> result = AsyncList.create();
-		for (Source source : sourceSet.iterableForLocation(site.location)) {
+		for (Source source : calc.sources(sourceSet, sites)) {
 			result.add(transform(immediateFuture(source), function, ex));
 		}
 		return result;
 	}
 
+	/**
+	 * Convert a List of future HazardInputs to a List of future HazardInputs
+	 * with the site terms of the supplied Site.
+	 */
+	static final AsyncList<InputList> toSiteInputs(
+			final AsyncList<InputList> inputsList,
+			final Site site,
+			final Executor ex) {
+
+		Function<InputList, InputList> function = new InputsToSiteInputs(site);
+		AsyncList<InputList> result = createWithCapacity(inputsList.size());
+		for (ListenableFuture<InputList> inputs : inputsList) {
+			result.add(transform(inputs, function, ex));
+		}
+		return result;
+	}
+
 	/**
 	 * Convert a List of future HazardInputs to a List of future
 	 * HazardGroundMotions.
@@ -72,11 +109,10 @@ final class AsyncCalc {
 	static final AsyncList<GroundMotions> toGroundMotions(
 			final AsyncList<InputList> inputsList,
 			final SourceSet<? extends Source> sourceSet,
-			final Set<Imt> imts,
+			final PreparedCalc calc,
 			final Executor ex) {
 
-		Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
-		Table<Gmm, Imt, GroundMotionModel> gmmInstances = Gmm.instances(gmms, imts);
+		Table<Gmm, Imt, GroundMotionModel> gmmInstances = calc.gmmInstances(sourceSet);
 		Function<InputList, GroundMotions> function = new InputsToGroundMotions(gmmInstances);
 		AsyncList<GroundMotions> result = createWithCapacity(inputsList.size());
 		for (ListenableFuture<InputList> hazardInputs : inputsList) {
@@ -91,10 +127,12 @@ final class AsyncCalc {
 	 */
 	static final AsyncList<HazardCurves> toHazardCurves(
 			final AsyncList<GroundMotions> groundMotionsList,
+			final SourceSet<? extends Source> sourceSet,
 			final CalcConfig config,
 			final Executor ex) {
 
-		Function<GroundMotions, HazardCurves> function = new GroundMotionsToCurves(config);
+		Function<GroundMotions, HazardCurves> function = new GroundMotionsToCurves(config,
+			sourceSet.groundMotionModels());
 		AsyncList<HazardCurves> result = createWithCapacity(groundMotionsList.size());
 		for (ListenableFuture<GroundMotions> groundMotions : groundMotionsList) {
 			result.add(transform(groundMotions, function, ex));
@@ -102,6 +140,44 @@ final class AsyncCalc {
 		return result;
 	}
 
+	/**
+	 * Convert a List of Sources directly to a future HazardCurveSet using
+	 * fork-join decomposition. Sources are split into adaptively sized chunks,
+	 * each of which is processed sequentially, in lieu of creating one future
+	 * per Source per calculation step. The supplied Executor must be a
+	 * {@code ForkJoinPool}.
+	 */
+	static final ListenableFuture<HazardCurveSet> toHazardCurveSet(
+			final List<Source> sources,
+			final SourceSet<? extends Source> sourceSet,
+			final Site site,
+			final PreparedCalc calc,
+			final ForkJoinPool pool) {
+
+		Function<List<Source>, HazardCurveSet> function = new SourcesToCurveSet(sourceSet, site,
+			calc.gmmInstances(sourceSet), calc.config);
+		return transform(immediateFuture(sources), function, pool);
+	}
+
+	/**
+	 * Convert a SourceSet directly to a List of future HazardCurves without
+	 * retaining intermediate inputs and ground motions.
+	 */
+	static final AsyncList<HazardCurves> toHazardCurves(
+			final SourceSet<? extends Source> sourceSet,
+			final Site site,
+			final PreparedCalc calc,
+			final Executor ex) {
+
+		Function<Source, HazardCurves> function = new SourceToCurves(site,
+			calc.gmmInstances(sourceSet), sourceSet.groundMotionModels(), calc.config);
+		AsyncList<HazardCurves> result = AsyncList.create();
+		for (Source source : calc.sources(sourceSet, site)) {
+			result.add(transform(immediateFuture(source), function, ex));
+		}
+		return result;
+	}
+
 	/**
 	 * Reduce a List of future HazardCurves to a future HazardCurveSet.
 	 */
@@ -153,27 +229,22 @@ final class AsyncCalc {
 			final Site site,
 			final CalcConfig config) {
 
-		Stopwatch sw = Stopwatch.createStarted();
-
 		Function<SystemSourceSet, InputList> inputFn = new SystemSourceSet.ToInputs(site);
 		InputList inputs = inputFn.apply(sourceSet);
-		System.out.println("Inputs: " + inputs.size() + "  " + sw);
 
-		Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
-		Table<Gmm, Imt, GroundMotionModel> gmmInstances = Gmm.instances(gmms, config.imts);
+		Table<Gmm, Imt, GroundMotionModel> gmmInstances =
+			PreparedCalc.gmmInstances(sourceSet, config);
 		Function<InputList, GroundMotions> gmFn = new InputsToGroundMotions(gmmInstances);
 		GroundMotions groundMotions = gmFn.apply(inputs);
-		System.out.println("GroundMotions: " + sw);
 
 		Map<Imt, ArrayXY_Sequence> modelCurves = config.logModelCurves;
-		Function<GroundMotions, HazardCurves> curveFn = new GroundMotionsToCurves(config);
+		Function<GroundMotions, HazardCurves> curveFn = new GroundMotionsToCurves(config,
+			sourceSet.groundMotionModels());
 		HazardCurves hazardCurves = curveFn.apply(groundMotions);
-		System.out.println("HazardCurves: " + sw);
 
 		Function<List<HazardCurves>, HazardCurveSet> consolidateFn = new CurveConsolidator(
 			sourceSet, modelCurves);
 		HazardCurveSet curveSet = consolidateFn.apply(ImmutableList.of(hazardCurves));
-		System.out.println("CurveSet: " + sw);
 
 		return curveSet;
 	}
@@ -184,30 +255,25 @@ final class AsyncCalc {
 			final Site site,
 			final CalcConfig config) {
 
-//		Stopwatch sw = Stopwatch.createStarted();
-
 		List<HazardCurveSet> curveSetList = new ArrayList<>();
 		for (Source source : sourceSet.iterableForLocation(site.location)) {
 			
 			Function<Source, InputList> inputFn = new SourceToInputs(site);
 			InputList inputs = inputFn.apply(source);
-//			System.out.println("Inputs: " + inputs.size() + "  " + sw);
 
-			Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
-			Table<Gmm, Imt, GroundMotionModel> gmmInstances = Gmm.instances(gmms, config.imts);
+			Table<Gmm, Imt, GroundMotionModel> gmmInstances =
+				PreparedCalc.gmmInstances(sourceSet, config);
 			Function<InputList, GroundMotions> gmFn = new InputsToGroundMotions(gmmInstances);
 			GroundMotions groundMotions = gmFn.apply(inputs);
-//			System.out.println("GroundMotions: " + sw);
 
 			Map<Imt, ArrayXY_Sequence> modelCurves = config.logModelCurves;
-			Function<GroundMotions, HazardCurves> curveFn = new GroundMotionsToCurves(config);
+			Function<GroundMotions, HazardCurves> curveFn = new GroundMotionsToCurves(config,
+				sourceSet.groundMotionModels());
 			HazardCurves hazardCurves = curveFn.apply(groundMotions);
-//			System.out.println("HazardCurves: " + sw);
 
 			Function<List<HazardCurves>, HazardCurveSet> consolidateFn = new CurveConsolidator(
 				sourceSet, modelCurves);
 			HazardCurveSet curveSet = consolidateFn.apply(ImmutableList.of(hazardCurves));
-//			System.out.println("CurveSet: " + sw);
 
 			curveSetList.add(curveSet);
 		}
@@ -239,6 +305,18 @@ final class AsyncCalc {
 			ex);
 	}
 
+	/**
+	 * Convert a future SystemInputs to a future SystemInputs with the site
+	 * terms of the supplied Site.
+	 */
+	static final ListenableFuture<InputList> toSiteInputs(
+			final ListenableFuture<InputList> inputs,
+			final Site site,
+			final Executor ex) {
+
+		return transform(inputs, new InputsToSiteInputs(site), ex);
+	}
+
 	/**
 	 * Convert a future List of SystemInputs to a future List of
 	 * SystemGroundMotions.
@@ -246,11 +324,10 @@ final class AsyncCalc {
 	static final ListenableFuture<GroundMotions> toSystemGroundMotions(
 			final ListenableFuture<InputList> inputs,
 			final SystemSourceSet sourceSet,
-			final Set<Imt> imts,
+			final PreparedCalc calc,
 			final Executor ex) {
 
-		Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
-		Table<Gmm, Imt, GroundMotionModel> gmmInstances = Gmm.instances(gmms, imts);
+		Table<Gmm, Imt, GroundMotionModel> gmmInstances = calc.gmmInstances(sourceSet);
 		Function<InputList, GroundMotions> function = new InputsToGroundMotions(gmmInstances);
 		return transform(inputs, function, ex);
 	}
@@ -260,10 +337,12 @@ final class AsyncCalc {
 	 */
 	static final ListenableFuture<HazardCurves> toSystemCurves(
 			final ListenableFuture<GroundMotions> groundMotions,
+			final SystemSourceSet sourceSet,
 			final CalcConfig config,
 			final Executor ex) {
 
-		Function<GroundMotions, HazardCurves> function = new GroundMotionsToCurves(config);
+		Function<GroundMotions, HazardCurves> function = new GroundMotionsToCurves(config,
+			sourceSet.groundMotionModels());
 		return transform(groundMotions, function, ex);
 	}
 
@@ -287,16 +366,49 @@ final class AsyncCalc {
 	static final AsyncList<ClusterInputs> toClusterInputs(
 			final ClusterSourceSet sourceSet,
 			final Site site,
+			final PreparedCalc calc,
+			final Executor ex) {
+
+		return toClusterInputs(sourceSet, Collections.singletonList(site), calc, ex);
+	}
+
+	/**
+	 * Convert a ClusterSourceSet to a List of future HazardInputs Lists for
+	 * the first of a List of site variants. Sources are those that may
+	 * contribute to the curves of any variant.
+	 */
+	static final AsyncList<ClusterInputs> toClusterInputs(
+			final ClusterSourceSet sourceSet,
+			final List<Site> sites,
+			final PreparedCalc calc,
 			final Executor ex) {
 
-		Function<ClusterSource, ClusterInputs> function = new ClusterSourceToInputs(site);
+		Function<ClusterSource, ClusterInputs> function = new ClusterSourceToInputs(
+			sites.get(0));
 		AsyncList<ClusterInputs> result = AsyncList.create();
-		for (ClusterSource source : sourceSet.iterableForLocation(site.location)) {
+		for (ClusterSource source : calc.sources(sourceSet, sites)) {
 			result.add(transform(immediateFuture(source), function, ex));
 		}
 		return result;
 	}
 
+	/**
+	 * Convert a List of future ClusterInputs to a List of future ClusterInputs
+	 * with the site terms of the supplied Site.
+	 */
+	static final AsyncList<ClusterInputs> toSiteClusterInputs(
+			final AsyncList<ClusterInputs> inputsList,
+			final Site site,
+			final Executor ex) {
+
+		Function<ClusterInputs, ClusterInputs> function = new ClusterInputsToSiteInputs(site);
+		AsyncList<ClusterInputs> result = createWithCapacity(inputsList.size());
+		for (ListenableFuture<ClusterInputs> inputs : inputsList) {
+			result.add(transform(inputs, function, ex));
+		}
+		return result;
+	}
+
 	/**
 	 * Convert a List of future HazardInputs Lists to a List of future
 	 * HazardGroundMotions Lists.
@@ -304,11 +416,10 @@ final class AsyncCalc {
 	static final AsyncList<ClusterGroundMotions> toClusterGroundMotions(
 			final AsyncList<ClusterInputs> inputsList,
 			final ClusterSourceSet sourceSet,
-			final Set<Imt> imts,
+			final PreparedCalc calc,
 			final Executor ex) {
 
-		Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
-		Table<Gmm, Imt, GroundMotionModel> gmmInstances = Gmm.instances(gmms, imts);
+		Table<Gmm, Imt, GroundMotionModel> gmmInstances = calc.gmmInstances(sourceSet);
 		Function<ClusterInputs, ClusterGroundMotions> function =
 			new ClusterInputsToGroundMotions(gmmInstances);
 		AsyncList<ClusterGroundMotions> result = createWithCapacity(inputsList.size());
@@ -324,11 +435,12 @@ final class AsyncCalc {
 	 */
 	static final AsyncList<ClusterCurves> toClusterCurves(
 			final AsyncList<ClusterGroundMotions> clusterGroundMotions,
+			final ClusterSourceSet sourceSet,
 			final CalcConfig config,
 			final Executor ex) {
 
 		Function<ClusterGroundMotions, ClusterCurves> function =
-			new ClusterGroundMotionsToCurves(config);
+			new ClusterGroundMotionsToCurves(config, sourceSet.groundMotionModels());
 		AsyncList<ClusterCurves> result = createWithCapacity(clusterGroundMotions.size());
 		for (ListenableFuture<ClusterGroundMotions> groundMotions : clusterGroundMotions) {
 			result.add(transform(groundMotions, function, ex));
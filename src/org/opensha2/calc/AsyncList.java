@@ -4,8 +4,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 /**
@@ -39,6 +41,19 @@ final class AsyncList<T> extends AbstractList<ListenableFuture<T>> {
 		return new AsyncList<T>(initialCapacity);
 	}
 
+	/**
+	 * Creates a new {@code AsynList} of immediate futures for the supplied
+	 * values.
+	 * @return a new {@code AsynList}
+	 */
+	static <T> AsyncList<T> immediate(Collection<? extends T> values) {
+		AsyncList<T> list = new AsyncList<T>(values.size());
+		for (T value : values) {
+			list.add(Futures.<T> immediateFuture(value));
+		}
+		return list;
+	}
+
 	@Override public boolean add(ListenableFuture<T> future) {
 		return delegate.add(checkNotNull(future));
 	}
@@ -23,6 +23,7 @@ import org.opensha2.data.XY_Sequence;
 import org.opensha2.gmm.Imt;
 import org.opensha2.util.Parsing;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -67,8 +68,17 @@ public final class CalcConfig {
 	private final double[] defaultImls;
 	private final Map<Imt, double[]> customImls;
 	final DeaggData deagg;
+	final boolean retainGroundMotions; // per-rupture detail for deaggregation
+	private final GmmCacheData gmmCacheData;
+	private final PruningData pruningData;
+	final MapData map;
+	final OutputData output;
+	final ServiceData service;
 	private final SiteSet sites;
 
+	final GroundMotionCache gmmCache; // null if disabled
+	final SourcePruner pruner; // null if disabled
+
 	final Map<Imt, ArrayXY_Sequence> modelCurves;
 	final Map<Imt, ArrayXY_Sequence> logModelCurves;
 
@@ -85,6 +95,13 @@ public final class CalcConfig {
 			double[] defaultImls,
 			Map<Imt, double[]> customImls,
 			DeaggData deagg,
+			boolean retainGroundMotions,
+			GmmCacheData gmmCacheData,
+			GroundMotionCache gmmCache,
+			PruningData pruningData,
+			MapData map,
+			OutputData output,
+			ServiceData service,
 			SiteSet sites,
 			Map<Imt, ArrayXY_Sequence> modelCurves,
 			Map<Imt, ArrayXY_Sequence> logModelCurves) {
@@ -96,9 +113,18 @@ public final class CalcConfig {
 		this.defaultImls = defaultImls;
 		this.customImls = customImls;
 		this.deagg = deagg;
+		this.retainGroundMotions = retainGroundMotions;
+		this.gmmCacheData = gmmCacheData;
+		this.pruningData = pruningData;
+		this.map = map;
+		this.output = output;
+		this.service = service;
 		this.sites = sites;
+		this.gmmCache = gmmCache;
 		this.modelCurves = modelCurves;
 		this.logModelCurves = logModelCurves;
+		this.pruner = pruningData.enabled ? new SourcePruner(pruningData, exceedanceModel,
+			truncationLevel, logModelCurves) : null;
 	}
 
 	private enum Key {
@@ -109,6 +135,12 @@ public final class CalcConfig {
 		DEFAULT_IMLS,
 		CUSTOM_IMLS,
 		DEAGG,
+		RETAIN_GROUND_MOTIONS,
+		GMM_CACHE,
+		PRUNING,
+		MAP,
+		OUTPUT,
+		SERVICE,
 		SITES;
 
 		private String label;
@@ -152,6 +184,32 @@ public final class CalcConfig {
 			.append("min=").append(deagg.εMin).append(", ")
 			.append("max=").append(deagg.εMax).append(", ")
 			.append("Δ=").append(deagg.Δε)
+			.append(format(Key.RETAIN_GROUND_MOTIONS)).append(retainGroundMotions)
+			.append(format(Key.GMM_CACHE))
+			.append("enabled=").append(gmmCacheData.enabled).append(", ")
+			.append("maxSize=").append(gmmCacheData.maxSize).append(", ")
+			.append("Δm=").append(gmmCacheData.magStep).append(", ")
+			.append("Δr=").append(gmmCacheData.distanceStep).append(", ")
+			.append("Δz=").append(gmmCacheData.depthStep).append(", ")
+			.append("Δθ=").append(gmmCacheData.angleStep)
+			.append(format(Key.PRUNING))
+			.append("enabled=").append(pruningData.enabled).append(", ")
+			.append("tolerance=").append(pruningData.tolerance)
+			.append(format(Key.MAP))
+			.append("refinementLevels=").append(map.refinementLevels).append(", ")
+			.append("tolerance=").append(map.tolerance).append(", ")
+			.append("returnPeriods=").append(Arrays.toString(map.returnPeriods))
+			.append(format(Key.OUTPUT))
+			.append("curves=").append(output.curves).append(", ")
+			.append("byType=").append(output.byType).append(", ")
+			.append("returnPeriods=").append(Arrays.toString(output.returnPeriods))
+			.append(format(Key.SERVICE))
+			.append("port=").append(service.port).append(", ")
+			.append("threads=").append(service.threads).append(", ")
+			.append("queueSize=").append(service.queueSize).append(", ")
+			.append("cacheSize=").append(service.cacheSize).append(", ")
+			.append("timeout=").append(service.timeout).append(", ")
+			.append("siteRounding=").append(service.siteRounding)
 			.append(format(Key.SITES)).append(sites)
 			.toString();
 	}
@@ -164,6 +222,14 @@ public final class CalcConfig {
 		return sites;
 	}
 
+	/**
+	 * Return whether per-rupture ground motions are retained in results, as
+	 * required for deaggregation.
+	 */
+	public boolean retainGroundMotions() {
+		return retainGroundMotions;
+	}
+
 	/**
 	 * Return the unmodifiable {@code Set} of IMTs for which calculations should
 	 * be performed.
@@ -211,6 +277,185 @@ public final class CalcConfig {
 
 	}
 
+	/**
+	 * Return the ground motion cache associated with this configuration, if
+	 * enabled.
+	 */
+	public Optional<GroundMotionCache> gmmCache() {
+		return Optional.fromNullable(gmmCache);
+	}
+
+	/**
+	 * Ground motion cache settings. The cache is disabled by default. Steps
+	 * define the quantization applied to magnitude, distance (rJB, rRup, rX),
+	 * depth (zTop, zHyp, width) and angle (dip, rake) inputs prior to cache
+	 * lookup; a step of 0 disables quantization. The maximum size bounds the
+	 * total number of cached ground motions across all calculation threads.
+	 * 
+	 * @see GroundMotionCache
+	 */
+	public static final class GmmCacheData {
+
+		public final boolean enabled;
+		public final long maxSize;
+
+		public final double magStep;
+		public final double distanceStep;
+		public final double depthStep;
+		public final double angleStep;
+
+		GmmCacheData() {
+			enabled = false;
+			maxSize = 1000000;
+
+			magStep = 0.0;
+			distanceStep = 0.0;
+			depthStep = 0.0;
+			angleStep = 0.0;
+		}
+
+	}
+
+	/**
+	 * Return the source pruner associated with this configuration, if enabled.
+	 */
+	public Optional<SourcePruner> sourcePruner() {
+		return Optional.fromNullable(pruner);
+	}
+
+	/**
+	 * Source pruning settings. Pruning is disabled by default. Sources whose
+	 * contribution to any hazard curve, bounded by their weighted total rate
+	 * and the probability of exceeding the lowest IML of each curve, is less
+	 * than {@code tolerance} are skipped.
+	 * 
+	 * @see SourcePruner
+	 */
+	public static final class PruningData {
+
+		public final boolean enabled;
+		public final double tolerance;
+
+		PruningData() {
+			enabled = false;
+			tolerance = 1e-12;
+		}
+
+	}
+
+	/**
+	 * Return the hazard map settings of this configuration.
+	 */
+	public MapData mapData() {
+		return map;
+	}
+
+	/**
+	 * Hazard map settings. Maps are computed at every node by default. If
+	 * {@code refinementLevels > 0}, a map is first computed on a grid that is
+	 * {@code 2^refinementLevels} times coarser than the target spacing, and
+	 * cells are recursively subdivided only where bilinear interpolation of
+	 * hazard curves misrepresents the ground motions at {@code returnPeriods}
+	 * (in years) by more than {@code tolerance} (in natural log units).
+	 */
+	public static final class MapData {
+
+		public final int refinementLevels;
+		public final double tolerance;
+		private final double[] returnPeriods;
+
+		MapData() {
+			refinementLevels = 0;
+			tolerance = 0.05;
+			returnPeriods = new double[] { 475.0, 2475.0 };
+		}
+
+		/**
+		 * Return the return periods (in years) at which map interpolation
+		 * error is evaluated.
+		 */
+		public double[] returnPeriods() {
+			return Arrays.copyOf(returnPeriods, returnPeriods.length);
+		}
+
+	}
+
+	/**
+	 * Return the result output settings of this configuration.
+	 */
+	public OutputData outputData() {
+		return output;
+	}
+
+	/**
+	 * Result output settings. By default, only full hazard curves are written.
+	 * If any {@code returnPeriods} (in years) are specified, the ground motions
+	 * at each return period are also written, both by {@code Imt} and as
+	 * uniform hazard spectra. Set {@code curves} to {@code false} to skip
+	 * writing curves. Set {@code byType} to {@code true} to also write the
+	 * results of each {@code SourceType} in a hazard map.
+	 * 
+	 * @see Results#writeReturnPeriodResults(java.nio.file.Path, java.util.List,
+	 *      double[], java.nio.file.OpenOption...)
+	 */
+	public static final class OutputData {
+
+		public final boolean curves;
+		public final boolean byType;
+		private final double[] returnPeriods;
+
+		OutputData() {
+			curves = true;
+			byType = false;
+			returnPeriods = new double[0];
+		}
+
+		/**
+		 * Return the return periods (in years) at which ground motions are
+		 * written.
+		 */
+		public double[] returnPeriods() {
+			return Arrays.copyOf(returnPeriods, returnPeriods.length);
+		}
+
+	}
+
+	/**
+	 * Return the hazard service settings of this configuration.
+	 */
+	public ServiceData serviceData() {
+		return service;
+	}
+
+	/**
+	 * Hazard service settings. A service listens on {@code port} and computes
+	 * at most {@code threads} sites at a time; up to {@code queueSize} further
+	 * requests wait for a thread and any others are rejected. Requests that
+	 * are not answered within {@code timeout} seconds fail. Up to
+	 * {@code cacheSize} results are cached, keyed by site location rounded to
+	 * the nearest multiple of {@code siteRounding} (in decimal degrees), Vs30,
+	 * and the set of {@code Imt}s requested.
+	 */
+	public static final class ServiceData {
+
+		public final int port;
+		public final int threads;
+		public final int queueSize;
+		public final long cacheSize;
+		public final double timeout;
+		public final double siteRounding;
+
+		ServiceData() {
+			port = 8080;
+			threads = Runtime.getRuntime().availableProcessors();
+			queueSize = 64;
+			cacheSize = 10000;
+			timeout = 60.0;
+			siteRounding = 0.01;
+		}
+
+	}
+
 	/**
 	 * Create a new calculation configuration builder from the resource at the
 	 * specified {@code path}.
@@ -248,6 +493,13 @@ public final class CalcConfig {
 		private double[] defaultImls;
 		private Map<Imt, double[]> customImls;
 		private DeaggData deagg;
+		private Boolean retainGroundMotions;
+		private GmmCacheData gmmCache;
+		private transient GroundMotionCache gmmCacheInstance; // shared by copies
+		private PruningData pruning;
+		private MapData map;
+		private OutputData output;
+		private ServiceData service;
 		private SiteSet sites;
 
 		public Builder copy(CalcConfig config) {
@@ -259,6 +511,13 @@ public final class CalcConfig {
 			this.defaultImls = config.defaultImls;
 			this.customImls = config.customImls;
 			this.deagg = config.deagg;
+			this.retainGroundMotions = config.retainGroundMotions;
+			this.gmmCache = config.gmmCacheData;
+			this.gmmCacheInstance = config.gmmCache;
+			this.pruning = config.pruningData;
+			this.map = config.map;
+			this.output = config.output;
+			this.service = config.service;
 			this.sites = config.sites;
 			return this;
 		}
@@ -273,6 +532,12 @@ public final class CalcConfig {
 				2.19, 3.28, 4.92, 7.38 };
 			this.customImls = Maps.newHashMap();
 			this.deagg = new DeaggData();
+			this.retainGroundMotions = true;
+			this.gmmCache = new GmmCacheData();
+			this.pruning = new PruningData();
+			this.map = new MapData();
+			this.output = new OutputData();
+			this.service = new ServiceData();
 			this.sites = new SiteSet(Lists.newArrayList(Site.builder().build()));
 			return this;
 		}
@@ -286,6 +551,15 @@ public final class CalcConfig {
 			if (that.defaultImls != null) this.defaultImls = that.defaultImls;
 			if (that.customImls != null) this.customImls = that.customImls;
 			if (that.deagg != null) this.deagg = that.deagg;
+			if (that.retainGroundMotions != null) this.retainGroundMotions = that.retainGroundMotions;
+			if (that.gmmCache != null) {
+				this.gmmCache = that.gmmCache;
+				this.gmmCacheInstance = that.gmmCacheInstance;
+			}
+			if (that.pruning != null) this.pruning = that.pruning;
+			if (that.map != null) this.map = that.map;
+			if (that.output != null) this.output = that.output;
+			if (that.service != null) this.service = that.service;
 			if (that.sites != null) this.sites = that.sites;
 			return this;
 		}
@@ -295,6 +569,11 @@ public final class CalcConfig {
 			return this;
 		}
 
+		public Builder retainGroundMotions(boolean retainGroundMotions) {
+			this.retainGroundMotions = retainGroundMotions;
+			return this;
+		}
+
 		private Map<Imt, ArrayXY_Sequence> createLogCurveMap() {
 			Map<Imt, ArrayXY_Sequence> curveMap = Maps.newEnumMap(Imt.class);
 			for (Imt imt : imts) {
@@ -330,6 +609,12 @@ public final class CalcConfig {
 			checkNotNull(defaultImls, MSSG, buildId, Key.DEFAULT_IMLS);
 			checkNotNull(customImls, MSSG, buildId, Key.CUSTOM_IMLS);
 			checkNotNull(deagg, MSSG, buildId, Key.DEAGG);
+			checkNotNull(retainGroundMotions, MSSG, buildId, Key.RETAIN_GROUND_MOTIONS);
+			checkNotNull(gmmCache, MSSG, buildId, Key.GMM_CACHE);
+			checkNotNull(pruning, MSSG, buildId, Key.PRUNING);
+			checkNotNull(map, MSSG, buildId, Key.MAP);
+			checkNotNull(output, MSSG, buildId, Key.OUTPUT);
+			checkNotNull(service, MSSG, buildId, Key.SERVICE);
 			checkNotNull(sites, MSSG, buildId, Key.SITES);
 			built = true;
 		}
@@ -339,9 +624,12 @@ public final class CalcConfig {
 			Set<Imt> finalImts = Sets.immutableEnumSet(imts);
 			Map<Imt, ArrayXY_Sequence> curves = createCurveMap();
 			Map<Imt, ArrayXY_Sequence> logCurves = createLogCurveMap();
+			GroundMotionCache cache = !gmmCache.enabled ? null :
+				(gmmCacheInstance != null) ? gmmCacheInstance : new GroundMotionCache(gmmCache);
 			return new CalcConfig(
 				resource, exceedanceModel, truncationLevel, finalImts,
-				defaultImls, customImls, deagg, sites, curves, logCurves);
+				defaultImls, customImls, deagg, retainGroundMotions, gmmCache, cache, pruning, map,
+				output, service, sites, curves, logCurves);
 		}
 
 	}
@@ -1,5 +1,7 @@
 package org.opensha2.calc;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static org.opensha2.calc.AsyncCalc.toClusterCurves;
 import static org.opensha2.calc.AsyncCalc.toClusterGroundMotions;
 import static org.opensha2.calc.AsyncCalc.toClusterInputs;
@@ -8,16 +10,20 @@ import static org.opensha2.calc.AsyncCalc.toHazardCurveSet;
 import static org.opensha2.calc.AsyncCalc.toHazardCurves;
 import static org.opensha2.calc.AsyncCalc.toHazardResult;
 import static org.opensha2.calc.AsyncCalc.toInputs;
+import static org.opensha2.calc.AsyncCalc.toSiteClusterInputs;
+import static org.opensha2.calc.AsyncCalc.toSiteInputs;
 import static org.opensha2.calc.AsyncCalc.toSystemCurves;
 import static org.opensha2.calc.AsyncCalc.toSystemGroundMotions;
 import static org.opensha2.calc.AsyncCalc.toSystemInputs;
 import static org.opensha2.eq.model.SourceType.CLUSTER;
 import static org.opensha2.eq.model.SourceType.SYSTEM;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.opensha2.data.ArrayXY_Sequence;
 import org.opensha2.eq.model.ClusterSourceSet;
@@ -27,6 +33,7 @@ import org.opensha2.eq.model.SourceSet;
 import org.opensha2.eq.model.SystemSourceSet;
 import org.opensha2.gmm.Imt;
 
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
@@ -44,7 +51,15 @@ public class Calcs {
 	// step will x-values be returned to linear space
 
 	/**
-	 * Compute a hazard curve using the supplied {@link Executor}.
+	 * Compute a hazard curve using the supplied {@link Executor}. If the
+	 * executor is a {@link ForkJoinPool}, the {@code Source}s of each
+	 * {@code SourceSet} (other than cluster and system sources) are processed
+	 * in adaptively sized chunks; otherwise each calculation step for each
+	 * {@code Source} is submitted separately.
+	 * 
+	 * <p>This method prepares the calculation for each call; when computing
+	 * curves at multiple sites, prefer
+	 * {@link #hazardCurve(PreparedCalc, Site, Executor)}.</p>
 	 * 
 	 * @param model to use
 	 * @param config
@@ -60,6 +75,29 @@ public class Calcs {
 			Executor executor)
 			throws InterruptedException, ExecutionException {
 
+		return hazardCurve(PreparedCalc.create(model, config), site, executor);
+	}
+
+	/**
+	 * Compute a hazard curve for a prepared calculation using the supplied
+	 * {@link Executor}.
+	 * 
+	 * @param calc prepared model and configuration
+	 * @param site of interest
+	 * @param executor Executor to use in calculation
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @see #hazardCurve(HazardModel, CalcConfig, Site, Executor)
+	 */
+	public static HazardResult hazardCurve(
+			PreparedCalc calc,
+			Site site,
+			Executor executor)
+			throws InterruptedException, ExecutionException {
+
+		HazardModel model = calc.model;
+		CalcConfig config = calc.config;
+
 		AsyncList<HazardCurveSet> curveSetCollector = AsyncList.createWithCapacity(model.size());
 
 		for (SourceSet<? extends Source> sourceSet : model) {
@@ -68,14 +106,15 @@ public class Calcs {
 
 				ClusterSourceSet clusterSourceSet = (ClusterSourceSet) sourceSet;
 
-				AsyncList<ClusterInputs> inputs = toClusterInputs(clusterSourceSet, site, executor);
+				AsyncList<ClusterInputs> inputs = toClusterInputs(clusterSourceSet, site, calc,
+					executor);
 				if (inputs.isEmpty()) continue; // all sources out of range
 
 				AsyncList<ClusterGroundMotions> groundMotions = toClusterGroundMotions(inputs,
-					clusterSourceSet, config.imts, executor);
+					clusterSourceSet, calc, executor);
 
-				AsyncList<ClusterCurves> clusterCurves = toClusterCurves(groundMotions, config,
-					executor);
+				AsyncList<ClusterCurves> clusterCurves = toClusterCurves(groundMotions,
+					clusterSourceSet, config, executor);
 
 				ListenableFuture<HazardCurveSet> curveSet = toHazardCurveSet(clusterCurves,
 					clusterSourceSet, config.logModelCurves, executor);
@@ -94,10 +133,10 @@ public class Calcs {
 					executor);
 
 				ListenableFuture<GroundMotions> groundMotions = toSystemGroundMotions(inputs,
-					systemSourceSet, config.imts, executor);
+					systemSourceSet, calc, executor);
 
-				ListenableFuture<HazardCurves> systemCurves = toSystemCurves(groundMotions, config,
-					executor);
+				ListenableFuture<HazardCurves> systemCurves = toSystemCurves(groundMotions,
+					systemSourceSet, config, executor);
 
 				ListenableFuture<HazardCurveSet> curveSet = toHazardCurveSet(systemCurves,
 					systemSourceSet, config.logModelCurves, executor);
@@ -109,16 +148,37 @@ public class Calcs {
 				// AsyncCalc.systemToCurves(systemSourceSet, site, config);
 				// curveSetCollector.add(Futures.immediateFuture(curveSet));
 
+			} else if (executor instanceof ForkJoinPool) {
+
+				List<Source> sources = Lists.<Source> newArrayList(calc.sources(sourceSet, site));
+				if (sources.isEmpty()) continue; // all sources out of range
+
+				ListenableFuture<HazardCurveSet> curveSet = toHazardCurveSet(sources, sourceSet,
+					site, calc, (ForkJoinPool) executor);
+
+				curveSetCollector.add(curveSet);
+
+			} else if (!config.retainGroundMotions) {
+
+				AsyncList<HazardCurves> hazardCurves = toHazardCurves(sourceSet, site, calc,
+					executor);
+				if (hazardCurves.isEmpty()) continue; // all sources out of range
+
+				ListenableFuture<HazardCurveSet> curveSet = toHazardCurveSet(hazardCurves,
+					sourceSet, config.logModelCurves, executor);
+
+				curveSetCollector.add(curveSet);
+
 			} else {
 
-				AsyncList<InputList> inputs = toInputs(sourceSet, site, executor);
+				AsyncList<InputList> inputs = toInputs(sourceSet, site, calc, executor);
 				if (inputs.isEmpty()) continue; // all sources out of range
 
 				AsyncList<GroundMotions> groundMotions = toGroundMotions(inputs, sourceSet,
-					config.imts, executor);
+					calc, executor);
 
-				AsyncList<HazardCurves> hazardCurves = toHazardCurves(groundMotions, config,
-					executor);
+				AsyncList<HazardCurves> hazardCurves = toHazardCurves(groundMotions, sourceSet,
+					config, executor);
 
 				ListenableFuture<HazardCurveSet> curveSet = toHazardCurveSet(hazardCurves,
 					sourceSet, config.logModelCurves, executor);
@@ -141,4 +201,224 @@ public class Calcs {
 
 	}
 
+	/**
+	 * Compute hazard curves for multiple variants of a site using the supplied
+	 * {@link Executor}. All {@code sites} must share the same location and
+	 * typically differ only in site properties (e.g. vs30, z1p0, z2p5). Source
+	 * filtering, rupture iteration and distance calculations are performed
+	 * once; only ground motions and curves are computed for each variant. If
+	 * source pruning is enabled, a source is retained for every variant if it
+	 * may contribute to the curves of any variant.
+	 * 
+	 * @param calc prepared model and configuration
+	 * @param sites variants of a site at a single location
+	 * @param executor Executor to use in calculation
+	 * @return a {@code HazardResult} for each site, in the order supplied
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public static List<HazardResult> hazardCurves(
+			PreparedCalc calc,
+			List<Site> sites,
+			Executor executor)
+			throws InterruptedException, ExecutionException {
+
+		checkArgument(!sites.isEmpty(), "No sites supplied");
+		Site site = sites.get(0);
+		for (Site variant : sites) {
+			checkArgument(variant.location.equals(site.location),
+				"Site variant location %s does not match %s", variant.location, site.location);
+		}
+
+		HazardModel model = calc.model;
+		CalcConfig config = calc.config;
+
+		List<AsyncList<HazardCurveSet>> curveSetCollectors = new ArrayList<>();
+		for (int i = 0; i < sites.size(); i++) {
+			curveSetCollectors.add(AsyncList.<HazardCurveSet> createWithCapacity(model.size()));
+		}
+
+		for (SourceSet<? extends Source> sourceSet : model) {
+
+			if (sourceSet.type() == CLUSTER) {
+
+				ClusterSourceSet clusterSourceSet = (ClusterSourceSet) sourceSet;
+
+				AsyncList<ClusterInputs> inputs = toClusterInputs(clusterSourceSet, sites, calc,
+					executor);
+				if (inputs.isEmpty()) continue; // all sources out of range
+
+				for (int i = 0; i < sites.size(); i++) {
+					AsyncList<ClusterInputs> siteInputs = (i == 0) ? inputs :
+						toSiteClusterInputs(inputs, sites.get(i), executor);
+
+					AsyncList<ClusterGroundMotions> groundMotions = toClusterGroundMotions(
+						siteInputs, clusterSourceSet, calc, executor);
+
+					AsyncList<ClusterCurves> clusterCurves = toClusterCurves(groundMotions,
+						clusterSourceSet, config, executor);
+
+					curveSetCollectors.get(i).add(toHazardCurveSet(clusterCurves,
+						clusterSourceSet, config.logModelCurves, executor));
+				}
+
+			} else if (sourceSet.type() == SYSTEM) {
+
+				SystemSourceSet systemSourceSet = (SystemSourceSet) sourceSet;
+
+				ListenableFuture<InputList> inputs = toSystemInputs(systemSourceSet, site,
+					executor);
+
+				for (int i = 0; i < sites.size(); i++) {
+					ListenableFuture<InputList> siteInputs = (i == 0) ? inputs :
+						toSiteInputs(inputs, sites.get(i), executor);
+
+					ListenableFuture<GroundMotions> groundMotions = toSystemGroundMotions(
+						siteInputs, systemSourceSet, calc, executor);
+
+					ListenableFuture<HazardCurves> systemCurves = toSystemCurves(groundMotions,
+						systemSourceSet, config, executor);
+
+					curveSetCollectors.get(i).add(toHazardCurveSet(systemCurves,
+						systemSourceSet, config.logModelCurves, executor));
+				}
+
+			} else {
+
+				AsyncList<InputList> inputs = toInputs(sourceSet, sites, calc, executor);
+				if (inputs.isEmpty()) continue; // all sources out of range
+
+				for (int i = 0; i < sites.size(); i++) {
+					AsyncList<InputList> siteInputs = (i == 0) ? inputs :
+						toSiteInputs(inputs, sites.get(i), executor);
+
+					AsyncList<GroundMotions> groundMotions = toGroundMotions(siteInputs,
+						sourceSet, calc, executor);
+
+					AsyncList<HazardCurves> hazardCurves = toHazardCurves(groundMotions,
+						sourceSet, config, executor);
+
+					curveSetCollectors.get(i).add(toHazardCurveSet(hazardCurves, sourceSet,
+						config.logModelCurves, executor));
+				}
+			}
+		}
+
+		List<ListenableFuture<HazardResult>> futureResults = new ArrayList<>();
+		for (int i = 0; i < sites.size(); i++) {
+			futureResults.add(toHazardResult(curveSetCollectors.get(i), config, sites.get(i),
+				model, executor));
+		}
+		return Futures.allAsList(futureResults).get();
+	}
+
+	/**
+	 * Recompute the curves of a hazard result using the exceedance model,
+	 * truncation level, and intensity measure levels of the supplied
+	 * {@code config}. Only the final, comparatively inexpensive, curve
+	 * calculation step is repeated: the ground motions retained by the
+	 * supplied result are reused and no ground motion models are evaluated.
+	 * 
+	 * <p>The result must have been computed with a configuration that retains
+	 * ground motions, and the {@code Imt}s of the supplied {@code config} must
+	 * be a subset of those in the result. The returned result references the
+	 * same ground motions and may itself be recomputed if {@code config}
+	 * retains ground motions.</p>
+	 * 
+	 * @param hazard to recompute
+	 * @param config with updated exceedance and IML settings
+	 * @param executor Executor to use in calculation
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public static HazardResult recompute(
+			HazardResult hazard,
+			CalcConfig config,
+			Executor executor)
+			throws InterruptedException, ExecutionException {
+
+		checkState(hazard.config.retainGroundMotions,
+			"Recomputing curves requires a result computed with retainGroundMotions = true");
+		checkArgument(hazard.totalCurves.keySet().containsAll(config.imts),
+			"IMTs %s not present in hazard result %s", config.imts, hazard.totalCurves.keySet());
+
+		AsyncList<HazardCurveSet> curveSetCollector = AsyncList.createWithCapacity(
+			hazard.sourceSetMap.size());
+
+		for (HazardCurveSet curveSet : hazard.sourceSetMap.values()) {
+
+			if (curveSet.sourceSet.type() == CLUSTER) {
+
+				ClusterSourceSet clusterSourceSet = (ClusterSourceSet) curveSet.sourceSet;
+
+				AsyncList<ClusterCurves> clusterCurves = toClusterCurves(
+					AsyncList.immediate(curveSet.clusterGroundMotionsList), clusterSourceSet,
+					config, executor);
+
+				curveSetCollector.add(toHazardCurveSet(clusterCurves, clusterSourceSet,
+					config.logModelCurves, executor));
+
+			} else {
+
+				AsyncList<HazardCurves> hazardCurves = toHazardCurves(
+					AsyncList.immediate(curveSet.hazardGroundMotionsList), curveSet.sourceSet,
+					config, executor);
+
+				curveSetCollector.add(toHazardCurveSet(hazardCurves, curveSet.sourceSet,
+					config.logModelCurves, executor));
+			}
+		}
+
+		return toHazardResult(curveSetCollector, config, hazard.site, hazard.model, executor)
+			.get();
+	}
+
+	/**
+	 * Deaggregate a hazard result at the intensity measure level corresponding
+	 * to the supplied return period using the supplied {@link Executor}. The
+	 * result must have been computed with a configuration that retains ground
+	 * motions.
+	 * 
+	 * @param hazard to deaggregate
+	 * @param imt to deaggregate
+	 * @param returnPeriod of interest (in years)
+	 * @param executor Executor to use in calculation
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @see Deagg
+	 */
+	public static Deagg deaggregation(
+			HazardResult hazard,
+			Imt imt,
+			double returnPeriod,
+			Executor executor)
+			throws InterruptedException, ExecutionException {
+
+		checkArgument(returnPeriod > 0.0, "Return period [%s] must be positive", returnPeriod);
+		return Deagg.atRate(hazard, imt, 1.0 / returnPeriod, executor);
+	}
+
+	/**
+	 * Deaggregate a hazard result at the supplied intensity measure level using
+	 * the supplied {@link Executor}. The result must have been computed with a
+	 * configuration that retains ground motions.
+	 * 
+	 * @param hazard to deaggregate
+	 * @param imt to deaggregate
+	 * @param iml intensity measure level of interest
+	 * @param executor Executor to use in calculation
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @see Deagg
+	 */
+	public static Deagg deaggregationAtIml(
+			HazardResult hazard,
+			Imt imt,
+			double iml,
+			Executor executor)
+			throws InterruptedException, ExecutionException {
+
+		return Deagg.atIml(hazard, imt, iml, executor);
+	}
+
 }
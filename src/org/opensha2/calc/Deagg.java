@@ -1,253 +1,589 @@
 package org.opensha2.calc;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
+import static org.opensha2.eq.model.SourceType.CLUSTER;
+import static org.opensha2.util.TextUtils.NEWLINE;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 import org.opensha2.calc.CalcConfig.DeaggData;
+import org.opensha2.data.ArrayXY_Sequence;
 import org.opensha2.data.DataUtils;
+import org.opensha2.data.Interpolate;
 import org.opensha2.eq.Magnitudes;
 import org.opensha2.eq.model.GmmSet;
-import org.opensha2.eq.model.Rupture;
-import org.opensha2.eq.model.Source;
-import org.opensha2.eq.model.SourceSet;
 import org.opensha2.eq.model.SourceType;
 import org.opensha2.gmm.Gmm;
 import org.opensha2.gmm.Imt;
 
-import com.google.common.base.Function;
-import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Range;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 
 /**
- * Add comments here
+ * Magnitude-distance-epsilon deaggregation of a {@link HazardResult} at a
+ * target intensity measure level. Contributions are derived from the
+ * ground motions retained by a hazard calculation and are binned according to
+ * the {@link DeaggData} of the associated {@link CalcConfig}. A
+ * {@code HazardResult} computed with {@code retainGroundMotions = false}
+ * cannot be deaggregated.
+ *
+ * <p>The ground motions of each {@code SourceSet} are processed in chunks,
+ * each of which accumulates contributions into its own bin arrays; chunks are
+ * distributed across the supplied {@code Executor} and each is merged into the
+ * total as it completes, such that bin arrays are only held for chunks that
+ * are being processed.</p>
+ *
+ * <p>Contributions are binned on magnitude, rupture distance (rRup), and
+ * epsilon. Contributions with a magnitude or distance outside the range of the
+ * bins are included in the mean values and total rate, but are not binned;
+ * epsilon bins at the lower and upper limits of the range are open-ended. The
+ * contributions of cluster sources are scaled such that they sum to the rate
+ * of exceedance of the cluster. Fault system sources are reported as a single
+ * contributor.</p>
  *
- * 
  * @author Peter Powers
+ * @see Calcs#deaggregation(HazardResult, Imt, double, Executor)
  */
-class Deagg {
+public final class Deagg {
 
-	// private final DataModel model;
-	// private final double[][][] data;
-	// private final double mBar, rBar, εBar;
+	private static final int CHUNK_SIZE = 32;
+	private static final int CONTRIBUTOR_COUNT = 10;
 
 	/*
-	 * Many deagg bins have no data so we will usually be returning a sparse
-	 * matrix
-	 * 
-	 * TODO track and report ranked source set contributions TODO track and
-	 * report ranked sources; may have source with same name in different
-	 * sourceSets
+	 * Additional epistemic uncertainty branch offsets (in units of δ) and the
+	 * single branch weight used when no additional uncertainty is defined.
 	 */
+	private static final double[] EPI_OFFSETS = { 1.0, 0.0, -1.0 };
+	private static final double[] NO_EPI_WEIGHTS = { 1.0 };
+
+	private final Model model;
+	private final Imt imt;
+	private final double iml;
+	private final double targetRate;
+	private final Data data;
+	private final List<Contributor> contributors;
+
+	private Deagg(Model model, Imt imt, double iml, double targetRate, Data data,
+			List<Contributor> contributors) {
+		this.model = model;
+		this.imt = imt;
+		this.iml = iml;
+		this.targetRate = targetRate;
+		this.data = data;
+		this.contributors = contributors;
+	}
 
 	/*
-	 * Doing single threaded for now THis class may be suitable for using Java 8
-	 * DoubleAdder/Accumulators
-	 * 
-	 * Ignoring Gmm deagg
+	 * Deaggregate the supplied hazard at the intensity measure level
+	 * corresponding to the supplied annual rate of exceedance.
 	 */
+	static Deagg atRate(HazardResult hazard, Imt imt, double rate, Executor executor)
+			throws InterruptedException, ExecutionException {
+		checkArgument(rate > 0.0, "Rate [%s] must be positive", rate);
+		double logIml = logImlForRate(curve(hazard, imt), rate);
+		return create(hazard, imt, logIml, rate, executor);
+	}
 
-	// do we want to track the relative location in each distance bin:
-	// i.e. the bin plots at the contribution weighted distance
-	// private Comparator<ContributingRupture> comparator = Ordering.natural();
+	/*
+	 * Deaggregate the supplied hazard at an intensity measure level (not in
+	 * log space).
+	 */
+	static Deagg atIml(HazardResult hazard, Imt imt, double iml, Executor executor)
+			throws InterruptedException, ExecutionException {
+		checkArgument(iml > 0.0, "IML [%s] must be positive", iml);
+		double logIml = Math.log(iml);
+		double rate = rateForLogIml(curve(hazard, imt), logIml);
+		return create(hazard, imt, logIml, rate, executor);
+	}
 
-	private Queue<Contribution> contribQueue = MinMaxPriorityQueue.orderedBy(Ordering.natural())
-		.maximumSize(20).create();
+	private static ArrayXY_Sequence curve(HazardResult hazard, Imt imt) {
+		checkNotNull(hazard);
+		checkState(hazard.config.retainGroundMotions,
+			"Deaggregation requires a result computed with retainGroundMotions = true");
+		ArrayXY_Sequence curve = hazard.totalCurves.get(imt);
+		checkArgument(curve != null, "IMT [%s] not present in hazard result", imt);
+		return curve;
+	}
 
-	/* Wrapper class for a Rupture and it's contribution to hazard. */
-	static class Contribution implements Comparable<Contribution> {
+	private static Deagg create(HazardResult hazard, Imt imt, double logIml, double rate,
+			Executor executor) throws InterruptedException, ExecutionException {
+
+		Model model = Model.fromConfig(hazard.config);
+		Data data = new Data(model);
+		List<ListenableFuture<Void>> futures = new ArrayList<>();
+		for (HazardCurveSet curveSet : hazard.sourceSetMap.values()) {
+			int size = (curveSet.sourceSet.type() == CLUSTER) ?
+				curveSet.clusterGroundMotionsList.size() :
+				curveSet.hazardGroundMotionsList.size();
+			for (int from = 0; from < size; from += CHUNK_SIZE) {
+				int to = Math.min(from + CHUNK_SIZE, size);
+				ListenableFutureTask<Void> task = ListenableFutureTask.create(
+					new DeaggTask(model, data, curveSet, from, to, hazard.config, imt, logIml));
+				executor.execute(task);
+				futures.add(task);
+			}
+		}
 
-		final Source rupture = null;
-		final Double value = null;
+		Futures.allAsList(futures).get();
+		List<Contributor> contributors = Ordering.natural()
+			.greatestOf(data.contributors, CONTRIBUTOR_COUNT);
+		return new Deagg(model, imt, Math.exp(logIml), rate, data,
+			ImmutableList.copyOf(contributors));
+	}
 
-		@Override public int compareTo(Contribution o) {
-			return value.compareTo(o.value);
+	/*
+	 * Interpolate the log intensity measure level at a rate; rates are
+	 * interpolated in log space unless the lower rate is zero.
+	 */
+	static double logImlForRate(ArrayXY_Sequence curve, double rate) {
+		for (int i = 0; i < curve.size() - 1; i++) {
+			double y1 = curve.y(i);
+			double y2 = curve.y(i + 1);
+			if (y1 >= rate && y2 <= rate) {
+				if (y1 == rate) return curve.x(i);
+				return (y2 > 0.0) ?
+					Interpolate.findX(curve.x(i), Math.log(y1), curve.x(i + 1),
+						Math.log(y2), Math.log(rate)) :
+					Interpolate.findX(curve.x(i), y1, curve.x(i + 1), y2, rate);
+			}
+		}
+		throw new IllegalArgumentException("Rate [" + rate + "] is outside the range of the " +
+			"hazard curve [" + curve.y(curve.size() - 1) + ", " + curve.y(0) + "]");
+	}
+
+	/*
+	 * Interpolate the rate at a log intensity measure level; rates are
+	 * interpolated in log space unless either rate is zero.
+	 */
+	static double rateForLogIml(ArrayXY_Sequence curve, double logIml) {
+		checkArgument(logIml >= curve.x(0) && logIml <= curve.x(curve.size() - 1),
+			"IML [%s] is outside the range of the hazard curve", Math.exp(logIml));
+		for (int i = 0; i < curve.size() - 1; i++) {
+			if (logIml <= curve.x(i + 1)) {
+				double y1 = curve.y(i);
+				double y2 = curve.y(i + 1);
+				return (y1 > 0.0 && y2 > 0.0) ?
+					Math.exp(Interpolate.findY(curve.x(i), Math.log(y1), curve.x(i + 1),
+						Math.log(y2), logIml)) :
+					Interpolate.findY(curve.x(i), y1, curve.x(i + 1), y2, logIml);
+			}
 		}
+		return curve.y(curve.size() - 1);
+	}
+
+	/** The {@code Imt} of this deaggregation. */
+	public Imt imt() {
+		return imt;
 	}
 
-	public static Builder builder() {
-		return new Builder();
+	/** The target intensity measure level of this deaggregation. */
+	public double iml() {
+		return iml;
 	}
 
 	/**
-	 * Deaggregation data container. This class is used to store deaggregation
-	 * results of individual SourceSets. Data objects may be recombined via
-	 * add().
+	 * The annual rate of exceedance of the target intensity measure level,
+	 * interpolated from the total hazard curve.
 	 */
-	static class Data {
-		
-		private double[][][] mrεMatrix; // [M][R][ε]
-
-		private double mBar, rBar, εBar; // these are total
-		private double totalRate; // TODO compare to orignal PoE
-
-		// wieghted m and r position data
-		private double[][] mPosValues;
-		private double[][] rPosValues;
-		private double[][] mrPosWeights;
-		
-		private Map<SourceSet<Source>, Collection<Source>> topContributors;
-
-		private void add(Data data) {
-			DataUtils.add(this.mrεMatrix, data.mrεMatrix);
-			this.mBar += data.mBar;
-			this.rBar += data.rBar;
-			this.εBar += data.εBar;
-			this.totalRate += totalRate;
-			DataUtils.add(this.mPosValues, data.mPosValues);
-			DataUtils.add(this.rPosValues, data.rPosValues);
-			DataUtils.add(this.mrPosWeights, data.mrPosWeights);
-			topContributors.putAll(data.topContributors);
-		}
+	public double targetRate() {
+		return targetRate;
+	}
 
+	/**
+	 * The annual rate of exceedance of the target intensity measure level
+	 * summed over all contributing ruptures.
+	 */
+	public double totalRate() {
+		return data.totalRate;
 	}
-	
-	static class Builder {
 
-		private Model model;
-		private HazardResult hazard;
-		private double targetIml;
+	/** The contribution weighted mean magnitude, or 0 if there are no contributions. */
+	public double mBar() {
+		return (data.totalRate > 0.0) ? data.mSum / data.totalRate : 0.0;
+	}
 
-		private double[][][] data; // [M][R][ε]
+	/**
+	 * The contribution weighted mean rupture distance, or 0 if there are no
+	 * contributions.
+	 */
+	public double rBar() {
+		return (data.totalRate > 0.0) ? data.rSum / data.totalRate : 0.0;
+	}
 
-		private double mBar, rBar, εBar; // these are total
-		private double totalRate; // TODO compare to orignal PoE
-		private double totalRateWithinRange;
+	/**
+	 * The contribution weighted mean epsilon, or 0 if no contribution has a
+	 * finite epsilon.
+	 */
+	public double εBar() {
+		return (data.εRate > 0.0) ? data.εSum / data.εRate : 0.0;
+	}
 
-		// wieghted m and r position data
-		private double[][] mValues;
-		private double[][] rValues;
-		private double[][] mrWeights;
+	/**
+	 * The sources that contribute most to hazard, ordered by decreasing
+	 * contribution.
+	 */
+	public List<Contributor> contributors() {
+		return contributors;
+	}
 
-		Builder withModel(Model model) {
-			this.model = checkNotNull(model);
-			return this;
+	/**
+	 * Return a copy of the binned rates of exceedance, indexed as
+	 * {@code [magnitude][distance][epsilon]}.
+	 */
+	public double[][][] binnedRates() {
+		double[][][] copy = new double[model.mSize][model.rSize][];
+		for (int i = 0; i < model.mSize; i++) {
+			for (int j = 0; j < model.rSize; j++) {
+				copy[i][j] = data.rates[i][j].clone();
+			}
 		}
+		return copy;
+	}
 
-		Builder forHazard(HazardResult hazard) {
-			this.hazard = checkNotNull(hazard);
-			return this;
+	@Override public String toString() {
+		int[] mode = data.mode();
+		StringBuilder sb = new StringBuilder("Deaggregation: ").append(imt)
+			.append(String.format(" iml=%.4g rate=%.4e", iml, targetRate))
+			.append(String.format(" (deaggregated=%.4e, binned=%.1f%%)", data.totalRate,
+				percent(data.binnedRate)))
+			.append(NEWLINE)
+			.append(String.format("  Mean: M=%.2f R=%.1f km ε=%.2f", mBar(), rBar(), εBar()))
+			.append(NEWLINE);
+		if (mode != null) {
+			double mrRate = data.mrRates[mode[0]][mode[1]];
+			sb.append(String.format("  Mode: M=%.2f R=%.1f km ε=%.2f (%.1f%%)",
+				data.mSums[mode[0]][mode[1]] / mrRate,
+				data.rSums[mode[0]][mode[1]] / mrRate,
+				model.εMin + (mode[2] + 0.5) * model.Δε,
+				percent(data.rates[mode[0]][mode[1]][mode[2]])))
+				.append(NEWLINE);
 		}
-
-		// // TODO need PoE enum
-		// Builder targetExceedance(double exceedance) {
-		// // TODO convert to iml
-		// }
-		//
-		// Builder targetRate(double rate) {
-		// // TODO convert to iml
-		// }
-		//
-		// Builder targetIml(double iml) {
-		// // TODO validate iml against curve range
-		// // this
-		// }
-
-		Deagg build() {
-			// run deaggregation
-			// build final statistics
-			return null;
+		sb.append("  Contributors:").append(NEWLINE);
+		for (Contributor contributor : contributors) {
+			sb.append(String.format("    %6.2f%%  %-10s %s [%s]", percent(contributor.rate),
+				contributor.type, contributor.source, contributor.sourceSet))
+				.append(NEWLINE);
+		}
+		sb.append("  Bins (%): M R");
+		for (int k = 0; k < model.εSize; k++) {
+			sb.append(String.format(" %6.2f", model.εMin + k * model.Δε));
 		}
+		sb.append(NEWLINE);
+		for (int i = 0; i < model.mSize; i++) {
+			for (int j = 0; j < model.rSize; j++) {
+				if (data.mrRates[i][j] == 0.0) continue;
+				sb.append(String.format("    %5.2f %6.1f", model.mMin + (i + 0.5) * model.Δm,
+					model.rMin + (j + 0.5) * model.Δr));
+				for (int k = 0; k < model.εSize; k++) {
+					sb.append(String.format(" %6.2f", percent(data.rates[i][j][k])));
+				}
+				sb.append(NEWLINE);
+			}
+		}
+		return sb.toString();
+	}
 
-		private void process() {
+	private double percent(double rate) {
+		return 100.0 * rate / data.totalRate;
+	}
 
-			// TODO need IML for target rate or PoE
+	/**
+	 * A {@code Source} and its contribution to hazard.
+	 */
+	public static final class Contributor implements Comparable<Contributor> {
 
-			// data is buried in maps by Imt, need Imt
+		private final SourceType type;
+		private final String source;
+		private final String sourceSet;
+		private double rate;
 
-			for (SourceType type : hazard.sourceSetMap.keySet()) {
-				Set<HazardCurveSet> hazardCurveSets = hazard.sourceSetMap.get(type);
-				switch (type) {
-					case FAULT:
-						// processFaultSources(hazardCurveSets);
-				}
-			}
+		private Contributor(SourceType type, String source, String sourceSet) {
+			this.type = type;
+			this.source = source;
+			this.sourceSet = sourceSet;
 		}
 
-		// TODO get us from CalcConfig
-		private static final ExceedanceModel SIGMA = ExceedanceModel.TRUNCATION_UPPER_ONLY;
-		private static final double trunc = 3.0;
+		/** The type of the contributing source. */
+		public SourceType type() {
+			return type;
+		}
 
-		private void processFaultSourceSet(HazardCurveSet curveSet, Imt imt, double iml) {
+		/** The name of the contributing source. */
+		public String source() {
+			return source;
+		}
 
-			double sourceSetWeight = curveSet.sourceSet.weight();
-			GmmSet gmmSet = curveSet.sourceSet.groundMotionModels();
+		/** The name of the {@code SourceSet} of the contributing source. */
+		public String sourceSet() {
+			return sourceSet;
+		}
 
-			for (GroundMotions groundMotions : curveSet.hazardGroundMotionsList) {
-				processFaultSource(groundMotions, sourceSetWeight, gmmSet, imt, iml);
-			}
+		/** The contribution (annual rate of exceedance) of the source. */
+		public double rate() {
+			return rate;
 		}
 
-		private void processFaultSource(
-				GroundMotions groundMotions,
-				double sourceSetWeight,
-				GmmSet gmmSet,
-				Imt imt,
-				double iml) {
+		@Override public int compareTo(Contributor other) {
+			return Double.compare(rate, other.rate);
+		}
+	}
 
-			SourceInputList inputs = (SourceInputList) groundMotions.inputs;
-			String sourceName = inputs.parent.name();
-			double sourceRate = 0.0;
-			int inputCount = inputs.size();
+	/*
+	 * Deaggregation data container. Each task accumulates into its own
+	 * instance, which is then merged into the total via add().
+	 */
+	private static final class Data {
 
-			for (Gmm gmm : groundMotions.means.get(imt).keySet()) {
-				List<Double> μList = groundMotions.means.get(imt).get(gmm);
-				List<Double> σList = groundMotions.sigmas.get(imt).get(gmm);
+		private final Model model;
 
-				double distance = groundMotions.inputs.minDistance;
-				double gmmWeight = gmmSet.gmmWeightMap(distance).get(gmm);
+		private final double[][][] rates; // [M][R][ε]
+		private final double[][] mrRates; // [M][R]
+		private final double[][] mSums; // rate weighted M in each M-R bin
+		private final double[][] rSums; // rate weighted R in each M-R bin
 
-				for (int i = 0; i < inputCount; i++) {
-					HazardInput in = groundMotions.inputs.get(i);
+		private double mSum, rSum, εSum;
+		private double totalRate;
+		private double binnedRate;
+		private double εRate; // excludes non-finite ε (σ = 0)
 
-					double μ = μList.get(i);
-					double σ = σList.get(i);
-					double ε = epsilon(μ, σ, iml);
+		private final List<Contributor> contributors = new ArrayList<>();
 
-					double probAtIml = SIGMA.exceedance(μ, σ, trunc, imt, iml);
-					double rate = probAtIml * in.rate * sourceSetWeight * gmmWeight;
-					sourceRate += rate;
-					addRupture(in.Mw, in.rRup, ε, rate);
-				}
-			}
+		Data(Model model) {
+			this.model = model;
+			rates = new double[model.mSize][model.rSize][model.εSize];
+			mrRates = new double[model.mSize][model.rSize];
+			mSums = new double[model.mSize][model.rSize];
+			rSums = new double[model.mSize][model.rSize];
 		}
 
-		private void addRupture(double m, double r, double ε, double rate) {
-
+		void add(double m, double r, double ε, double rate) {
+			if (rate == 0.0) return;
 			double mr = m * rate;
 			double rr = r * rate;
-			double εr = ε * rate;
+			mSum += mr;
+			rSum += rr;
+			totalRate += rate;
+			if (!Double.isInfinite(ε) && !Double.isNaN(ε)) {
+				εSum += ε * rate;
+				εRate += rate;
+			}
 
 			int im = index(model.mMin, model.Δm, m);
 			int ir = index(model.rMin, model.Δr, r);
-			int iε = index(model.εMin, model.Δε, ε);
+			if (im < 0 || im >= model.mSize || ir < 0 || ir >= model.rSize) return;
+			int iε = Math.max(0, Math.min(model.εSize - 1, index(model.εMin, model.Δε, ε)));
+
+			rates[im][ir][iε] += rate;
+			mrRates[im][ir] += rate;
+			mSums[im][ir] += mr;
+			rSums[im][ir] += rr;
+			binnedRate += rate;
+		}
 
-			mBar += mr;
-			rBar += rr;
-			εBar += εr;
-			totalRate += rate;
+		void add(Data that) {
+			DataUtils.add(rates, that.rates);
+			DataUtils.add(mrRates, that.mrRates);
+			DataUtils.add(mSums, that.mSums);
+			DataUtils.add(rSums, that.rSums);
+			mSum += that.mSum;
+			rSum += that.rSum;
+			εSum += that.εSum;
+			totalRate += that.totalRate;
+			binnedRate += that.binnedRate;
+			εRate += that.εRate;
+			contributors.addAll(that.contributors);
+		}
 
-			data[im][ir][iε] += rate;
+		/* Indices of the M-R-ε bin with the greatest rate, or null. */
+		int[] mode() {
+			int[] mode = null;
+			double max = 0.0;
+			for (int i = 0; i < model.mSize; i++) {
+				for (int j = 0; j < model.rSize; j++) {
+					for (int k = 0; k < model.εSize; k++) {
+						if (rates[i][j][k] > max) {
+							max = rates[i][j][k];
+							mode = new int[] { i, j, k };
+						}
+					}
+				}
+			}
+			return mode;
+		}
+	}
 
-			mValues[im][ir] += mr;
-			rValues[im][ir] += rr;
-			mrWeights[im][ir] += rate;
+	/*
+	 * Deaggregates a range of the GroundMotions (or ClusterGroundMotions) of a
+	 * HazardCurveSet and merges the result into a shared total.
+	 */
+	private static final class DeaggTask implements Callable<Void> {
+
+		private final Model model;
+		private final Data total;
+		private final HazardCurveSet curveSet;
+		private final int from;
+		private final int to;
+		private final ExceedanceModel exceedanceModel;
+		private final double truncationLevel;
+		private final Imt imt;
+		private final double iml;
+		private final GmmSet gmmSet;
+		private final double[] epiWeights;
+
+		DeaggTask(Model model, Data total, HazardCurveSet curveSet, int from, int to,
+				CalcConfig config, Imt imt, double iml) {
+			this.model = model;
+			this.total = total;
+			this.curveSet = curveSet;
+			this.from = from;
+			this.to = to;
+			this.exceedanceModel = config.exceedanceModel;
+			this.truncationLevel = config.truncationLevel;
+			this.imt = imt;
+			this.iml = iml;
+			this.gmmSet = curveSet.sourceSet.groundMotionModels();
+			this.epiWeights = gmmSet.epiUncertainty() ? gmmSet.epiWeights() : NO_EPI_WEIGHTS;
+		}
+
+		@Override public Void call() {
+			Data data = new Data(model);
+			if (curveSet.sourceSet.type() == CLUSTER) {
+				for (ClusterGroundMotions cgms : curveSet.clusterGroundMotionsList.subList(from, to)) {
+					processCluster(data, cgms);
+				}
+			} else {
+				for (GroundMotions gms : curveSet.hazardGroundMotionsList.subList(from, to)) {
+					processSource(data, gms);
+				}
+			}
+			synchronized (total) {
+				total.add(data);
+			}
+			return null;
+		}
+
+		/* Additional epistemic uncertainty, if any, for an input. */
+		private double epiValue(HazardInput in) {
+			return (epiWeights.length > 1) ? gmmSet.epiValue(in.Mw, in.rRup) : 0.0;
+		}
+
+		private void processSource(Data data, GroundMotions gms) {
+			double sourceSetWeight = curveSet.sourceSet.weight();
+			Map<Gmm, Double> gmmWeights = curveSet.sourceSet.groundMotionModels()
+				.gmmWeightMap(gms.inputs.minDistance);
+			Contributor contributor = contributor(gms.inputs);
+			Map<Gmm, List<Double>> gmmMeans = gms.means.get(imt);
+			Map<Gmm, List<Double>> gmmSigmas = gms.sigmas.get(imt);
+
+			for (Gmm gmm : gmmMeans.keySet()) {
+				Double gmmWeight = gmmWeights.get(gmm);
+				if (gmmWeight == null) continue;
+				double scale = sourceSetWeight * gmmWeight;
+				List<Double> means = gmmMeans.get(gmm);
+				List<Double> sigmas = gmmSigmas.get(gmm);
+				for (int i = 0; i < gms.inputs.size(); i++) {
+					HazardInput in = gms.inputs.get(i);
+					double μ = means.get(i);
+					double σ = sigmas.get(i);
+					double δ = epiValue(in);
+					for (int b = 0; b < epiWeights.length; b++) {
+						double μb = μ + EPI_OFFSETS[b] * δ;
+						double rate = epiWeights[b] *
+							exceedanceModel.exceedance(μb, σ, truncationLevel, imt, iml) *
+							in.rate * scale;
+						data.add(in.Mw, in.rRup, epsilon(μb, σ, iml), rate);
+						contributor.rate += rate;
+					}
+				}
+			}
+			if (contributor.rate > 0.0) data.contributors.add(contributor);
+		}
+
+		/*
+		 * Cluster exceedance is the probability that any fault in the cluster
+		 * exceeds the target IML; individual rupture contributions are scaled
+		 * so that they sum to the cluster rate of exceedance.
+		 */
+		private void processCluster(Data data, ClusterGroundMotions cgms) {
+			double clusterScale = curveSet.sourceSet.weight() * cgms.parent.weight() *
+				cgms.parent.rate();
+			Map<Gmm, Double> gmmWeights = curveSet.sourceSet.groundMotionModels()
+				.gmmWeightMap(cgms.minDistance);
+			Contributor contributor = new Contributor(CLUSTER, cgms.parent.name(),
+				curveSet.sourceSet.name());
+
+			for (Gmm gmm : cgms.get(0).means.get(imt).keySet()) {
+				Double gmmWeight = gmmWeights.get(gmm);
+				if (gmmWeight == null) continue;
+
+				double[][] probs = new double[cgms.size()][];
+				double sumProb = 0.0;
+				double noExceedProb = 1.0;
+				for (int f = 0; f < cgms.size(); f++) {
+					GroundMotions gms = cgms.get(f);
+					List<Double> means = gms.means.get(imt).get(gmm);
+					List<Double> sigmas = gms.sigmas.get(imt).get(gmm);
+					probs[f] = new double[gms.inputs.size() * epiWeights.length];
+					double faultProb = 0.0;
+					for (int i = 0; i < gms.inputs.size(); i++) {
+						HazardInput in = gms.inputs.get(i);
+						double δ = epiValue(in);
+						for (int b = 0; b < epiWeights.length; b++) {
+							int index = i * epiWeights.length + b;
+							probs[f][index] = epiWeights[b] * exceedanceModel.exceedance(
+								means.get(i) + EPI_OFFSETS[b] * δ, sigmas.get(i),
+								truncationLevel, imt, iml) * in.rate;
+							faultProb += probs[f][index];
+						}
+					}
+					sumProb += faultProb;
+					noExceedProb *= 1.0 - faultProb;
+				}
+				if (sumProb == 0.0) continue;
+
+				double scale = clusterScale * gmmWeight * (1.0 - noExceedProb) / sumProb;
+				for (int f = 0; f < cgms.size(); f++) {
+					GroundMotions gms = cgms.get(f);
+					List<Double> means = gms.means.get(imt).get(gmm);
+					List<Double> sigmas = gms.sigmas.get(imt).get(gmm);
+					for (int i = 0; i < gms.inputs.size(); i++) {
+						HazardInput in = gms.inputs.get(i);
+						double δ = epiValue(in);
+						for (int b = 0; b < epiWeights.length; b++) {
+							double rate = probs[f][i * epiWeights.length + b] * scale;
+							double μb = means.get(i) + EPI_OFFSETS[b] * δ;
+							data.add(in.Mw, in.rRup, epsilon(μb, sigmas.get(i), iml), rate);
+							contributor.rate += rate;
+						}
+					}
+				}
+			}
+			if (contributor.rate > 0.0) data.contributors.add(contributor);
 		}
 
+		private Contributor contributor(InputList inputs) {
+			String name = (inputs instanceof SourceInputList) ?
+				((SourceInputList) inputs).parent.name() : inputs.parentName();
+			return new Contributor(curveSet.sourceSet.type(), name, curveSet.sourceSet.name());
+		}
 	}
 
 	private static int index(double min, double binWidth, double value) {
 		return (int) Math.floor((value - min) / binWidth);
 	}
 
-	// should all be in log space
+	// all values in log space
 	private static double epsilon(double μ, double σ, double iml) {
 		return (iml - μ) / σ;
 	}
@@ -259,6 +595,9 @@ class Deagg {
 		return (int) Math.rint((max - min) / Δ);
 	}
 
+	/**
+	 * Deaggregation bin model.
+	 */
 	public static class Model {
 
 		private final double mMin, mMax, Δm;
@@ -290,7 +629,7 @@ class Deagg {
 		 * anchored on the {@code min} values supplied. {@code max} values may
 		 * not correspond to final upper edge of uppermost bins if
 		 * {@code max - min} is not evenly divisible by {@code Δ}.
-		 * 
+		 *
 		 * @param mMin lower edge of lowest magnitude bin
 		 * @param mMax maximum magnitude
 		 * @param Δm
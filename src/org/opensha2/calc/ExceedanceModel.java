@@ -74,7 +74,8 @@ public enum ExceedanceModel {
 		}
 
 		@Override XY_Sequence exceedance(double μ, double σ, double n, Imt imt, XY_Sequence sequence) {
-			return boundedCcdFn(μ, σ, sequence, prob(μ, σ, n), 1.0);
+			return truncatedCcdFn(μ, σ, sequence, Double.NEGATIVE_INFINITY, μ + n * σ,
+				prob(μ, σ, n), 1.0);
 		}
 	},
 
@@ -91,7 +92,7 @@ public enum ExceedanceModel {
 
 		@Override XY_Sequence exceedance(double μ, double σ, double n, Imt imt, XY_Sequence sequence) {
 			double pHi = prob(μ, σ, n);
-			return boundedCcdFn(μ, σ, sequence, pHi, 1.0 - pHi);
+			return truncatedCcdFn(μ, σ, sequence, μ - n * σ, μ + n * σ, pHi, 1.0 - pHi);
 		}
 	},
 
@@ -148,8 +149,9 @@ public enum ExceedanceModel {
 		}
 
 		@Override XY_Sequence exceedance(double μ, double σ, double n, Imt imt, XY_Sequence sequence) {
-			double pHi = prob(μ, σ, n, log(maxValue(imt)));
-			return boundedCcdFn(μ, σ, sequence, pHi, 1.0);
+			double xHi = min(μ + n * σ, log(maxValue(imt)));
+			return truncatedCcdFn(μ, σ, sequence, Double.NEGATIVE_INFINITY, xHi,
+				ccdFn(μ, σ, xHi), 1.0);
 		}
 
 		private double maxValue(Imt imt) {
@@ -234,6 +236,49 @@ public enum ExceedanceModel {
 		return sequence;
 	}
 
+	/*
+	 * Truncated complementary cumulative distribution. Exceedance is zero at
+	 * and above xHi and one below xLo; ccdFn is only evaluated over the window
+	 * of x-values in between, the bounds of which are located by binary search
+	 * of the (ascending) x-values of the supplied sequence. Return the supplied
+	 * {@code XY_Sequence} populated with probabilities.
+	 */
+	private static XY_Sequence truncatedCcdFn(double μ, double σ, XY_Sequence sequence,
+			double xLo, double xHi, double pHi, double pLo) {
+		int size = sequence.size();
+		int iLo = indexOf(sequence, xLo);
+		int iHi = indexOf(sequence, xHi);
+		for (int i = 0; i < iLo; i++) {
+			sequence.set(i, 1.0);
+		}
+		for (int i = iLo; i < iHi; i++) {
+			sequence.set(i, boundedCcdFn(μ, σ, sequence.x(i), pHi, pLo));
+		}
+		for (int i = iHi; i < size; i++) {
+			sequence.set(i, 0.0);
+		}
+		return sequence;
+	}
+
+	/*
+	 * Return the index of the first x-value in a sequence that is greater than
+	 * or equal to the supplied value, or the size of the sequence if no such
+	 * value exists.
+	 */
+	private static int indexOf(XY_Sequence sequence, double value) {
+		int lo = 0;
+		int hi = sequence.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sequence.x(mid) < value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
 	/*
 	 * TODO does this exist due to double precission errors possibly pushing
 	 * probabilities above 1 or below 0 ?? Run a test sometime to determine if P
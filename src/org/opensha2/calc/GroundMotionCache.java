@@ -0,0 +1,277 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.opensha2.calc.CalcConfig.GmmCacheData;
+import org.opensha2.gmm.Gmm;
+import org.opensha2.gmm.GmmInput;
+import org.opensha2.gmm.GroundMotionModel;
+import org.opensha2.gmm.Imt;
+import org.opensha2.gmm.ScalarGroundMotion;
+
+import com.google.common.collect.ArrayTable;
+import com.google.common.collect.Table;
+import com.google.common.collect.Table.Cell;
+
+/**
+ * Bounded, thread-safe memo of {@link GroundMotionModel} results. Grid and area
+ * sources in particular yield many {@code GmmInput}s that differ only in rate;
+ * the same magnitude, distance, depth, and mechanism combinations recur across
+ * nodes and sites. This cache serves repeat evaluations from memory.
+ *
+ * <p>Inputs are quantized prior to lookup using the steps specified in a
+ * {@link GmmCacheData}. Ground motions are always computed from the
+ * <em>quantized</em> input so that results are independent of the order in
+ * which inputs are encountered. A step of 0 disables quantization of the
+ * associated input fields; if all steps are 0, only exact repeats are served
+ * from the cache and results are identical to those obtained without it. Site
+ * fields (vs30, z1p0, z2p5) are never quantized.</p>
+ *
+ * <p>The maximum size is a bound on the total number of entries held. Entries
+ * are spread by key hash across a fixed number of independently locked
+ * stripes, each holding an equal share of the maximum size and evicting its
+ * least recently used entry when full. Ground motions are computed outside of
+ * any lock. The cache of a {@link CalcConfig} is shared by configurations
+ * {@link CalcConfig.Builder#copy(CalcConfig) copied} from it, provided the
+ * cache settings are not changed; keys include the {@link Imt} and
+ * {@link Gmm}, so configurations that differ only in their IMTs, such as
+ * those created by a hazard service, share entries safely. Hit and miss counts
+ * are available via {@link #hitCount()} and {@link #missCount()}.</p>
+ *
+ * @author Peter Powers
+ * @see CalcConfig
+ */
+public final class GroundMotionCache {
+
+	/* Stripes per available processor; reduces lock contention. */
+	private static final int STRIPES_PER_PROCESSOR = 16;
+
+	private final Stripe[] stripes;
+	private final int stripeMask;
+	private final double magStep;
+	private final double distanceStep;
+	private final double depthStep;
+	private final double angleStep;
+
+	GroundMotionCache(GmmCacheData data) {
+		checkArgument(data.maxSize > 0, "Cache size [%s] must be positive", data.maxSize);
+		checkArgument(data.magStep >= 0.0 && data.distanceStep >= 0.0 &&
+			data.depthStep >= 0.0 && data.angleStep >= 0.0,
+			"Cache quantization steps must be non-negative");
+		// power of 2 stripe count, no greater than maxSize
+		int processors = Runtime.getRuntime().availableProcessors();
+		int stripeCount = Integer.highestOneBit((int) Math.min(
+			(long) processors * STRIPES_PER_PROCESSOR, Math.min(data.maxSize, 1 << 30)));
+		int stripeSize = (int) Math.min(data.maxSize / stripeCount, Integer.MAX_VALUE);
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe(stripeSize);
+		}
+		stripeMask = stripeCount - 1;
+		magStep = data.magStep;
+		distanceStep = data.distanceStep;
+		depthStep = data.depthStep;
+		angleStep = data.angleStep;
+	}
+
+	/**
+	 * Return a view of the supplied ground motion model instances that is
+	 * backed by this cache.
+	 */
+	Table<Gmm, Imt, GroundMotionModel> wrap(Table<Gmm, Imt, GroundMotionModel> instances) {
+		Table<Gmm, Imt, GroundMotionModel> wrapped = ArrayTable.create(instances);
+		for (Cell<Gmm, Imt, GroundMotionModel> cell : instances.cellSet()) {
+			wrapped.put(cell.getRowKey(), cell.getColumnKey(), new CachedModel(
+				cell.getRowKey(), cell.getColumnKey(), cell.getValue()));
+		}
+		return wrapped;
+	}
+
+	/**
+	 * Return the number of ground motions served from this cache.
+	 */
+	public long hitCount() {
+		long count = 0;
+		for (Stripe stripe : stripes) {
+			count += stripe.hits;
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of ground motions computed and added to this cache.
+	 */
+	public long missCount() {
+		long count = 0;
+		for (Stripe stripe : stripes) {
+			count += stripe.misses;
+		}
+		return count;
+	}
+
+	/**
+	 * Return the number of entries currently in this cache.
+	 */
+	public long size() {
+		long size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	@Override public String toString() {
+		long hits = hitCount();
+		long misses = missCount();
+		long total = hits + misses;
+		return new StringBuilder("Ground motion cache: ")
+			.append("stripes=").append(stripes.length)
+			.append(", size=").append(size())
+			.append(", hits=").append(hits)
+			.append(", misses=").append(misses)
+			.append(", hitRate=").append(String.format("%.3f",
+				(total == 0) ? 1.0 : (double) hits / total))
+			.toString();
+	}
+
+	private static double quantize(double value, double step) {
+		return (step > 0.0) ? Math.rint(value / step) * step : value;
+	}
+
+	private Stripe stripe(Key key) {
+		int h = key.hash;
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return stripes[h & stripeMask];
+	}
+
+	/*
+	 * Access ordered map that evicts its least recently used entry when full.
+	 * All access is synchronized on the stripe. Counters are only written
+	 * while holding the lock and are volatile so that statistics may be read
+	 * without it.
+	 */
+	@SuppressWarnings("serial")
+	private static final class Stripe extends LinkedHashMap<Key, ScalarGroundMotion> {
+
+		private final int maxSize;
+		volatile long hits;
+		volatile long misses;
+
+		Stripe(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override protected boolean removeEldestEntry(
+				Map.Entry<Key, ScalarGroundMotion> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	private final class CachedModel implements GroundMotionModel {
+
+		private final Gmm gmm;
+		private final Imt imt;
+		private final GroundMotionModel model;
+
+		CachedModel(Gmm gmm, Imt imt, GroundMotionModel model) {
+			this.gmm = gmm;
+			this.imt = imt;
+			this.model = model;
+		}
+
+		@Override public ScalarGroundMotion calc(GmmInput in) {
+			Key key = new Key(gmm, imt,
+				quantize(in.Mw, magStep),
+				quantize(in.rJB, distanceStep),
+				quantize(in.rRup, distanceStep),
+				quantize(in.rX, distanceStep),
+				quantize(in.dip, angleStep),
+				quantize(in.width, depthStep),
+				quantize(in.zTop, depthStep),
+				quantize(in.zHyp, depthStep),
+				quantize(in.rake, angleStep),
+				in.vs30,
+				in.vsInf,
+				in.z1p0,
+				in.z2p5);
+			Stripe stripe = stripe(key);
+			ScalarGroundMotion sgm;
+			synchronized (stripe) {
+				sgm = stripe.get(key);
+				if (sgm != null) {
+					stripe.hits++;
+					return sgm;
+				}
+				stripe.misses++;
+			}
+			// concurrent misses on a key compute identical values
+			sgm = model.calc(key.toInput());
+			synchronized (stripe) {
+				stripe.put(key, sgm);
+			}
+			return sgm;
+		}
+	}
+
+	/* Immutable cache key; rate is not considered. */
+	private static final class Key {
+
+		private final Gmm gmm;
+		private final Imt imt;
+		private final double[] values;
+		private final boolean vsInf;
+		private final int hash;
+
+		Key(Gmm gmm, Imt imt,
+				double Mw, double rJB, double rRup, double rX,
+				double dip, double width, double zTop, double zHyp, double rake,
+				double vs30, boolean vsInf, double z1p0, double z2p5) {
+
+			this.gmm = gmm;
+			this.imt = imt;
+			values = new double[] { Mw, rJB, rRup, rX, dip, width, zTop, zHyp, rake, vs30, z1p0,
+				z2p5 };
+			this.vsInf = vsInf;
+			int h = 31 * gmm.hashCode() + imt.hashCode();
+			for (double value : values) {
+				long bits = Double.doubleToLongBits(value);
+				h = 31 * h + (int) (bits ^ (bits >>> 32));
+			}
+			hash = 31 * h + (vsInf ? 1 : 0);
+		}
+
+		HazardInput toInput() {
+			return new HazardInput(0.0,
+				values[0], values[1], values[2], values[3],
+				values[4], values[5], values[6], values[7], values[8],
+				values[9], vsInf, values[10], values[11]);
+		}
+
+		@Override public int hashCode() {
+			return hash;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key that = (Key) obj;
+			if (hash != that.hash || gmm != that.gmm || imt != that.imt || vsInf != that.vsInf) {
+				return false;
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (Double.doubleToLongBits(values[i]) != Double.doubleToLongBits(that.values[i])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
@@ -21,7 +21,7 @@ import org.opensha2.gmm.Imt;
 /**
  * Container class for hazard curves derived from a {@code SourceSet}. Class
  * stores the {@code HazardGroundMotions}s associated with each {@code Source}
- * used in a hazard calculation and the combined curves for each
+ * used in a hazard calculation (if retained) and the combined curves for each
  * {@code GroundMotionModel} used.
  * 
  * <p>The {@code Builder} for this class is used to aggregate the HazardCurves
@@ -108,8 +108,10 @@ final class HazardCurveSet {
 
 		Builder addCurves(HazardCurves hazardCurves) {
 			checkNotNull(hazardGroundMotionsList, "%s was intialized with a ClusterSourceSet", ID);
-			hazardGroundMotionsList.add(hazardCurves.groundMotions);
-			double distance = hazardCurves.groundMotions.inputs.minDistance;
+			if (hazardCurves.groundMotions != null) {
+				hazardGroundMotionsList.add(hazardCurves.groundMotions);
+			}
+			double distance = hazardCurves.minDistance;
 			Map<Gmm, Double> gmmWeightMap = sourceSet.groundMotionModels().gmmWeightMap(distance);
 			for (Entry<Imt, Map<Gmm, ArrayXY_Sequence>> imtEntry : hazardCurves.curveMap.entrySet()) {
 				Map<Gmm, ArrayXY_Sequence> builderCurveMap = curveMap.get(imtEntry.getKey());
@@ -4,6 +4,7 @@ import static com.google.common.base.Preconditions.checkState;
 
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.opensha2.data.ArrayXY_Sequence;
 import org.opensha2.gmm.Gmm;
@@ -14,23 +15,35 @@ import org.opensha2.gmm.Imt;
  * {@code Rupture}s in an individual {@code Source}, one for each
  * {@code GroundMotionModel} and {@code Imt} of interest. The curves will have
  * been scaled by the associated Mfd or rupture weights, but not by
- * {@code GroundMotionModel} weights.
+ * {@code GroundMotionModel} weights. The ground motions used to compute the
+ * curves are only retained if requested by the calculation configuration.
  * 
  * @author Peter Powers
  */
 final class HazardCurves {
 
-	final GroundMotions groundMotions;
+	final GroundMotions groundMotions; // null if not retained
+	final double minDistance;
 	final Map<Imt, Map<Gmm, ArrayXY_Sequence>> curveMap;
 
-	private HazardCurves(GroundMotions groundMotions,
+	private HazardCurves(GroundMotions groundMotions, double minDistance,
 		Map<Imt, Map<Gmm, ArrayXY_Sequence>> curveMap) {
 		this.groundMotions = groundMotions;
+		this.minDistance = minDistance;
 		this.curveMap = curveMap;
 	}
 
 	static Builder builder(GroundMotions groundMotions) {
-		return new Builder(groundMotions);
+		return new Builder(groundMotions, groundMotions.inputs.minDistance,
+			groundMotions.means.keySet());
+	}
+
+	/*
+	 * For curves computed without retaining ground motions; minDistance is
+	 * the closest distance (rJB) of any Rupture in the source.
+	 */
+	static Builder builder(Set<Imt> imts, double minDistance) {
+		return new Builder(null, minDistance, imts);
 	}
 
 	static class Builder {
@@ -39,12 +52,14 @@ final class HazardCurves {
 		private boolean built = false;
 
 		private final GroundMotions groundMotions;
+		private final double minDistance;
 		private final Map<Imt, Map<Gmm, ArrayXY_Sequence>> curveMap;
 
-		private Builder(GroundMotions groundMotions) {
+		private Builder(GroundMotions groundMotions, double minDistance, Set<Imt> imts) {
 			this.groundMotions = groundMotions;
+			this.minDistance = minDistance;
 			curveMap = new EnumMap<>(Imt.class);
-			for (Imt imt : groundMotions.means.keySet()) {
+			for (Imt imt : imts) {
 				Map<Gmm, ArrayXY_Sequence> gmmMap = new EnumMap<>(Gmm.class);
 				curveMap.put(imt, gmmMap);
 			}
@@ -60,7 +75,7 @@ final class HazardCurves {
 			// TODO check that all gmms have been set? it'll be difficult to
 			// track whether all curves for all inputs have been added
 			built = true;
-			return new HazardCurves(groundMotions, curveMap);
+			return new HazardCurves(groundMotions, minDistance, curveMap);
 		}
 
 	}
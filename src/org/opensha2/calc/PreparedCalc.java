@@ -0,0 +1,215 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import static org.opensha2.eq.model.SourceType.SYSTEM;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.eq.model.Source;
+import org.opensha2.eq.model.SourceSet;
+import org.opensha2.geo.Location;
+import org.opensha2.geo.Locations;
+import org.opensha2.gmm.Gmm;
+import org.opensha2.gmm.GroundMotionModel;
+import org.opensha2.gmm.Imt;
+
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Table;
+import com.google.common.collect.Tables;
+
+/**
+ * A {@link HazardModel} and {@link CalcConfig} pair with all site-independent
+ * calculation setup resolved. Prepare a calculation once and reuse it for all
+ * {@link Site}s of interest to remove repeated setup from the per-site
+ * calculation path.
+ * 
+ * <p>Currently, a prepared calculation resolves the table of
+ * {@link GroundMotionModel} instances required by each {@code SourceSet} in a
+ * model (backed by the ground motion cache, if enabled). Tables are shared
+ * among {@code SourceSet}s that use the same {@link Gmm}s. The model curves
+ * and distance-dependent {@code Gmm} weights used in a calculation are
+ * precomputed by {@code CalcConfig} and {@code GmmSet}, respectively.</p>
+ * 
+ * <p>A calculation may also be {@link #forTile(Collection) prepared} for a
+ * tile of nearby sites, in which case the sources that are within range of
+ * any site in the tile are identified once, and the distance filtering
+ * performed for each site in the tile only considers those candidates.</p>
+ * 
+ * <p>A {@code PreparedCalc} is immutable and thread-safe.</p>
+ * 
+ * @author Peter Powers
+ * @see Calcs#hazardCurve(PreparedCalc, Site, java.util.concurrent.Executor)
+ */
+public final class PreparedCalc {
+
+	final HazardModel model;
+	final CalcConfig config;
+	private final Map<SourceSet<? extends Source>, Table<Gmm, Imt, GroundMotionModel>> gmmTables;
+	private final Map<SourceSet<? extends Source>, List<? extends Source>> candidates;
+
+	/*
+	 * Relative and absolute padding of tile candidate filter distances to
+	 * accommodate the approximate distances and bounding rectangles used by
+	 * source set distance filters.
+	 */
+	private static final double TILE_PAD_FRACTION = 0.02;
+	private static final double TILE_PAD = 1.0;
+
+	private PreparedCalc(
+			HazardModel model,
+			CalcConfig config,
+			Map<SourceSet<? extends Source>, Table<Gmm, Imt, GroundMotionModel>> gmmTables,
+			Map<SourceSet<? extends Source>, List<? extends Source>> candidates) {
+
+		this.model = model;
+		this.config = config;
+		this.gmmTables = gmmTables;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * Prepare a calculation of the supplied model and configuration.
+	 * 
+	 * @param model to use
+	 * @param config calculation configuration
+	 */
+	public static PreparedCalc create(HazardModel model, CalcConfig config) {
+		checkNotNull(model);
+		checkNotNull(config);
+		Map<Set<Gmm>, Table<Gmm, Imt, GroundMotionModel>> tablesByGmms = new HashMap<>();
+		Map<SourceSet<? extends Source>, Table<Gmm, Imt, GroundMotionModel>> gmmTables =
+			new IdentityHashMap<>();
+		for (SourceSet<? extends Source> sourceSet : model) {
+			Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
+			Table<Gmm, Imt, GroundMotionModel> table = tablesByGmms.get(gmms);
+			if (table == null) {
+				table = Tables.unmodifiableTable(gmmInstances(sourceSet, config));
+				tablesByGmms.put(gmms, table);
+			}
+			gmmTables.put(sourceSet, table);
+		}
+		return new PreparedCalc(model, config, gmmTables, null);
+	}
+
+	/**
+	 * Prepare this calculation for a tile of nearby site locations. For each
+	 * {@code SourceSet} in the model, the returned calculation holds the
+	 * sources that are within the maximum distance of the {@code SourceSet}
+	 * of a circle enclosing all supplied locations. The sources used at any
+	 * site in the tile are then filtered from these candidates rather than
+	 * from the entire {@code SourceSet}. Tiles are most effective when the
+	 * supplied locations are close together relative to the maximum distances
+	 * of the model; the results at sites in the tile are the same as those
+	 * computed using this calculation.
+	 * 
+	 * <p>The returned calculation should only be used for sites at the
+	 * supplied locations.</p>
+	 * 
+	 * @param locations of the sites in a tile
+	 */
+	public PreparedCalc forTile(Collection<Location> locations) {
+		checkArgument(!locations.isEmpty(), "Tile locations are empty");
+		Location center = Locations.centroid(locations);
+		double radius = 0.0;
+		for (Location loc : locations) {
+			radius = Math.max(radius, Locations.horzDistance(center, loc));
+		}
+		Map<SourceSet<? extends Source>, List<? extends Source>> tileCandidates =
+			new IdentityHashMap<>();
+		for (SourceSet<? extends Source> sourceSet : model) {
+			if (sourceSet.type() == SYSTEM) continue;
+			tileCandidates.put(sourceSet, candidates(sourceSet, center, radius));
+		}
+		return new PreparedCalc(model, config, gmmTables, tileCandidates);
+	}
+
+	private static <T extends Source> List<T> candidates(
+			SourceSet<T> sourceSet,
+			Location center,
+			double radius) {
+
+		double distance = sourceSet.groundMotionModels().maxDistance() + radius;
+		distance += distance * TILE_PAD_FRACTION + TILE_PAD;
+		return ImmutableList.copyOf(
+			FluentIterable.from(sourceSet).filter(sourceSet.distanceFilter(center, distance)));
+	}
+
+	/**
+	 * The model used by this calculation.
+	 */
+	public HazardModel model() {
+		return model;
+	}
+
+	/**
+	 * The configuration used by this calculation.
+	 */
+	public CalcConfig config() {
+		return config;
+	}
+
+	/*
+	 * The Sources of a SourceSet in the model that are within range of a Site,
+	 * less any pruned sources, if pruning is enabled. Tile candidates, if
+	 * present, are filtered in place of the entire SourceSet; candidates are in
+	 * SourceSet order so the sources returned are the same in either case.
+	 */
+	<T extends Source> Iterable<T> sources(SourceSet<T> sourceSet, Site site) {
+		return sources(sourceSet, Collections.singletonList(site));
+	}
+
+	/*
+	 * The Sources of a SourceSet in the model that are within range of
+	 * variants of a Site that share a location. When pruning is enabled, a
+	 * source is retained if it may contribute to the curves of any variant.
+	 */
+	<T extends Source> Iterable<T> sources(SourceSet<T> sourceSet, List<Site> sites) {
+		Location loc = sites.get(0).location;
+		List<T> tileSources = tileCandidates(sourceSet);
+		Iterable<T> sources = (tileSources == null) ?
+			sourceSet.iterableForLocation(loc) :
+			FluentIterable.from(tileSources).filter(sourceSet.distanceFilter(loc,
+				sourceSet.groundMotionModels().maxDistance()));
+		return (config.pruner == null) ? sources :
+			config.pruner.prune(sourceSet, sources, sites, gmmInstances(sourceSet));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends Source> List<T> tileCandidates(SourceSet<T> sourceSet) {
+		return (candidates == null) ? null : (List<T>) candidates.get(sourceSet);
+	}
+
+	/*
+	 * Ground motion model instances for a SourceSet in the model.
+	 */
+	Table<Gmm, Imt, GroundMotionModel> gmmInstances(SourceSet<? extends Source> sourceSet) {
+		Table<Gmm, Imt, GroundMotionModel> table = gmmTables.get(sourceSet);
+		checkArgument(table != null, "SourceSet [%s] is not in model [%s]", sourceSet.name(),
+			model.name());
+		return table;
+	}
+
+	/*
+	 * Ground motion model instances for a SourceSet, backed by the ground
+	 * motion cache of the supplied config, if enabled.
+	 */
+	static Table<Gmm, Imt, GroundMotionModel> gmmInstances(
+			SourceSet<? extends Source> sourceSet,
+			CalcConfig config) {
+
+		Set<Gmm> gmms = sourceSet.groundMotionModels().gmms();
+		Table<Gmm, Imt, GroundMotionModel> instances = Gmm.instances(gmms, config.imts);
+		return (config.gmmCache == null) ? instances : config.gmmCache.wrap(instances);
+	}
+
+}
@@ -0,0 +1,275 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.opensha2.data.ArrayXY_Sequence;
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.eq.model.Source;
+import org.opensha2.eq.model.SourceSet;
+import org.opensha2.eq.model.SourceType;
+import org.opensha2.geo.Location;
+import org.opensha2.gmm.Imt;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Doubles;
+
+/**
+ * A fixed-size accumulator of the hazard curves of many sites, such as the
+ * nodes of a map, stored outside the Java heap. For each site, the matrix
+ * holds a location and a curve (annual rates of exceedance) for each
+ * {@link Imt} of a calculation and each {@link SourceType} in a model, laid
+ * out as [site][imt][sourceType][iml] in direct {@code ByteBuffer}s. Total
+ * curves are the sum of the curves of each {@code SourceType}.
+ *
+ * <p>Each site occupies its own slice of storage, so concurrent writers may
+ * {@link #add(int, HazardResult) add} results to different sites without
+ * locking. Writes should complete before curves are read or exported, for
+ * example by waiting on the futures of the tasks that add results. Reads and
+ * writes of the same site by different threads are not synchronized.</p>
+ *
+ * <p>Because results are reduced to curves as they are added, and curves are
+ * not stored on the heap, the heap and garbage collection load of large
+ * calculations does not grow with the number of sites. Off-heap storage is
+ * allocated up front and is proportional to the number of sites: 8 bytes for
+ * each intensity measure level of each {@code Imt} and {@code SourceType},
+ * plus 16 bytes for the location, per site. Direct buffer allocation is
+ * limited by {@code -XX:MaxDirectMemorySize}, which defaults to the maximum
+ * heap size ({@code -Xmx}).</p>
+ *
+ * @author Peter Powers
+ * @see Results#totalsByType(HazardResult)
+ */
+public final class ResultMatrix {
+
+	/* Max doubles in a single direct buffer. */
+	private static final int SEGMENT_CAPACITY = Integer.MAX_VALUE / 8;
+
+	private final int size;
+	private final Set<Imt> imts;
+	private final Set<SourceType> types;
+	private final Map<Imt, ArrayXY_Sequence> modelCurves;
+
+	private final Map<Imt, Integer> imtOffsets;
+	private final Map<SourceType, Integer> typeIndices;
+	private final int stride; // doubles per site
+	private final int sitesPerSegment;
+	private final DoubleBuffer[] segments;
+
+	private ResultMatrix(Set<Imt> imts, Set<SourceType> types,
+			Map<Imt, ArrayXY_Sequence> modelCurves, int size) {
+
+		this.size = size;
+		this.imts = imts;
+		this.types = types;
+		this.modelCurves = modelCurves;
+
+		typeIndices = new EnumMap<>(SourceType.class);
+		for (SourceType type : types) {
+			typeIndices.put(type, typeIndices.size());
+		}
+		imtOffsets = new EnumMap<>(Imt.class);
+		int offset = 2; // lon, lat
+		for (Imt imt : imts) {
+			imtOffsets.put(imt, offset);
+			offset += types.size() * modelCurves.get(imt).size();
+		}
+		stride = offset;
+		sitesPerSegment = SEGMENT_CAPACITY / stride;
+
+		int segmentCount = (size + sitesPerSegment - 1) / sitesPerSegment;
+		segments = new DoubleBuffer[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			int sites = Math.min(sitesPerSegment, size - i * sitesPerSegment);
+			segments[i] = ByteBuffer.allocateDirect(sites * stride * 8)
+				.order(ByteOrder.nativeOrder())
+				.asDoubleBuffer();
+		}
+	}
+
+	/**
+	 * Create a new matrix for the curves of a number of sites. The matrix
+	 * holds curves for each {@code Imt} of the supplied configuration and
+	 * each {@code SourceType} in the supplied model. All curves are initially
+	 * zero-valued.
+	 *
+	 * @param model for which curves will be added
+	 * @param config for which curves will be added
+	 * @param size number of sites
+	 */
+	public static ResultMatrix create(HazardModel model, CalcConfig config, int size) {
+		checkArgument(size > 0, "Size [%s] must be positive", size);
+		Set<SourceType> types = EnumSet.noneOf(SourceType.class);
+		for (SourceSet<? extends Source> sourceSet : model) {
+			types.add(sourceSet.type());
+		}
+		return new ResultMatrix(config.imts, Sets.immutableEnumSet(types),
+			config.modelCurves, size);
+	}
+
+	/** The number of sites in this matrix. */
+	public int size() {
+		return size;
+	}
+
+	/** The {@code Imt}s for which this matrix holds curves. */
+	public Set<Imt> imts() {
+		return imts;
+	}
+
+	/** The {@code SourceType}s for which this matrix holds curves. */
+	public Set<SourceType> types() {
+		return types;
+	}
+
+	/**
+	 * Set the location and curves of a site from a {@code HazardResult}. The
+	 * curves of each {@code SourceType} are the sum of the curves of each
+	 * {@code SourceSet} of that type in the result. The result must be for
+	 * the same {@code Imt}s as this matrix.
+	 *
+	 * @param index of site
+	 * @param result to add
+	 */
+	public void add(int index, HazardResult result) {
+		location(index, result.site.location);
+		for (Imt imt : imts) {
+			int imlCount = modelCurves.get(imt).size();
+			for (SourceType type : types) {
+				double[] curve = new double[imlCount];
+				for (HazardCurveSet curveSet : result.sourceSetMap.get(type)) {
+					ArrayXY_Sequence setCurve = curveSet.totalCurves.get(imt);
+					for (int i = 0; i < imlCount; i++) {
+						curve[i] += setCurve.y(i);
+					}
+				}
+				put(index, imt, type, curve);
+			}
+		}
+	}
+
+	/**
+	 * Set the location of a site.
+	 *
+	 * @param index of site
+	 * @param loc location
+	 */
+	public void location(int index, Location loc) {
+		DoubleBuffer segment = segment(index);
+		int position = position(index);
+		segment.put(position, loc.lon());
+		segment.put(position + 1, loc.lat());
+	}
+
+	/**
+	 * Return the location of a site.
+	 *
+	 * @param index of site
+	 */
+	public Location location(int index) {
+		DoubleBuffer segment = segment(index);
+		int position = position(index);
+		return Location.create(segment.get(position + 1), segment.get(position));
+	}
+
+	/**
+	 * Set the curve of a site, {@code Imt}, and {@code SourceType}.
+	 *
+	 * @param index of site
+	 * @param imt of curve
+	 * @param type of curve
+	 * @param rates annual rates of exceedance of each intensity measure level
+	 */
+	public void put(int index, Imt imt, SourceType type, double[] rates) {
+		int position = curvePosition(index, imt, type);
+		checkArgument(rates.length == modelCurves.get(imt).size(),
+			"Curve size [%s] differs from model [%s]", rates.length,
+			modelCurves.get(imt).size());
+		DoubleBuffer segment = segment(index);
+		for (int i = 0; i < rates.length; i++) {
+			segment.put(position + i, rates[i]);
+		}
+	}
+
+	/**
+	 * Return a copy of the curve of a site, {@code Imt}, and
+	 * {@code SourceType}.
+	 *
+	 * @param index of site
+	 * @param imt of curve
+	 * @param type of curve
+	 */
+	public double[] curve(int index, Imt imt, SourceType type) {
+		int position = curvePosition(index, imt, type);
+		DoubleBuffer segment = segment(index);
+		double[] rates = new double[modelCurves.get(imt).size()];
+		for (int i = 0; i < rates.length; i++) {
+			rates[i] = segment.get(position + i);
+		}
+		return rates;
+	}
+
+	/**
+	 * Return the total curve of a site and {@code Imt}.
+	 *
+	 * @param index of site
+	 * @param imt of curve
+	 */
+	public double[] totalCurve(int index, Imt imt) {
+		checkArgument(imts.contains(imt), "IMT [%s] not present in matrix", imt);
+		DoubleBuffer segment = segment(index);
+		int imlCount = modelCurves.get(imt).size();
+		int position = position(index) + imtOffsets.get(imt);
+		double[] rates = new double[imlCount];
+		for (int t = 0; t < types.size(); t++) {
+			for (int i = 0; i < imlCount; i++) {
+				rates[i] += segment.get(position++);
+			}
+		}
+		return rates;
+	}
+
+	/**
+	 * Return the total curves of a site as a map of linear-valued
+	 * {@code ArrayXY_Sequence}s.
+	 *
+	 * @param index of site
+	 */
+	public Map<Imt, ArrayXY_Sequence> totalCurves(int index) {
+		Map<Imt, ArrayXY_Sequence> curves = new EnumMap<>(Imt.class);
+		for (Entry<Imt, ArrayXY_Sequence> entry : modelCurves.entrySet()) {
+			Imt imt = entry.getKey();
+			curves.put(imt, ArrayXY_Sequence.create(
+				Doubles.toArray(entry.getValue().xValues()),
+				totalCurve(index, imt)));
+		}
+		return Maps.immutableEnumMap(curves);
+	}
+
+	private DoubleBuffer segment(int index) {
+		checkElementIndex(index, size);
+		return segments[index / sitesPerSegment];
+	}
+
+	private int position(int index) {
+		return (index % sitesPerSegment) * stride;
+	}
+
+	private int curvePosition(int index, Imt imt, SourceType type) {
+		checkArgument(imts.contains(imt), "IMT [%s] not present in matrix", imt);
+		checkArgument(types.contains(type), "Source type [%s] not present in matrix", type);
+		return position(index) + imtOffsets.get(imt) +
+			typeIndices.get(type) * modelCurves.get(imt).size();
+	}
+
+}
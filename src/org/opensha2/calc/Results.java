@@ -1,5 +1,6 @@
 package org.opensha2.calc;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.opensha2.data.ArrayXY_Sequence.copyOf;
 
@@ -9,6 +10,7 @@ import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +18,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.opensha2.data.ArrayXY_Sequence;
+import org.opensha2.data.Interpolate;
 import org.opensha2.data.XY_Sequence;
 import org.opensha2.eq.model.SourceType;
 import org.opensha2.geo.Location;
@@ -32,6 +35,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.primitives.Doubles;
 
 /**
  * Factory class for reducing and exporting various result types.
@@ -122,6 +126,161 @@ public class Results {
 		}
 	}
 
+	/**
+	 * Write the ground motions of a {@code batch} of {@code HazardResult}s at
+	 * one or more return periods to files in the specified directory. For each
+	 * {@link Imt} in the {@code batch}, a file is written with one column of
+	 * ground motions per return period. For each return period, a file of
+	 * uniform hazard spectra is written with one column of ground motions per
+	 * {@code Imt}. Handling of {@code options}, encoding, and location
+	 * formatting are the same as for
+	 * {@link #writeResults(Path, List, OpenOption...)}; ground motions are
+	 * formatted to 6 significant figures. Full curves are not written.
+	 * 
+	 * @param dir to write to
+	 * @param batch of results to write
+	 * @param returnPeriods of interest (in years)
+	 * @param options specifying how the file is opened
+	 * @throws IOException if a problem is encountered
+	 * @see #imlAtRate(double[], double[], double)
+	 */
+	public static void writeReturnPeriodResults(Path dir, List<HazardResult> batch,
+			double[] returnPeriods, OpenOption... options) throws IOException {
+
+		checkArgument(returnPeriods.length > 0, "No return periods supplied");
+		for (double returnPeriod : returnPeriods) {
+			checkArgument(returnPeriod > 0.0, "Return period [%s] must be positive",
+				returnPeriod);
+		}
+
+		HazardResult demo = batch.get(0);
+		boolean newFile = options.length == 0;
+		boolean namedSites = demo.site.name != Site.NO_NAME;
+		Set<Imt> imts = demo.totalCurves.keySet();
+
+		Map<Imt, double[]> imls = new EnumMap<>(Imt.class);
+		for (Imt imt : imts) {
+			imls.put(imt, Doubles.toArray(demo.config.modelCurves.get(imt).xValues()));
+		}
+
+		List<String> headings = new ArrayList<>();
+		if (namedSites) headings.add("name");
+		headings.add("lon");
+		headings.add("lat");
+
+		Map<Imt, List<String>> imtLines = new EnumMap<>(Imt.class);
+		for (Imt imt : imts) {
+			List<String> lines = new ArrayList<>();
+			if (newFile) {
+				List<String> header = new ArrayList<>(headings);
+				for (double returnPeriod : returnPeriods) {
+					header.add(RETURN_PERIOD_LABEL.apply(returnPeriod));
+				}
+				lines.add(Parsing.join(header, Delimiter.COMMA));
+			}
+			imtLines.put(imt, lines);
+		}
+
+		List<List<String>> uhsLines = new ArrayList<>();
+		for (int i = 0; i < returnPeriods.length; i++) {
+			List<String> lines = new ArrayList<>();
+			if (newFile) {
+				List<String> header = new ArrayList<>(headings);
+				for (Imt imt : imts) {
+					header.add(imt.name());
+				}
+				lines.add(Parsing.join(header, Delimiter.COMMA));
+			}
+			uhsLines.add(lines);
+		}
+
+		for (HazardResult result : batch) {
+			StringBuilder locData = new StringBuilder();
+			if (namedSites) locData.append(result.site.name).append(',');
+			locData.append(String.format(Location.FORMAT, result.site.location.lon()))
+				.append(',')
+				.append(String.format(Location.FORMAT, result.site.location.lat()));
+
+			List<StringBuilder> uhs = new ArrayList<>();
+			for (int i = 0; i < returnPeriods.length; i++) {
+				uhs.add(new StringBuilder(locData));
+			}
+			for (Imt imt : imts) {
+				double[] rates = Doubles.toArray(result.totalCurves.get(imt).yValues());
+				StringBuilder line = new StringBuilder(locData);
+				for (int i = 0; i < returnPeriods.length; i++) {
+					double iml = imlAtRate(imls.get(imt), rates, 1.0 / returnPeriods[i]);
+					String imlStr = String.format(IML_FMT, iml);
+					line.append(',').append(imlStr);
+					uhs.get(i).append(',').append(imlStr);
+				}
+				imtLines.get(imt).add(line.toString());
+			}
+			for (int i = 0; i < returnPeriods.length; i++) {
+				uhsLines.get(i).add(uhs.get(i).toString());
+			}
+		}
+
+		for (Entry<Imt, List<String>> entry : imtLines.entrySet()) {
+			String filename = entry.getKey().name() + RETURN_PERIOD_FILE_SUFFIX;
+			Files.write(dir.resolve(filename), entry.getValue(), US_ASCII, options);
+		}
+		for (int i = 0; i < returnPeriods.length; i++) {
+			String filename = UHS_FILE_PREFIX + RETURN_PERIOD_LABEL.apply(returnPeriods[i]) +
+				".csv";
+			Files.write(dir.resolve(filename), uhsLines.get(i), US_ASCII, options);
+		}
+	}
+
+	/**
+	 * Return the intensity measure level at which a hazard curve reaches a
+	 * target annual rate of exceedance. Levels are interpolated in log-log
+	 * space between the points of the curve with non-zero rates. If the
+	 * target rate exceeds the rate at the lowest level of the curve, 0 is
+	 * returned; if the target rate is less than the smallest non-zero rate of
+	 * the curve, the level with that rate is returned.
+	 * 
+	 * @param imls intensity measure levels of a hazard curve, in increasing
+	 *        order
+	 * @param rates annual rates of exceedance of each level
+	 * @param rate target annual rate of exceedance
+	 */
+	public static double imlAtRate(double[] imls, double[] rates, double rate) {
+		checkArgument(imls.length == rates.length, "Curve sizes [%s, %s] differ", imls.length,
+			rates.length);
+		if (rates.length == 0 || rate > rates[0]) return 0.0;
+
+		// reverse into sequences of increasing, non-zero, unique rates
+		double[] x = new double[rates.length];
+		double[] y = new double[rates.length];
+		int size = 0;
+		for (int i = rates.length - 1; i >= 0; i--) {
+			if (rates[i] <= 0.0 || (size > 0 && rates[i] <= x[size - 1])) continue;
+			x[size] = rates[i];
+			y[size] = imls[i];
+			size++;
+		}
+		if (size == 0) return 0.0;
+		if (size == 1 || rate <= x[0]) return y[0];
+		return Interpolate.findLogLogY(Arrays.copyOf(x, size), Arrays.copyOf(y, size), rate);
+	}
+
+	private static final String RETURN_PERIOD_FILE_SUFFIX = "-rp.csv";
+	private static final String UHS_FILE_PREFIX = "uhs-";
+	private static final String IML_FMT = "%.6g";
+
+	/**
+	 * Return period labels used in result file headers and names, for
+	 * example, {@code rp2475}.
+	 */
+	public static final Function<Double, String> RETURN_PERIOD_LABEL =
+		new Function<Double, String>() {
+			@Override public String apply(Double returnPeriod) {
+				return "rp" + ((returnPeriod == Math.rint(returnPeriod)) ?
+					String.valueOf(returnPeriod.longValue()) : String.valueOf(returnPeriod));
+			}
+		};
+
 	public static Map<Imt, Map<SourceType, ArrayXY_Sequence>> totalsByType(HazardResult result) {
 
 		ImmutableMap.Builder<Imt, Map<SourceType, ArrayXY_Sequence>> imtMapBuilder =
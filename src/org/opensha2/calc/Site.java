@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.file.Path;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
 
 import org.opensha2.geo.Location;
 import org.opensha2.gmm.GroundMotionModel;
@@ -138,13 +139,33 @@ public class Site implements Named {
 
 	/**
 	 * Creates an {@code Iterable<Site>} from the comma-delimted site file
-	 * designated by {@code path}.
+	 * designated by {@code path}. Sites are parsed lazily, in file order, as
+	 * iteration proceeds.
 	 * 
 	 * @param path to comma-delimited site data file
 	 * @throws IOException if a problem is encountered
 	 */
 	public static Iterable<Site> fromCsv(Path path) throws IOException {
-		return SiteSet.fromCsv(path);
+		return SiteSet.fromCsv(path, null);
+	}
+
+	/**
+	 * Creates an {@code Iterable<Site>} from the comma-delimted site file
+	 * designated by {@code path}, using the supplied {@code executor} to parse
+	 * the file in parallel.
+	 * 
+	 * <p>Sites are parsed lazily as iteration proceeds and are returned in file
+	 * order; only those sites in the portions of the file currently being
+	 * parsed are held in memory. As a consequence, malformed site data is
+	 * reported, as an unchecked exception, when first encountered during
+	 * iteration.</p>
+	 * 
+	 * @param path to comma-delimited site data file
+	 * @param executor to use for parsing
+	 * @throws IOException if a problem is encountered
+	 */
+	public static Iterable<Site> fromCsv(Path path, Executor executor) throws IOException {
+		return SiteSet.fromCsv(path, checkNotNull(executor));
 	}
 
 	/**
@@ -0,0 +1,311 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.opensha2.calc.Site.Key.LAT;
+import static org.opensha2.calc.Site.Key.LON;
+import static org.opensha2.calc.Site.Key.NAME;
+import static org.opensha2.calc.Site.Key.VS30;
+import static org.opensha2.calc.Site.Key.VS_INF;
+import static org.opensha2.calc.Site.Key.Z1P0;
+import static org.opensha2.calc.Site.Key.Z2P5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.opensha2.calc.Site.Builder;
+import org.opensha2.calc.Site.Key;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+/*
+ * Streaming reader of comma-delimited site files. The file is memory mapped and
+ * only the header is parsed on creation; sites are parsed lazily, one chunk of
+ * lines at a time, as iteration proceeds. Chunks are byte ranges of roughly
+ * CHUNK_SIZE bytes that are aligned to line boundaries. If an Executor is
+ * supplied, up to LOOKAHEAD chunks are parsed in parallel ahead of the
+ * consumer; otherwise, chunks are parsed sequentially on the iterating thread.
+ * In either case, sites are returned in file order and at most a few chunks of
+ * sites are held in memory at any time.
+ *
+ * Lines are tokenized directly from the mapped bytes without creating
+ * intermediate line Strings or splitter Iterables. Consistent with prior CSV
+ * handling, lines starting with '#' and blank lines are skipped, values are
+ * trimmed, and empty values are ignored.
+ *
+ * Because sites are parsed lazily, malformed values are only detected (and
+ * reported as unchecked exceptions) when the offending chunk is reached.
+ *
+ * @author Peter Powers
+ */
+final class SiteFile implements Iterable<Site> {
+
+	private static final int CHUNK_SIZE = 1 << 20;
+	private static final int LOOKAHEAD = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final byte NEWLINE = '\n';
+	private static final byte COMMA = ',';
+	private static final byte COMMENT = '#';
+
+	private final ByteBuffer buffer;
+	private final List<Key> keys;
+	private final int dataStart;
+	private final Executor executor; // null for sequential parsing
+
+	private volatile int size = -1;
+
+	private SiteFile(ByteBuffer buffer, List<Key> keys, int dataStart, Executor executor) {
+		this.buffer = buffer;
+		this.keys = keys;
+		this.dataStart = dataStart;
+		this.executor = executor;
+	}
+
+	/*
+	 * Create a new reader for the site file designated by path. Supply a null
+	 * executor for sequential parsing.
+	 */
+	static SiteFile create(Path path, Executor executor) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, READ)) {
+			checkArgument(channel.size() <= Integer.MAX_VALUE,
+				"Site file [%s] is too large (%s bytes)", path, channel.size());
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		// set up key/column ordering from first data line
+		Tokenizer tokenizer = new Tokenizer(buffer);
+		int limit = buffer.limit();
+		int start = 0;
+		while (start < limit) {
+			int end = lineEnd(buffer, start, limit);
+			List<String> values = tokenizer.tokenize(start, end);
+			start = end + 1;
+			if (values.isEmpty()) continue;
+
+			Set<Key> validKeys = EnumSet.of(NAME, LAT, LON, VS30, VS_INF, Z1P0, Z2P5);
+			List<Key> keys = new ArrayList<>();
+			for (String keyStr : values) {
+				Key key = Key.fromString(keyStr);
+				checkState(validKeys.contains(key), "Illegal site property key [%s]", keyStr);
+				keys.add(key);
+			}
+			checkState(keys.contains(LAT), "Site latitudes must be defined");
+			checkState(keys.contains(LON), "Site longitudes must be defined");
+			return new SiteFile(buffer, ImmutableList.copyOf(keys), Math.min(start, limit),
+				executor);
+		}
+		return new SiteFile(buffer, ImmutableList.<Key> of(), limit, executor);
+	}
+
+	/*
+	 * The number of sites in the file. Computed on first call by scanning the
+	 * file for data lines.
+	 */
+	int size() {
+		if (size < 0) {
+			int count = 0;
+			int limit = buffer.limit();
+			int start = dataStart;
+			while (start < limit) {
+				int end = lineEnd(buffer, start, limit);
+				if (isDataLine(buffer, start, end)) count++;
+				start = end + 1;
+			}
+			size = count;
+		}
+		return size;
+	}
+
+	@Override public Iterator<Site> iterator() {
+		return keys.isEmpty() ? Collections.<Site> emptyIterator() : new SiteIterator();
+	}
+
+	private final class SiteIterator extends AbstractIterator<Site> {
+
+		private final Queue<Future<List<Site>>> pending = new ArrayDeque<>();
+		private final int lookahead = (executor == null) ? 1 : LOOKAHEAD;
+		private int next = dataStart;
+		private Iterator<Site> current = Collections.emptyIterator();
+
+		@Override protected Site computeNext() {
+			while (!current.hasNext()) {
+				schedule();
+				Future<List<Site>> chunk = pending.poll();
+				if (chunk == null) return endOfData();
+				current = Futures.getUnchecked(chunk).iterator();
+			}
+			return current.next();
+		}
+
+		private void schedule() {
+			int limit = buffer.limit();
+			while (pending.size() < lookahead && next < limit) {
+				int end = Math.min(next + CHUNK_SIZE, limit);
+				while (end < limit && buffer.get(end - 1) != NEWLINE) {
+					end++;
+				}
+				ChunkParser parser = new ChunkParser(next, end);
+				next = end;
+				if (executor == null) {
+					pending.add(Futures.immediateFuture(parser.call()));
+				} else {
+					ListenableFutureTask<List<Site>> task = ListenableFutureTask.create(parser);
+					executor.execute(task);
+					pending.add(task);
+				}
+			}
+		}
+	}
+
+	/* Parses the sites in a line-aligned byte range of the file. */
+	private final class ChunkParser implements Callable<List<Site>> {
+
+		private final int start;
+		private final int end;
+
+		ChunkParser(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override public List<Site> call() {
+			Tokenizer tokenizer = new Tokenizer(buffer);
+			Builder builder = Site.builder();
+			List<Site> sites = new ArrayList<>();
+			int lineStart = start;
+			while (lineStart < end) {
+				int lineEnd = lineEnd(buffer, lineStart, end);
+				List<String> values = tokenizer.tokenize(lineStart, lineEnd);
+				lineStart = lineEnd + 1;
+				if (values.isEmpty()) continue;
+				checkState(values.size() >= keys.size(),
+					"Site [%s] has %s values; expected %s", values, values.size(), keys.size());
+				sites.add(parseSite(builder, values));
+			}
+			return sites;
+		}
+
+		private Site parseSite(Builder builder, List<String> values) {
+			int index = 0;
+			double lat = 0.0;
+			double lon = 0.0;
+			for (Key key : keys) {
+				String value = values.get(index);
+				switch (key) {
+					case LAT:
+						lat = Double.parseDouble(value);
+						break;
+					case LON:
+						lon = Double.parseDouble(value);
+						break;
+					case NAME:
+						builder.name(value);
+						break;
+					case VS30:
+						builder.vs30(Double.parseDouble(value));
+						break;
+					case VS_INF:
+						builder.vsInferred(Boolean.parseBoolean(value));
+						break;
+					case Z1P0:
+						builder.z1p0(Double.parseDouble(value));
+						break;
+					case Z2P5:
+						builder.z2p5(Double.parseDouble(value));
+						break;
+					default:
+						throw new IllegalStateException("Unsupported site key: " + key);
+				}
+				index++;
+			}
+			builder.location(lat, lon);
+			return builder.build();
+		}
+	}
+
+	/*
+	 * Splits lines of a mapped file into trimmed, non-empty values. Line bytes
+	 * are copied once into a reusable array from which value Strings are
+	 * decoded. Comment lines yield an empty list. Not thread safe.
+	 */
+	private static final class Tokenizer {
+
+		private final ByteBuffer buffer;
+		private final List<String> values = new ArrayList<>();
+		private byte[] bytes = new byte[256];
+
+		Tokenizer(ByteBuffer buffer) {
+			this.buffer = buffer.duplicate();
+		}
+
+		List<String> tokenize(int start, int end) {
+			if (start == end || buffer.get(start) == COMMENT) return Collections.emptyList();
+			int length = end - start;
+			if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+			buffer.position(start);
+			buffer.get(bytes, 0, length);
+			values.clear();
+			int valueStart = 0;
+			for (int i = 0; i <= length; i++) {
+				if (i == length || bytes[i] == COMMA) {
+					addValue(valueStart, i);
+					valueStart = i + 1;
+				}
+			}
+			return values;
+		}
+
+		private void addValue(int start, int end) {
+			while (start < end && isWhitespace(bytes[start])) {
+				start++;
+			}
+			while (end > start && isWhitespace(bytes[end - 1])) {
+				end--;
+			}
+			if (start < end) values.add(new String(bytes, start, end - start, UTF_8));
+		}
+	}
+
+	/* Index of the newline terminating the line at start, or limit. */
+	private static int lineEnd(ByteBuffer buffer, int start, int limit) {
+		int end = start;
+		while (end < limit && buffer.get(end) != NEWLINE) {
+			end++;
+		}
+		return end;
+	}
+
+	private static boolean isDataLine(ByteBuffer buffer, int start, int end) {
+		if (start == end || buffer.get(start) == COMMENT) return false;
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (!isWhitespace(b) && b != COMMA) return true;
+		}
+		return false;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0b;
+	}
+
+}
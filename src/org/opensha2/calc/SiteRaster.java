@@ -0,0 +1,196 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.opensha2.geo.Location;
+
+/**
+ * A memory-mapped, regularly spaced grid of a single site property, such as
+ * Vs30 or a basin depth. Rasters supply site properties to the {@code Site}s
+ * of a gridded region as it is iterated, removing the need to precompute site
+ * files with one row per map node.
+ *
+ * <p>The raster file format is simple and binary (big-endian): an int magic
+ * number ({@code 0x4e534852}, 'NSHR'), an int version (1), int row and column
+ * counts, double minimum latitude, minimum longitude, latitude spacing and
+ * longitude spacing (in decimal degrees), and a float no-data value, followed
+ * by a float32 body of {@code rows * columns} values. Values are ordered by
+ * row, south to north, and then by column, west to east; the first value is
+ * that of the node at the minimum latitude and longitude. Use
+ * {@link #write(Path, double, double, double, double, float[][], float)} to
+ * create raster files.</p>
+ *
+ * <p>Values are looked up by {@link Interpolation#NEAREST nearest node} or
+ * {@link Interpolation#BILINEAR bilinear} interpolation. Locations outside the
+ * grid and no-data values yield {@code NaN}.</p>
+ *
+ * <p>A {@code SiteRaster} is immutable and thread-safe.</p>
+ *
+ * @author Peter Powers
+ */
+public final class SiteRaster {
+
+	private static final int MAGIC = 0x4e534852; // 'NSHR'
+	private static final int VERSION = 1;
+
+	private final int rows;
+	private final int cols;
+	private final double latMin;
+	private final double lonMin;
+	private final double Δlat;
+	private final double Δlon;
+	private final float noData;
+	private final FloatBuffer values;
+
+	/**
+	 * Site property interpolation methods.
+	 */
+	public enum Interpolation {
+
+		/** Use the value of the nearest grid node. */
+		NEAREST,
+
+		/**
+		 * Interpolate bilinearly between the four surrounding grid nodes. If any
+		 * of the surrounding nodes has no data, the nearest node value is used.
+		 */
+		BILINEAR;
+	}
+
+	private SiteRaster(ByteBuffer buffer) {
+		checkState(buffer.getInt() == MAGIC, "Invalid site raster");
+		int version = buffer.getInt();
+		checkState(version == VERSION, "Site raster version [%s] not supported", version);
+		rows = buffer.getInt();
+		cols = buffer.getInt();
+		latMin = buffer.getDouble();
+		lonMin = buffer.getDouble();
+		Δlat = buffer.getDouble();
+		Δlon = buffer.getDouble();
+		noData = buffer.getFloat();
+		checkState(rows > 0 && cols > 0, "Invalid site raster dimensions [%s, %s]", rows, cols);
+		checkState(Δlat > 0.0 && Δlon > 0.0, "Invalid site raster spacing [%s, %s]", Δlat, Δlon);
+		checkState((long) rows * cols * 4 == buffer.remaining(),
+			"Site raster size [%s x %s] does not match data length", rows, cols);
+		values = buffer.slice().asFloatBuffer();
+	}
+
+	/**
+	 * Memory map the site raster file designated by {@code path}.
+	 *
+	 * @param path to raster file
+	 * @throws IOException if a problem is encountered
+	 */
+	public static SiteRaster fromFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(checkNotNull(path), READ)) {
+			checkArgument(channel.size() <= Integer.MAX_VALUE,
+				"Site raster [%s] is too large (%s bytes)", path, channel.size());
+			return new SiteRaster(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Write a site raster file.
+	 *
+	 * @param path to raster file
+	 * @param latMin latitude of the southernmost row of nodes
+	 * @param lonMin longitude of the westernmost column of nodes
+	 * @param Δlat latitude spacing of nodes
+	 * @param Δlon longitude spacing of nodes
+	 * @param values indexed by [row][column]; all rows must be the same length
+	 * @param noData value
+	 * @throws IOException if a problem is encountered
+	 */
+	public static void write(Path path, double latMin, double lonMin, double Δlat, double Δlon,
+			float[][] values, float noData) throws IOException {
+
+		checkArgument(Δlat > 0.0 && Δlon > 0.0, "Spacing must be positive");
+		checkArgument(values.length > 0 && values[0].length > 0, "Values are empty");
+		int cols = values[0].length;
+		for (float[] row : values) {
+			checkArgument(row.length == cols, "Rows have different lengths");
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			Files.newOutputStream(path, CREATE, WRITE, TRUNCATE_EXISTING), 1 << 16))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(values.length);
+			out.writeInt(cols);
+			out.writeDouble(latMin);
+			out.writeDouble(lonMin);
+			out.writeDouble(Δlat);
+			out.writeDouble(Δlon);
+			out.writeFloat(noData);
+			for (float[] row : values) {
+				for (float value : row) {
+					out.writeFloat(value);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the value of this raster at the supplied location, or {@code NaN}
+	 * if the location is outside the raster or no data is available.
+	 *
+	 * @param loc of interest
+	 * @param interpolation method
+	 */
+	public double value(Location loc, Interpolation interpolation) {
+		double r = (loc.lat() - latMin) / Δlat;
+		double c = (loc.lon() - lonMin) / Δlon;
+		if (interpolation == Interpolation.BILINEAR) {
+			int r0 = (int) Math.floor(r);
+			int c0 = (int) Math.floor(c);
+			if (r0 >= 0 && c0 >= 0 && r0 < rows - 1 && c0 < cols - 1) {
+				double v00 = value(r0, c0);
+				double v01 = value(r0, c0 + 1);
+				double v10 = value(r0 + 1, c0);
+				double v11 = value(r0 + 1, c0 + 1);
+				if (!Double.isNaN(v00 + v01 + v10 + v11)) {
+					double fr = r - r0;
+					double fc = c - c0;
+					return (v00 * (1.0 - fc) + v01 * fc) * (1.0 - fr) +
+						(v10 * (1.0 - fc) + v11 * fc) * fr;
+				}
+			}
+		}
+		int ri = (int) Math.rint(r);
+		int ci = (int) Math.rint(c);
+		if (ri < 0 || ci < 0 || ri >= rows || ci >= cols) return Double.NaN;
+		return value(ri, ci);
+	}
+
+	/* Node value or NaN if no data. */
+	private double value(int row, int col) {
+		float value = values.get(row * cols + col);
+		return (value == noData) ? Double.NaN : value;
+	}
+
+	@Override public String toString() {
+		return new StringBuilder("SiteRaster [")
+			.append(rows).append(" x ").append(cols)
+			.append(", min=").append(latMin).append(",").append(lonMin)
+			.append(", Δ=").append(Δlat).append(",").append(Δlon)
+			.append("]")
+			.toString();
+	}
+
+}
@@ -3,8 +3,6 @@ package org.opensha2.calc;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.repeat;
-import static org.opensha2.calc.Site.Key.LAT;
-import static org.opensha2.calc.Site.Key.LON;
 import static org.opensha2.calc.Site.Key.NAME;
 import static org.opensha2.calc.Site.Key.VS30;
 import static org.opensha2.calc.Site.Key.VS_INF;
@@ -16,27 +14,27 @@ import static org.opensha2.util.TextUtils.ALIGN_COL;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.math.BigDecimal;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.EnumSet;
+import java.nio.file.Paths;
+import java.util.EnumMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.opensha2.calc.Site.Builder;
 import org.opensha2.calc.Site.Key;
+import org.opensha2.calc.SiteRaster.Interpolation;
 import org.opensha2.geo.GriddedRegion;
 import org.opensha2.geo.Location;
 import org.opensha2.geo.LocationList;
 import org.opensha2.geo.Regions;
-import org.opensha2.util.Parsing;
-import org.opensha2.util.Parsing.Delimiter;
 import org.opensha2.util.TextUtils;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
@@ -47,8 +45,10 @@ import com.google.gson.JsonParseException;
 
 /**
  * A {@code SiteSet} is an Iterable over a group of {@code Site}s. The supplied
- * {@code Site}s may be defined internally by a region with common properties or
- * a list of individual sites. Any {@code iterator} returned by this class is
+ * {@code Site}s may be defined internally by a region with common properties, a
+ * list of individual sites, or a site file that is parsed as it is iterated.
+ * The vs30, z1p0, and z2p5 values of region sites may also be supplied by
+ * {@link SiteRaster}s. Any {@code iterator} returned by this class is
  * unmodifiable.
  *
  * @author Peter Powers
@@ -58,21 +58,49 @@ final class SiteSet implements Iterable<Site> {
 	final private GriddedRegion region;
 	final private Builder builder;
 	final private List<Site> sites;
+	final private SiteFile file;
+	final private Map<Key, SiteRaster> rasters;
+	final private Interpolation interpolation;
 
 	SiteSet(List<Site> sites) {
 		this.sites = checkNotNull(sites);
 		this.region = null;
 		this.builder = null;
+		this.file = null;
+		this.rasters = null;
+		this.interpolation = null;
 	}
 
 	SiteSet(GriddedRegion region, Builder builder) {
+		this(region, builder, ImmutableMap.<Key, SiteRaster> of(), Interpolation.BILINEAR);
+	}
+
+	/*
+	 * Region sites take vs30, z1p0, and z2p5 values from the supplied rasters,
+	 * if present, falling back to the values of the supplied builder where a
+	 * raster has no data.
+	 */
+	SiteSet(GriddedRegion region, Builder builder, Map<Key, SiteRaster> rasters,
+			Interpolation interpolation) {
 		this.region = checkNotNull(region);
 		this.builder = checkNotNull(builder);
+		this.rasters = checkNotNull(rasters);
+		this.interpolation = checkNotNull(interpolation);
 		this.sites = null;
+		this.file = null;
+	}
+
+	SiteSet(SiteFile file) {
+		this.file = checkNotNull(file);
+		this.region = null;
+		this.builder = null;
+		this.sites = null;
+		this.rasters = null;
+		this.interpolation = null;
 	}
 
 	int size() {
-		return (region == null) ? sites.size() : region.size();
+		return (region != null) ? region.size() : (file != null) ? file.size() : sites.size();
 	}
 
 	// TODO use or clean
@@ -83,8 +111,8 @@ final class SiteSet implements Iterable<Site> {
 	}
 
 	@Override public Iterator<Site> iterator() {
-		return (region == null) ? Iterators.unmodifiableIterator(sites.iterator())
-			: new RegionIterator();
+		return (region != null) ? new RegionIterator() : (file != null) ? file.iterator() :
+			Iterators.unmodifiableIterator(sites.iterator());
 	}
 
 	private final class RegionIterator implements Iterator<Site> {
@@ -101,7 +129,28 @@ final class SiteSet implements Iterable<Site> {
 
 		@Override public Site next() {
 			builder.location(locations.next());
-			return builder.build();
+			Site site = builder.build();
+			return rasters.isEmpty() ? site : rasterSite(site);
+		}
+
+		private Site rasterSite(Site site) {
+			Builder rasterBuilder = Site.builder()
+				.name(site.name)
+				.location(site.location)
+				.vsInferred(site.vsInferred)
+				.vs30(rasterValue(VS30, site.location, site.vs30));
+			double z1p0 = rasterValue(Z1P0, site.location, site.z1p0);
+			if (!Double.isNaN(z1p0)) rasterBuilder.z1p0(z1p0);
+			double z2p5 = rasterValue(Z2P5, site.location, site.z2p5);
+			if (!Double.isNaN(z2p5)) rasterBuilder.z2p5(z2p5);
+			return rasterBuilder.build();
+		}
+
+		private double rasterValue(Key key, Location loc, double fallback) {
+			SiteRaster raster = rasters.get(key);
+			if (raster == null) return fallback;
+			double value = raster.value(loc, interpolation);
+			return Double.isNaN(value) ? fallback : value;
 		}
 
 		@Override public void remove() {
@@ -112,17 +161,22 @@ final class SiteSet implements Iterable<Site> {
 	private static final int TO_STRING_LIMIT = 5;
 
 	@Override public String toString() {
+		int size = size();
 		StringBuilder sb = new StringBuilder()
-			.append((region == null) ? "List" : "Region")
-			.append(" [size=").append(size()).append("]");
+			.append((region != null) ? "Region" : (file != null) ? "File" : "List")
+			.append(" [size=").append(size).append("]");
+		if (region != null && !rasters.isEmpty()) {
+			sb.append(" rasters=").append(rasters.keySet())
+				.append(" ").append(interpolation);
+		}
 		if (region == null) {
-			for (Site site : Iterables.limit(sites, TO_STRING_LIMIT)) {
+			for (Site site : Iterables.limit(this, TO_STRING_LIMIT)) {
 				sb.append(TextUtils.NEWLINE)
 					.append(repeat(" ", ALIGN_COL - 4))
 					.append(site);
 			}
-			if (sites.size() > TO_STRING_LIMIT) {
-				int delta = sites.size() - TO_STRING_LIMIT;
+			if (size > TO_STRING_LIMIT) {
+				int delta = size - TO_STRING_LIMIT;
 				sb.append(TextUtils.NEWLINE)
 					.append(repeat(" ", ALIGN_COL + 2))
 					.append("... and ").append(delta).append(" more ...");
@@ -133,84 +187,24 @@ final class SiteSet implements Iterable<Site> {
 
 	/**
 	 * Creates a {@code SiteSet} from the comma-delimted site file designated by
-	 * {@code path}.
+	 * {@code path}. Sites are parsed lazily during iteration; if an
+	 * {@code executor} is supplied, it is used to parse upcoming portions of
+	 * the file in parallel.
 	 * 
 	 * @param path to comma-delimited site data file
+	 * @param executor for parallel parsing; may be {@code null}
 	 * @throws IOException if problem encountered
 	 */
-	static SiteSet fromCsv(Path path) throws IOException {
+	static SiteSet fromCsv(Path path, Executor executor) throws IOException {
 		checkNotNull(path);
-
-		List<Site> siteList = new ArrayList<>();
-		Builder builder = Site.builder();
-
-		List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-		boolean firstline = true;
-		List<Key> keyList = new ArrayList<>();
-		for (String line : lines) {
-
-			// skip comments
-			if (line.startsWith("#")) continue;
-			if (line.trim().isEmpty()) continue;
-
-			List<String> values = Parsing.splitToList(line, Delimiter.COMMA);
-
-			// set up key/column ordering
-			if (firstline) {
-				Set<Key> keys = EnumSet.of(NAME, LAT, LON, VS30, VS_INF, Z1P0, Z2P5);
-				for (String keyStr : values) {
-					Key key = Key.fromString(keyStr);
-					checkState(keys.contains(key), "Illegal site property key [%s]", keyStr);
-					keyList.add(key);
-				}
-				checkState(keyList.contains(LAT), "Site latitudes must be defined");
-				checkState(keyList.contains(LON), "Site longitudes must be defined");
-				firstline = false;
-				continue;
-			}
-
-			int index = 0;
-			double lat = 0.0;
-			double lon = 0.0;
-			for (Key key : keyList) {
-				String value = values.get(index);
-				switch (key) {
-					case LAT:
-						lat = Double.parseDouble(value);
-						break;
-					case LON:
-						lon = Double.parseDouble(value);
-						break;
-					case NAME:
-						builder.name(value);
-						break;
-					case VS30:
-						builder.vs30(Double.parseDouble(value));
-						break;
-					case VS_INF:
-						builder.vsInferred(Boolean.parseBoolean(value));
-						break;
-					case Z1P0:
-						builder.z1p0(Double.parseDouble(value));
-						break;
-					case Z2P5:
-						builder.z2p5(Double.parseDouble(value));
-						break;
-					default:
-						throw new IllegalStateException("Unsupported site key: " + key);
-				}
-				index++;
-			}
-			builder.location(lat, lon);
-			siteList.add(builder.build());
-		}
-		return new SiteSet(siteList);
+		return new SiteSet(SiteFile.create(path, executor));
 	}
 
 	static final String SITES = "sites";
 	static final String REGION = "region";
 	static final String BORDER = "border";
 	static final String SPACING = "spacing";
+	static final String INTERPOLATION = "interpolation";
 
 	static class Deserializer implements JsonDeserializer<SiteSet> {
 
@@ -229,9 +223,19 @@ final class SiteSet implements Iterable<Site> {
 			// or a region
 			JsonObject jRegion = json.getAsJsonObject().getAsJsonObject(REGION);
 
+			/*
+			 * vs30, z1p0, and z2p5 may be supplied as a scalar or as the path to
+			 * a SiteRaster.
+			 */
+			Map<Key, SiteRaster> rasters = new EnumMap<>(Key.class);
+
 			if (jRegion.has(VS30.toString())) {
-				double vs30 = jRegion.get(VS30.toString()).getAsDouble();
-				builder.vs30(vs30);
+				JsonElement jVs30 = jRegion.get(VS30.toString());
+				if (isPath(jVs30)) {
+					rasters.put(VS30, readRaster(jVs30));
+				} else {
+					builder.vs30(jVs30.getAsDouble());
+				}
 			}
 
 			if (jRegion.has(VS_INF.toString())) {
@@ -240,13 +244,26 @@ final class SiteSet implements Iterable<Site> {
 			}
 
 			if (jRegion.has(Z1P0.toString())) {
-				double z1p0 = jRegion.get(Z1P0.toString()).getAsDouble();
-				builder.z1p0(z1p0);
+				JsonElement jZ1p0 = jRegion.get(Z1P0.toString());
+				if (isPath(jZ1p0)) {
+					rasters.put(Z1P0, readRaster(jZ1p0));
+				} else {
+					builder.z1p0(jZ1p0.getAsDouble());
+				}
 			}
 
 			if (jRegion.has(Z2P5.toString())) {
-				double z2p5 = jRegion.get(Z2P5.toString()).getAsDouble();
-				builder.z2p5(z2p5);
+				JsonElement jZ2p5 = jRegion.get(Z2P5.toString());
+				if (isPath(jZ2p5)) {
+					rasters.put(Z2P5, readRaster(jZ2p5));
+				} else {
+					builder.z2p5(jZ2p5.getAsDouble());
+				}
+			}
+
+			Interpolation interpolation = Interpolation.BILINEAR;
+			if (jRegion.has(INTERPOLATION)) {
+				interpolation = Interpolation.valueOf(jRegion.get(INTERPOLATION).getAsString());
 			}
 
 			checkState(jRegion.has(BORDER), "Site region must define a border");
@@ -278,7 +295,19 @@ final class SiteSet implements Iterable<Site> {
 				Regions.createGridded(name, border, MERCATOR_LINEAR,
 					spacing, spacing, GriddedRegion.ANCHOR_0_0);
 
-			return new SiteSet(region, builder);
+			return new SiteSet(region, builder, Maps.immutableEnumMap(rasters), interpolation);
+		}
+
+		private static boolean isPath(JsonElement json) {
+			return json.isJsonPrimitive() && json.getAsJsonPrimitive().isString();
+		}
+
+		private static SiteRaster readRaster(JsonElement json) {
+			try {
+				return SiteRaster.fromFile(Paths.get(json.getAsString()));
+			} catch (IOException ioe) {
+				throw new JsonParseException("Unable to read site raster: " + json, ioe);
+			}
 		}
 	}
 }
@@ -0,0 +1,199 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+
+/**
+ * One of a number of deterministic partitions of the sites of a calculation.
+ * Sharding allows a large calculation, such as a national map, to be
+ * distributed across many processes or machines, each of which computes the
+ * sites of a single shard. Sites are assigned to shards by their index in the
+ * iteration order of a site {@code Iterable}, so the sites of a shard, and the
+ * shard that owns any site, depend only on the shard count, the partitioning
+ * scheme, and the total number of sites.
+ *
+ * <p>Shard indices are zero-based. With {@link Partition#CONTIGUOUS contiguous}
+ * partitioning, each shard owns a single run of consecutive sites; with
+ * {@link Partition#STRIDED strided} partitioning, shard {@code i} owns every
+ * {@code count}<sup>th</sup> site starting at site {@code i}, which tends to
+ * balance work across shards when computational cost varies regionally. The
+ * sizes of shards differ by at most one site.</p>
+ *
+ * @author Peter Powers
+ */
+public final class SiteShard {
+
+	private final int index;
+	private final int count;
+	private final Partition partition;
+
+	/**
+	 * Site partitioning schemes.
+	 */
+	public enum Partition {
+
+		/** Assign a single run of consecutive sites to each shard. */
+		CONTIGUOUS {
+			@Override public int owner(int site, int size, int count) {
+				checkElementIndex(site, size);
+				// largest shard whose first site is at or before site
+				return (int) (((site + 1L) * count + size - 1) / size) - 1;
+			}
+		},
+
+		/** Assign every {@code count}<sup>th</sup> site to each shard. */
+		STRIDED {
+			@Override public int owner(int site, int size, int count) {
+				checkElementIndex(site, size);
+				return site % count;
+			}
+		};
+
+		/**
+		 * Return the index of the shard that owns a site.
+		 *
+		 * @param site index in iteration order
+		 * @param size total number of sites
+		 * @param count number of shards
+		 */
+		public abstract int owner(int site, int size, int count);
+	}
+
+	private SiteShard(int index, int count, Partition partition) {
+		checkArgument(count > 0, "Shard count [%s] must be positive", count);
+		checkElementIndex(index, count, "Shard index");
+		this.index = index;
+		this.count = count;
+		this.partition = checkNotNull(partition);
+	}
+
+	/**
+	 * Create a new shard.
+	 *
+	 * @param index of shard, in the range {@code [0, count)}
+	 * @param count number of shards
+	 * @param partition scheme
+	 */
+	public static SiteShard create(int index, int count, Partition partition) {
+		return new SiteShard(index, count, partition);
+	}
+
+	/**
+	 * Create a new shard from a string of the form
+	 * {@code index/count[:partition]}, for example {@code 3/16} or
+	 * {@code 3/16:strided}. Partitioning is contiguous unless otherwise
+	 * specified.
+	 *
+	 * @param s string to parse
+	 */
+	public static SiteShard fromString(String s) {
+		List<String> parts = Splitter.on(':').trimResults().splitToList(s);
+		checkArgument(parts.size() <= 2, "Invalid shard [%s]", s);
+		List<String> values = Splitter.on('/').trimResults().splitToList(parts.get(0));
+		checkArgument(values.size() == 2, "Invalid shard [%s]", s);
+		Partition partition = (parts.size() == 2) ?
+			Partition.valueOf(parts.get(1).toUpperCase()) : Partition.CONTIGUOUS;
+		return new SiteShard(
+			Integer.parseInt(values.get(0)),
+			Integer.parseInt(values.get(1)),
+			partition);
+	}
+
+	/** The index of this shard. */
+	public int index() {
+		return index;
+	}
+
+	/** The number of shards. */
+	public int count() {
+		return count;
+	}
+
+	/** The partitioning scheme. */
+	public Partition partition() {
+		return partition;
+	}
+
+	/**
+	 * Return whether this shard owns a site.
+	 *
+	 * @param site index in iteration order
+	 * @param size total number of sites
+	 */
+	public boolean contains(int site, int size) {
+		return partition.owner(site, size, count) == index;
+	}
+
+	/**
+	 * Return the number of sites owned by this shard.
+	 *
+	 * @param size total number of sites
+	 */
+	public int size(int size) {
+		return (partition == Partition.CONTIGUOUS) ?
+			start(size, index + 1) - start(size, index) :
+			(size - index + count - 1) / count;
+	}
+
+	/**
+	 * Return the sites of this shard, in iteration order. The returned
+	 * {@code Iterable} is a lazy view of the supplied {@code sites}.
+	 *
+	 * @param sites to partition
+	 * @param size total number of sites
+	 */
+	public Iterable<Site> sites(final Iterable<Site> sites, final int size) {
+		if (partition == Partition.CONTIGUOUS) {
+			int start = start(size, index);
+			return Iterables.limit(Iterables.skip(sites, start), start(size, index + 1) - start);
+		}
+		return new Iterable<Site>() {
+			@Override public Iterator<Site> iterator() {
+				final Iterator<Site> siteIterator = sites.iterator();
+				return new AbstractIterator<Site>() {
+					int next = 0;
+
+					@Override protected Site computeNext() {
+						while (siteIterator.hasNext()) {
+							Site site = siteIterator.next();
+							if (next++ % count == index) return site;
+						}
+						return endOfData();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Return the total number of sites in an {@code Iterable}. The sites of a
+	 * configuration or site file are counted without being created; other
+	 * {@code Iterable}s are iterated.
+	 *
+	 * @param sites to count
+	 */
+	public static int size(Iterable<Site> sites) {
+		if (sites instanceof SiteSet) return ((SiteSet) sites).size();
+		if (sites instanceof Collection) return ((Collection<Site>) sites).size();
+		return Iterables.size(sites);
+	}
+
+	/* The first site of a contiguous shard. */
+	private int start(int size, int shard) {
+		return (int) ((long) shard * size / count);
+	}
+
+	@Override public String toString() {
+		return index + "/" + count + ":" + partition.name().toLowerCase();
+	}
+
+}
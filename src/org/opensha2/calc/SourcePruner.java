@@ -0,0 +1,286 @@
+package org.opensha2.calc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.opensha2.geo.GeoTools.TO_RAD;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opensha2.calc.CalcConfig.PruningData;
+import org.opensha2.data.ArrayXY_Sequence;
+import org.opensha2.eq.fault.Faults;
+import org.opensha2.eq.fault.surface.RuptureSurface;
+import org.opensha2.eq.model.ClusterSource;
+import org.opensha2.eq.model.FaultSource;
+import org.opensha2.eq.model.GmmSet;
+import org.opensha2.eq.model.Rupture;
+import org.opensha2.eq.model.Source;
+import org.opensha2.eq.model.SourceSet;
+import org.opensha2.geo.Location;
+import org.opensha2.gmm.Gmm;
+import org.opensha2.gmm.GroundMotionModel;
+import org.opensha2.gmm.Imt;
+import org.opensha2.gmm.ScalarGroundMotion;
+
+import com.google.common.collect.Table;
+import com.google.common.util.concurrent.AtomicDouble;
+
+/**
+ * Contribution-bound pruning of negligible {@link Source}s. The contribution
+ * of a {@code Source} to a hazard curve can not exceed the product of its total
+ * rate, the weight of its parent {@code SourceSet}, and the largest probability
+ * with which any of its ruptures exceeds the lowest intensity measure level
+ * (IML) of the curve. Sources whose contribution bound is less than a
+ * {@link PruningData#tolerance tolerance} are skipped prior to computing
+ * inputs, ground motions, and curves.
+ *
+ * <p>Bounds are computed in two stages. A source whose weighted rate alone is
+ * less than the tolerance is skipped without further work. Otherwise, the
+ * probability of exceeding the lowest IML of each {@code Imt} is bounded by
+ * evaluating each ground motion model of the {@code SourceSet} at the
+ * {@link Source#mMax() maximum magnitude} of the source and its
+ * {@link Source#minDistance(Location) minimum distance} to the site, once for
+ * each distinct combination of dip, rake, and depth to top of rupture in the
+ * {@code SourceSet}. Inputs use the greatest width of each combination, an
+ * rRup no less than the depth to top of rupture, a site on the hanging wall,
+ * and the largest additional epistemic uncertainty of the {@code GmmSet};
+ * exceedance is computed with the {@link ExceedanceModel} and truncation level
+ * of the configuration. The bound assumes that median ground motion does not
+ * decrease with magnitude or increase with distance. With upper truncation, a
+ * source that can not reach the lowest IML has a bound of 0. The bound of a
+ * {@code ClusterSource} is scaled by its number of faults.</p>
+ *
+ * <p>The tolerance applies to each source independently; the error in a curve
+ * is bounded by the summed bound of all skipped sources, which is available via
+ * {@link #skippedRate()} along with source and source set skip counts. A
+ * {@code SourceSet} is skipped if all of its sources are skipped. When
+ * variants of a site that differ only in site properties are computed
+ * together, a source is retained for all variants if its bound at any variant
+ * reaches the tolerance. System sources are handled collectively and are
+ * never pruned.</p>
+ *
+ * @author Peter Powers
+ * @see CalcConfig
+ */
+public final class SourcePruner {
+
+	private final double tolerance;
+	private final ExceedanceModel exceedanceModel;
+	private final double truncationLevel;
+	private final Map<Imt, Double> minImls; // natural log
+
+	/* Rupture geometries of each SourceSet, computed on first use. */
+	private final ConcurrentMap<SourceSet<?>, List<double[]>> geometries =
+		new ConcurrentHashMap<>();
+
+	private final AtomicLong sourceCount = new AtomicLong();
+	private final AtomicLong skippedSourceCount = new AtomicLong();
+	private final AtomicLong sourceSetCount = new AtomicLong();
+	private final AtomicLong skippedSourceSetCount = new AtomicLong();
+	private final AtomicDouble skippedRate = new AtomicDouble();
+
+	SourcePruner(
+			PruningData data,
+			ExceedanceModel exceedanceModel,
+			double truncationLevel,
+			Map<Imt, ArrayXY_Sequence> logModelCurves) {
+
+		checkArgument(data.tolerance >= 0.0, "Pruning tolerance [%s] must be non-negative",
+			data.tolerance);
+		tolerance = data.tolerance;
+		this.exceedanceModel = exceedanceModel;
+		this.truncationLevel = truncationLevel;
+		minImls = new EnumMap<>(Imt.class);
+		for (Entry<Imt, ArrayXY_Sequence> entry : logModelCurves.entrySet()) {
+			minImls.put(entry.getKey(), entry.getValue().x(0));
+		}
+	}
+
+	/*
+	 * Return the sources that may contribute more than the tolerance to the
+	 * curves of any of a number of variants of a site. Variants share a
+	 * location and differ only in site properties, so a source is retained if
+	 * its bound at any variant is not less than the tolerance. The ground
+	 * motion models of the source set are supplied by the caller.
+	 */
+	<T extends Source> List<T> prune(
+			SourceSet<T> sourceSet,
+			Iterable<T> sources,
+			List<Site> sites,
+			Table<Gmm, Imt, GroundMotionModel> gmmInstances) {
+
+		double weight = sourceSet.weight();
+		List<T> retained = new ArrayList<>();
+		int skipped = 0;
+		double skippedSum = 0.0;
+		for (T source : sources) {
+			double bound = weight * source.rate();
+			if (bound >= tolerance) {
+				bound *= exceedance(sourceSet, source, sites, gmmInstances, tolerance / bound);
+			}
+			if (bound < tolerance) {
+				skipped++;
+				skippedSum += bound;
+			} else {
+				retained.add(source);
+			}
+		}
+		sourceSetCount.incrementAndGet();
+		if (retained.isEmpty() && skipped > 0) skippedSourceSetCount.incrementAndGet();
+		sourceCount.addAndGet(skipped + retained.size());
+		skippedSourceCount.addAndGet(skipped);
+		skippedRate.addAndGet(skippedSum);
+		return retained;
+	}
+
+	/*
+	 * Return an upper bound on the probability that a rupture of a source
+	 * exceeds the lowest IML of any Imt at any site variant. Returns early with
+	 * a partial maximum once the threshold is reached.
+	 */
+	private double exceedance(
+			SourceSet<? extends Source> sourceSet,
+			Source source,
+			List<Site> sites,
+			Table<Gmm, Imt, GroundMotionModel> gmmInstances,
+			double threshold) {
+
+		int faultCount = (source instanceof ClusterSource) ?
+			((ClusterSource) source).faults().size() : 1;
+		threshold /= faultCount;
+
+		double mMax = source.mMax();
+		double rJB = source.minDistance(sites.get(0).location);
+		double δ = maxEpiValue(sourceSet.groundMotionModels());
+		double max = 0.0;
+		for (double[] geometry : geometries(sourceSet)) {
+			double dip = geometry[0];
+			double width = geometry[1];
+			double zTop = geometry[2];
+			double rake = geometry[3];
+			double rRup = Math.max(rJB, zTop);
+			double rX = rJB + width * Math.cos(dip * TO_RAD);
+			double zHyp = Faults.hypocentralDepth(dip, width, zTop);
+			for (Site site : sites) {
+				HazardInput input = new HazardInput(0.0, mMax, rJB, rRup, rX, dip, width, zTop,
+					zHyp, rake, site.vs30, site.vsInferred, site.z1p0, site.z2p5);
+				for (Entry<Imt, Double> entry : minImls.entrySet()) {
+					Imt imt = entry.getKey();
+					for (GroundMotionModel model : gmmInstances.column(imt).values()) {
+						ScalarGroundMotion sgm = model.calc(input);
+						double p = exceedanceModel.exceedance(sgm.mean() + δ, sgm.sigma(),
+							truncationLevel, imt, entry.getValue());
+						max = Math.max(max, p);
+						if (max >= threshold) return Math.min(1.0, max * faultCount);
+					}
+				}
+			}
+		}
+		return Math.min(1.0, max * faultCount);
+	}
+
+	/*
+	 * The largest additional epistemic uncertainty of a GmmSet over all
+	 * magnitude and distance bins.
+	 */
+	private static double maxEpiValue(GmmSet gmmSet) {
+		if (!gmmSet.epiUncertainty()) return 0.0;
+		double max = 0.0;
+		for (double m : new double[] { 5.0, 6.5, 8.0 }) {
+			for (double r : new double[] { 0.0, 20.0, 40.0 }) {
+				max = Math.max(max, Math.abs(gmmSet.epiValue(m, r)));
+			}
+		}
+		return max;
+	}
+
+	/*
+	 * The distinct {dip, width, zTop, rake} combinations of the ruptures of a
+	 * SourceSet, where width is the greatest of ruptures with the same dip,
+	 * zTop, and rake. Concurrent first uses may compute identical results.
+	 */
+	private List<double[]> geometries(SourceSet<? extends Source> sourceSet) {
+		List<double[]> list = geometries.get(sourceSet);
+		if (list != null) return list;
+		Map<List<Double>, double[]> map = new HashMap<>();
+		for (Source source : sourceSet) {
+			if (source instanceof ClusterSource) {
+				for (FaultSource fault : ((ClusterSource) source).faults()) {
+					addGeometries(map, fault);
+				}
+			} else {
+				addGeometries(map, source);
+			}
+		}
+		list = new ArrayList<>(map.values());
+		geometries.putIfAbsent(sourceSet, list);
+		return list;
+	}
+
+	private static void addGeometries(Map<List<Double>, double[]> map, Source source) {
+		for (Rupture rupture : source) {
+			RuptureSurface surface = rupture.surface();
+			double dip = surface.dip();
+			double width = surface.width();
+			double zTop = surface.depth();
+			double rake = rupture.rake();
+			List<Double> key = Arrays.asList(dip, zTop, rake);
+			double[] geometry = map.get(key);
+			if (geometry == null) {
+				map.put(key, new double[] { dip, width, zTop, rake });
+			} else {
+				geometry[1] = Math.max(geometry[1], width);
+			}
+		}
+	}
+
+	/**
+	 * Return the pruning tolerance, in units of annual rate.
+	 */
+	public double tolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Return the number of {@code Source}s skipped.
+	 */
+	public long skippedSourceCount() {
+		return skippedSourceCount.get();
+	}
+
+	/**
+	 * Return the number of {@code SourceSet}s skipped.
+	 */
+	public long skippedSourceSetCount() {
+		return skippedSourceSetCount.get();
+	}
+
+	/**
+	 * Return the summed contribution bound of all skipped {@code Source}s. This
+	 * is an upper bound on the summed error in the curves of all sites
+	 * processed.
+	 */
+	public double skippedRate() {
+		return skippedRate.get();
+	}
+
+	@Override public String toString() {
+		return new StringBuilder("Source pruning: ")
+			.append("tolerance=").append(tolerance)
+			.append(", sources=").append(sourceCount.get())
+			.append(", skipped=").append(skippedSourceCount.get())
+			.append(", sourceSets=").append(sourceSetCount.get())
+			.append(", skipped=").append(skippedSourceSetCount.get())
+			.append(", skippedRate=").append(String.format("%.3e", skippedRate.get()))
+			.toString();
+	}
+
+}
@@ -5,12 +5,15 @@ import static org.opensha2.eq.model.Distance.Type.R_JB;
 import static org.opensha2.eq.model.Distance.Type.R_RUP;
 import static org.opensha2.eq.model.Distance.Type.R_X;
 
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RecursiveTask;
 
 import org.opensha2.calc.ClusterCurves.Builder;
 import org.opensha2.data.ArrayXY_Sequence;
@@ -23,6 +26,7 @@ import org.opensha2.eq.model.ClusterSourceSet;
 import org.opensha2.eq.model.Distance;
 import org.opensha2.eq.model.Distance.Type;
 import org.opensha2.eq.model.FaultSource;
+import org.opensha2.eq.model.GmmSet;
 import org.opensha2.eq.model.HazardModel;
 import org.opensha2.eq.model.Rupture;
 import org.opensha2.eq.model.Source;
@@ -34,8 +38,10 @@ import org.opensha2.gmm.Gmm;
 import org.opensha2.gmm.GmmInput;
 import org.opensha2.gmm.GroundMotionModel;
 import org.opensha2.gmm.Imt;
+import org.opensha2.gmm.ScalarGroundMotion;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayTable;
 import com.google.common.collect.Iterables;
@@ -63,40 +69,179 @@ final class Transforms {
 
 		@Override public SourceInputList apply(final Source source) {
 			SourceInputList hazardInputs = new SourceInputList(source);
-			int count = 0;
+			for (Rupture rup : source) {
+				hazardInputs.add(toInput(rup, site));
+			}
+			return hazardInputs;
+		}
+
+		static HazardInput toInput(final Rupture rup, final Site site) {
+
+			RuptureSurface surface = rup.surface();
+
+			Distance distances = surface.distanceTo(site.location);
+			double dip = surface.dip();
+			double width = surface.width();
+			double zTop = surface.depth();
+			double zHyp = Faults.hypocentralDepth(dip, width, zTop);
+
+			return new HazardInput(
+				rup.rate(),
+				rup.mag(),
+				distances.rJB,
+				distances.rRup,
+				distances.rX,
+				dip,
+				width,
+				zTop,
+				zHyp,
+				rup.rake(),
+				site.vs30,
+				site.vsInferred,
+				site.z1p0,
+				site.z2p5);
+		}
+	}
+
+	/*
+	 * Exceedance curve calculator. Any additional epistemic uncertainty
+	 * defined by a GmmSet is applied as weighted shifts of the mean of a single
+	 * ground motion (μ + δ, μ, μ - δ), where δ is binned on the magnitude and
+	 * rupture distance of the associated input. In the absence of additional
+	 * uncertainty, curves are identical to those computed directly with the
+	 * ExceedanceModel.
+	 */
+	static final class ExceedanceKernel {
+
+		private final ExceedanceModel exceedanceModel;
+		private final double truncationLevel;
+		private final GmmSet gmmSet;
+		private final double[] epiWeights;
+
+		ExceedanceKernel(final CalcConfig config, final GmmSet gmmSet) {
+			this.exceedanceModel = config.exceedanceModel;
+			this.truncationLevel = config.truncationLevel;
+			this.gmmSet = gmmSet;
+			this.epiWeights = gmmSet.epiUncertainty() ? gmmSet.epiWeights() : null;
+		}
+
+		/*
+		 * Set the y-values of 'curve' to the exceedance curve of the supplied
+		 * ground motion scaled by the rate of the input; 'epiCurve' is a working
+		 * copy of the model curve that is only used when additional
+		 * uncertainty is defined.
+		 */
+		ArrayXY_Sequence exceedance(
+				final double μ,
+				final double σ,
+				final Imt imt,
+				final HazardInput in,
+				final ArrayXY_Sequence curve,
+				final ArrayXY_Sequence epiCurve) {
+
+			exceedanceModel.exceedance(μ, σ, truncationLevel, imt, curve);
+			if (epiWeights != null) {
+				double δ = gmmSet.epiValue(in.Mw, in.rRup);
+				curve.multiply(epiWeights[1]);
+				exceedanceModel.exceedance(μ + δ, σ, truncationLevel, imt, epiCurve);
+				curve.add(epiCurve.multiply(epiWeights[0]));
+				exceedanceModel.exceedance(μ - δ, σ, truncationLevel, imt, epiCurve);
+				curve.add(epiCurve.multiply(epiWeights[2]));
+			}
+			return curve.multiply(in.rate);
+		}
+	}
+
+	/*
+	 * Fused Source to HazardCurves transform that does not retain inputs or
+	 * ground motions. Ruptures are processed in fixed-size blocks: distances,
+	 * then ground motions, then exceedance curves are accumulated directly
+	 * into per-Gmm curves. The working set is therefore independent of the
+	 * number of Ruptures in a Source. Curves are identical to those obtained
+	 * via SourceToInputs, InputsToGroundMotions, and GroundMotionsToCurves as
+	 * the order of accumulation is preserved.
+	 */
+	static final class SourceToCurves implements Function<Source, HazardCurves> {
+
+		private static final int BLOCK_SIZE = 256;
+
+		private final Site site;
+		private final Table<Gmm, Imt, GroundMotionModel> gmmInstances;
+		private final Map<Imt, ArrayXY_Sequence> modelCurves;
+		private final ExceedanceKernel kernel;
 
+		SourceToCurves(
+				final Site site,
+				final Table<Gmm, Imt, GroundMotionModel> gmmInstances,
+				final GmmSet gmmSet,
+				final CalcConfig config) {
+
+			this.site = site;
+			this.gmmInstances = gmmInstances;
+			this.modelCurves = config.logModelCurves;
+			this.kernel = new ExceedanceKernel(config, gmmSet);
+		}
+
+		@Override public HazardCurves apply(final Source source) {
+
+			Map<Imt, Map<Gmm, ArrayXY_Sequence>> curves = new EnumMap<>(Imt.class);
+			Map<Imt, ArrayXY_Sequence> utilCurves = new EnumMap<>(Imt.class);
+			Map<Imt, ArrayXY_Sequence> epiCurves = new EnumMap<>(Imt.class);
+			for (Imt imt : modelCurves.keySet()) {
+				Map<Gmm, ArrayXY_Sequence> gmmCurves = new EnumMap<>(Gmm.class);
+				for (Gmm gmm : gmmInstances.rowKeySet()) {
+					gmmCurves.put(gmm, ArrayXY_Sequence.copyOf(modelCurves.get(imt)));
+				}
+				curves.put(imt, gmmCurves);
+				utilCurves.put(imt, ArrayXY_Sequence.copyOf(modelCurves.get(imt)));
+				epiCurves.put(imt, ArrayXY_Sequence.copyOf(modelCurves.get(imt)));
+			}
+
+			HazardInput[] block = new HazardInput[BLOCK_SIZE];
+			int count = 0;
+			double minDistance = Double.MAX_VALUE;
 			for (Rupture rup : source) {
+				HazardInput input = SourceToInputs.toInput(rup, site);
+				minDistance = min(minDistance, input.rJB);
+				block[count++] = input;
+				if (count == BLOCK_SIZE) {
+					accumulate(block, count, curves, utilCurves, epiCurves);
+					count = 0;
+				}
+			}
+			accumulate(block, count, curves, utilCurves, epiCurves);
 
-				RuptureSurface surface = rup.surface();
-
-				Distance distances = surface.distanceTo(site.location);
-				double dip = surface.dip();
-				double width = surface.width();
-				double zTop = surface.depth();
-				double zHyp = Faults.hypocentralDepth(dip, width, zTop);
-
-				HazardInput input = new HazardInput(
-					rup.rate(),
-					rup.mag(),
-					distances.rJB,
-					distances.rRup,
-					distances.rX,
-					dip,
-					width,
-					zTop,
-					zHyp,
-					rup.rake(),
-					site.vs30,
-					site.vsInferred,
-					site.z1p0,
-					site.z2p5);
-				hazardInputs.add(input);
-//				System.out.println(input);
-				if (count % 100000 == 0) System.out.println(count);
-				count++;
+			HazardCurves.Builder builder = HazardCurves.builder(modelCurves.keySet(), minDistance);
+			for (Entry<Imt, Map<Gmm, ArrayXY_Sequence>> imtEntry : curves.entrySet()) {
+				for (Entry<Gmm, ArrayXY_Sequence> gmmEntry : imtEntry.getValue().entrySet()) {
+					builder.addCurve(imtEntry.getKey(), gmmEntry.getKey(), gmmEntry.getValue());
+				}
+			}
+			return builder.build();
+		}
+
+		private void accumulate(
+				final HazardInput[] block,
+				final int count,
+				final Map<Imt, Map<Gmm, ArrayXY_Sequence>> curves,
+				final Map<Imt, ArrayXY_Sequence> utilCurves,
+				final Map<Imt, ArrayXY_Sequence> epiCurves) {
+
+			for (Entry<Imt, Map<Gmm, ArrayXY_Sequence>> imtEntry : curves.entrySet()) {
+				Imt imt = imtEntry.getKey();
+				ArrayXY_Sequence utilCurve = utilCurves.get(imt);
+				ArrayXY_Sequence epiCurve = epiCurves.get(imt);
+				for (Entry<Gmm, ArrayXY_Sequence> gmmEntry : imtEntry.getValue().entrySet()) {
+					GroundMotionModel model = gmmInstances.get(gmmEntry.getKey(), imt);
+					ArrayXY_Sequence gmmCurve = gmmEntry.getValue();
+					for (int i = 0; i < count; i++) {
+						HazardInput input = block[i];
+						ScalarGroundMotion sgm = model.calc(input);
+						kernel.exceedance(sgm.mean(), sgm.sigma(), imt, input, utilCurve, epiCurve);
+						gmmCurve.add(utilCurve);
+					}
+				}
 			}
-			
-			return hazardInputs;
 		}
 	}
 
@@ -129,13 +274,11 @@ final class Transforms {
 	static final class GroundMotionsToCurves implements Function<GroundMotions, HazardCurves> {
 
 		private final Map<Imt, ArrayXY_Sequence> modelCurves;
-		private final ExceedanceModel exceedanceModel;
-		private final double truncationLevel;
+		private final ExceedanceKernel kernel;
 
-		GroundMotionsToCurves(CalcConfig config) {
+		GroundMotionsToCurves(CalcConfig config, GmmSet gmmSet) {
 			this.modelCurves = config.logModelCurves;
-			this.exceedanceModel = config.exceedanceModel;
-			this.truncationLevel = config.truncationLevel;
+			this.kernel = new ExceedanceKernel(config, gmmSet);
 		}
 
 		@Override public HazardCurves apply(final GroundMotions groundMotions) {
@@ -148,6 +291,7 @@ final class Transforms {
 				Imt imt = entry.getKey();
 
 				ArrayXY_Sequence utilCurve = ArrayXY_Sequence.copyOf(modelCurve);
+				ArrayXY_Sequence epiCurve = ArrayXY_Sequence.copyOf(modelCurve);
 
 				Map<Gmm, List<Double>> gmmMeans = groundMotions.means.get(imt);
 				Map<Gmm, List<Double>> gmmSigmas = groundMotions.sigmas.get(imt);
@@ -160,13 +304,8 @@ final class Transforms {
 					List<Double> sigmas = gmmSigmas.get(gmm);
 
 					for (int i = 0; i < means.size(); i++) {
-						exceedanceModel.exceedance(
-							means.get(i),
-							sigmas.get(i),
-							truncationLevel,
-							imt,
-							utilCurve);
-						utilCurve.multiply(groundMotions.inputs.get(i).rate);
+						kernel.exceedance(means.get(i), sigmas.get(i), imt,
+							groundMotions.inputs.get(i), utilCurve, epiCurve);
 						gmmCurve.add(utilCurve);
 					}
 					curveBuilder.addCurve(imt, gmm, gmmCurve);
@@ -176,6 +315,126 @@ final class Transforms {
 		}
 	}
 
+	/*
+	 * Composite Source to HazardCurves function. Uses the fused SourceToCurves
+	 * transform unless the config requires that ground motions be retained.
+	 */
+	static Function<Source, HazardCurves> sourceToCurves(
+			final Site site,
+			final Table<Gmm, Imt, GroundMotionModel> gmmInstances,
+			final GmmSet gmmSet,
+			final CalcConfig config) {
+
+		if (!config.retainGroundMotions) {
+			return new SourceToCurves(site, gmmInstances, gmmSet, config);
+		}
+		return Functions.compose(
+			new GroundMotionsToCurves(config, gmmSet),
+			Functions.compose(
+				new InputsToGroundMotions(gmmInstances),
+				new SourceToInputs(site)));
+	}
+
+	/*
+	 * Fork-join decomposition of a List of Sources. Tasks split in half until
+	 * either a single Source remains or the worker queue holds a surplus of
+	 * unclaimed tasks, at which point the remaining range of Sources is
+	 * processed sequentially (see sourceToCurves()). Adaptive
+	 * splitting keeps the number of tasks proportional to the number of
+	 * workers rather than the number of Sources. The order of the returned
+	 * HazardCurves matches the order of the supplied Sources.
+	 *
+	 * Joins concatenate per-Source results rather than reducing them to
+	 * partial curve sums. Because the split points depend on queue state at
+	 * run time, summing at each join would make the order of floating point
+	 * addition, and hence the low order bits of the resulting curves, vary
+	 * from run to run. Concatenation leaves summation to CurveConsolidator,
+	 * which always adds curves in Source order, so results are identical to a
+	 * sequential calculation. The cost is that one HazardCurves per Source is
+	 * held until the SourceSet is consolidated; this is transient and small
+	 * relative to the retained GroundMotions that deaggregation requires.
+	 */
+	static final class SourcesToCurves extends RecursiveTask<List<HazardCurves>> {
+
+		private static final long serialVersionUID = 1L;
+		private static final int SURPLUS_LIMIT = 3;
+
+		private final List<Source> sources;
+		private final int from;
+		private final int to;
+		private final Function<Source, HazardCurves> function;
+
+		SourcesToCurves(
+				final List<Source> sources,
+				final Site site,
+				final Table<Gmm, Imt, GroundMotionModel> gmmInstances,
+				final GmmSet gmmSet,
+				final CalcConfig config) {
+
+			this(sources, 0, sources.size(), sourceToCurves(site, gmmInstances, gmmSet, config));
+		}
+
+		private SourcesToCurves(
+				final List<Source> sources,
+				final int from,
+				final int to,
+				final Function<Source, HazardCurves> function) {
+
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+			this.function = function;
+		}
+
+		@Override protected List<HazardCurves> compute() {
+			int size = to - from;
+			if (size > 1 && getSurplusQueuedTaskCount() <= SURPLUS_LIMIT) {
+				int mid = from + size / 2;
+				SourcesToCurves left = new SourcesToCurves(sources, from, mid, function);
+				SourcesToCurves right = new SourcesToCurves(sources, mid, to, function);
+				left.fork();
+				List<HazardCurves> rightCurves = right.compute();
+				List<HazardCurves> curves = left.join();
+				curves.addAll(rightCurves);
+				return curves;
+			}
+			List<HazardCurves> curves = new ArrayList<>(size);
+			for (int i = from; i < to; i++) {
+				curves.add(function.apply(sources.get(i)));
+			}
+			return curves;
+		}
+	}
+
+	/*
+	 * Must be applied in a ForkJoinPool worker thread.
+	 */
+	static final class SourcesToCurveSet implements Function<List<Source>, HazardCurveSet> {
+
+		private final SourceSet<? extends Source> sourceSet;
+		private final Site site;
+		private final Table<Gmm, Imt, GroundMotionModel> gmmInstances;
+		private final CalcConfig config;
+
+		SourcesToCurveSet(
+				final SourceSet<? extends Source> sourceSet,
+				final Site site,
+				final Table<Gmm, Imt, GroundMotionModel> gmmInstances,
+				final CalcConfig config) {
+
+			this.sourceSet = sourceSet;
+			this.site = site;
+			this.gmmInstances = gmmInstances;
+			this.config = config;
+		}
+
+		@Override public HazardCurveSet apply(final List<Source> sources) {
+			List<HazardCurves> curves = new SourcesToCurves(sources, site, gmmInstances,
+				sourceSet.groundMotionModels(), config).invoke();
+			return new CurveConsolidator(sourceSet, config.logModelCurves).apply(curves);
+		}
+	}
+
 	static final class CurveConsolidator implements Function<List<HazardCurves>, HazardCurveSet> {
 
 		private final Map<Imt, ArrayXY_Sequence> modelCurves;
@@ -247,6 +506,53 @@ final class Transforms {
 		}
 	}
 
+	/*
+	 * Copy an InputList, replacing the site terms of each HazardInput with those
+	 * of the supplied Site. Rupture geometry and distances are unchanged; the
+	 * supplied Site is assumed to be at the same location as that used to
+	 * create the original inputs.
+	 */
+	static final class InputsToSiteInputs implements Function<InputList, InputList> {
+
+		private final Site site;
+
+		InputsToSiteInputs(final Site site) {
+			this.site = site;
+		}
+
+		@Override public InputList apply(final InputList inputs) {
+			InputList siteInputs = (inputs instanceof SystemInputList) ?
+				new SystemInputList(((SystemInputList) inputs).parent) :
+				new SourceInputList(((SourceInputList) inputs).parent);
+			for (HazardInput in : inputs) {
+				siteInputs.add(new HazardInput(
+					in.rate,
+					in.Mw, in.rJB, in.rRup, in.rX,
+					in.dip, in.width, in.zTop, in.zHyp, in.rake,
+					site.vs30, site.vsInferred, site.z1p0, site.z2p5));
+			}
+			return siteInputs;
+		}
+	}
+
+	static final class ClusterInputsToSiteInputs implements
+			Function<ClusterInputs, ClusterInputs> {
+
+		private final InputsToSiteInputs transform;
+
+		ClusterInputsToSiteInputs(final Site site) {
+			transform = new InputsToSiteInputs(site);
+		}
+
+		@Override public ClusterInputs apply(final ClusterInputs clusterInputs) {
+			ClusterInputs siteInputs = new ClusterInputs(clusterInputs.parent);
+			for (SourceInputList inputs : clusterInputs) {
+				siteInputs.add((SourceInputList) transform.apply(inputs));
+			}
+			return siteInputs;
+		}
+	}
+
 	static final class ClusterInputsToGroundMotions implements
 			Function<ClusterInputs, ClusterGroundMotions> {
 
@@ -276,13 +582,11 @@ final class Transforms {
 			Function<ClusterGroundMotions, ClusterCurves> {
 
 		private final Map<Imt, ArrayXY_Sequence> logModelCurves;
-		private final ExceedanceModel exceedanceModel;
-		private final double truncationLevel;
+		private final ExceedanceKernel kernel;
 
-		ClusterGroundMotionsToCurves(CalcConfig config) {
+		ClusterGroundMotionsToCurves(CalcConfig config, GmmSet gmmSet) {
 			this.logModelCurves = config.logModelCurves;
-			this.exceedanceModel = config.exceedanceModel;
-			this.truncationLevel = config.truncationLevel;
+			this.kernel = new ExceedanceKernel(config, gmmSet);
 		}
 
 		@Override public ClusterCurves apply(final ClusterGroundMotions clusterGroundMotions) {
@@ -300,6 +604,7 @@ final class Transforms {
 					.arrayListValues(clusterGroundMotions.size())
 					.build();
 				ArrayXY_Sequence utilCurve = ArrayXY_Sequence.copyOf(modelCurve);
+				ArrayXY_Sequence epiCurve = ArrayXY_Sequence.copyOf(modelCurve);
 
 				for (GroundMotions hazardGroundMotions : clusterGroundMotions) {
 
@@ -311,13 +616,8 @@ final class Transforms {
 						List<Double> means = gmmMeans.get(gmm);
 						List<Double> sigmas = gmmSigmas.get(gmm);
 						for (int i = 0; i < hazardGroundMotions.inputs.size(); i++) {
-							exceedanceModel.exceedance(
-								means.get(i),
-								sigmas.get(i),
-								truncationLevel,
-								imt,
-								utilCurve);
-							utilCurve.multiply(hazardGroundMotions.inputs.get(i).rate);
+							kernel.exceedance(means.get(i), sigmas.get(i), imt,
+								hazardGroundMotions.inputs.get(i), utilCurve, epiCurve);
 							magVarCurve.add(utilCurve);
 						}
 						faultCurves.put(gmm, magVarCurve);
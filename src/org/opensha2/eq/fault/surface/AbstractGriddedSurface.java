@@ -28,6 +28,7 @@ public abstract class AbstractGriddedSurface  extends Container2DImpl<Location>
 
 	double strikeSpacing;
 	double dipSpacing;
+	double distanceTolerance;
 //	protected Boolean sameGridSpacing;
 	
 	// for distance measures
@@ -146,7 +147,7 @@ public abstract class AbstractGriddedSurface  extends Container2DImpl<Location>
 		
 	@Override
 	public Distance distanceTo(Location loc) {
-		return Distance.compute(this, loc);
+		return Distance.compute(this, loc, distanceTolerance);
 	}
 
 
@@ -277,6 +278,16 @@ public abstract class AbstractGriddedSurface  extends Container2DImpl<Location>
 	public double getAveGridSpacing() {
 		return (strikeSpacing+dipSpacing)/2;
 	}
+
+	@Override
+	public double getStrikeSpacing() {
+		return strikeSpacing;
+	}
+
+	@Override
+	public double getDipSpacing() {
+		return dipSpacing;
+	}
 	
 	@Override
 	public String toString() {
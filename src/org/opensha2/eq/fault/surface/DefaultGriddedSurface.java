@@ -57,7 +57,8 @@ public class DefaultGriddedSurface extends AbstractGriddedSurface {
 	// we do not want to recompute it internally.
 
 	private DefaultGriddedSurface(LocationList trace, double dipRad, double dipDirRad,
-		double depth, double width, double strikeSpacing, double dipSpacing) {
+		double depth, double width, double strikeSpacing, double dipSpacing,
+		double distanceTolerance) {
 
 		this.trace = trace;
 		this.depth = depth;
@@ -71,6 +72,7 @@ public class DefaultGriddedSurface extends AbstractGriddedSurface {
 		// double downDipWidth = (lowerDepth-depth)/Math.sin(dip *
 		// GeoTools.TO_RAD);
 		this.dipSpacing = width / Math.ceil(width / dipSpacing);
+		this.distanceTolerance = distanceTolerance;
 
 		// set(trace, dip, depth, lowerDepth, strikeSpacing, dipSpacing);
 		// this.lowerDepth = lowerDepth;
@@ -146,6 +148,7 @@ public class DefaultGriddedSurface extends AbstractGriddedSurface {
 		// use Doubles to ensure fields are initially null
 
 		private static final Range<Double> SPACING_RANGE = Range.closed(0.01, 20.0);
+		private static final Range<Double> TOLERANCE_RANGE = Range.closed(0.0, 1.0);
 
 		private static final String ID = "DefaultGriddedSurface.Builder";
 		private boolean built = false;
@@ -165,6 +168,7 @@ public class DefaultGriddedSurface extends AbstractGriddedSurface {
 		// optional with defualts
 		private double dipSpacing = 1.0;
 		private double strikeSpacing = 1.0;
+		private double distanceTolerance = 0.0;
 
 		private Builder() {}
 
@@ -214,6 +218,17 @@ public class DefaultGriddedSurface extends AbstractGriddedSurface {
 			return this;
 		}
 
+		/**
+		 * Set the relative error permitted when computing distances to the
+		 * surface (default: 0, exact).
+		 * @see org.opensha2.eq.model.Distance#compute(GriddedSurface, Location,
+		 *      double)
+		 */
+		public Builder distanceTolerance(double tolerance) {
+			this.distanceTolerance = validate(TOLERANCE_RANGE, "Distance Tolerance", tolerance);
+			return this;
+		}
+
 		private void validateState(String id) {
 			checkState(!built, "This %s instance as already been used", id);
 			checkState(trace != null, "%s trace not set", id);
@@ -232,7 +247,7 @@ public class DefaultGriddedSurface extends AbstractGriddedSurface {
 			if (dipDirRad == null) dipDirRad = Faults.dipDirectionRad(trace);
 			if (width == null) width = (lowerDepth - depth) / Math.sin(dipRad);
 			return new DefaultGriddedSurface(trace, dipRad, dipDirRad, depth, width,
-				strikeSpacing, dipSpacing);
+				strikeSpacing, dipSpacing, distanceTolerance);
 		}
 
 	}
@@ -34,6 +34,7 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location> implements
 	// Location(Double.NaN,Double.NaN);
 	// double distanceJB, distanceSeis, distanceRup, distanceX;
 	GriddedSurface parentSurface;
+	private final double distanceTolerance;
 
 	/**
 	 * Constructor for the GriddedSubsetSurface object
@@ -51,6 +52,8 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location> implements
 			throws ArrayIndexOutOfBoundsException {
 		super(numRows, numCols, startRow, startCol, data);
 		parentSurface = data;
+		distanceTolerance = (data instanceof AbstractGriddedSurface) ?
+			((AbstractGriddedSurface) data).distanceTolerance : 0.0;
 	}
 
 	/**
@@ -163,6 +166,14 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location> implements
 		return parentSurface.getAveGridSpacing();
 	}
 
+	@Override public double getStrikeSpacing() {
+		return parentSurface.getStrikeSpacing();
+	}
+
+	@Override public double getDipSpacing() {
+		return parentSurface.getDipSpacing();
+	}
+
 	@Override public LocationList getEvenlyDiscritizedUpperEdge() {
 		return getRow(0);
 	}
@@ -199,7 +210,7 @@ public class GriddedSubsetSurface extends ContainerSubset2D<Location> implements
 	}
 
 	@Override public Distance distanceTo(Location loc) {
-		return Distance.compute(this, loc);
+		return Distance.compute(this, loc, distanceTolerance);
 	}
 
 	// @Deprecated
@@ -36,6 +36,16 @@ public interface GriddedSurface extends Container2D<Location>, RuptureSurface {
 	 */
 	public double getAveGridSpacing();
 
+	/**
+	 * Returns the spacing of surface grid columns along strike.
+	 */
+	public double getStrikeSpacing();
+
+	/**
+	 * Returns the spacing of surface grid rows down dip.
+	 */
+	public double getDipSpacing();
+
 	/**
 	 * This returns a list of locations that are evenly spread (at least 
 	 * approximately) over the rupture surface, with a spacing given by
@@ -29,6 +29,7 @@ import org.opensha2.eq.model.PointSource.DepthModel;
 import org.opensha2.geo.GriddedRegion;
 import org.opensha2.geo.Location;
 import org.opensha2.geo.LocationList;
+import org.opensha2.geo.Locations;
 import org.opensha2.geo.Regions;
 import org.opensha2.mfd.IncrementalMfd;
 
@@ -95,6 +96,30 @@ public class AreaSource implements Source {
 		return name;
 	}
 
+	@Override public double rate() {
+		return mfd.getTotalIncrRate();
+	}
+
+	@Override public double mMax() {
+		return mfd.getMaxMagWithNonZeroRate();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * <p>For {@code POINT} and {@code FINITE} point source types, rupture
+	 * distances depend only on the distance from a grid node to the site and
+	 * are returned for a source at the closest point of the area border; no
+	 * distance bound is available for {@code FIXED_STRIKE} sources, for which
+	 * this method returns 0.</p>
+	 */
+	@Override public double minDistance(Location loc) {
+		double distance = sourceGrids.get(0).distanceToLocation(loc);
+		if (sourceType == FIXED_STRIKE) return 0.0;
+		Location closest = Locations.location(loc, 0.0, distance);
+		return createSource(closest, mfd).minDistance(loc);
+	}
+
 	/**
 	 * The number of {@code Rupture}s for an {@code AreaSource} will vary if
 	 * {@code GridScaling} is non-uniform. In such cases, this method returns
@@ -177,7 +177,8 @@ class ClusterParser extends DefaultHandler {
 						.ruptureScaling(rupScaling)
 						.ruptureFloating(config.ruptureFloating)
 						.ruptureVariability(config.ruptureVariability)
-						.surfaceSpacing(config.surfaceSpacing);
+						.surfaceSpacing(config.surfaceSpacing)
+						.surfaceTolerance(config.surfaceTolerance);
 					log.finer("      Fault: " + srcName);
 					break;
 
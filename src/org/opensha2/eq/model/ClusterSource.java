@@ -8,6 +8,7 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.opensha2.eq.model.FaultSource.Builder;
+import org.opensha2.geo.Location;
 import org.opensha2.mfd.IncrementalMfd;
 
 import com.google.common.collect.ImmutableMap;
@@ -43,7 +44,7 @@ public class ClusterSource implements Source {
 	 * {@code (1 / return period)} of this source in years.
 	 * @return the cluster rate
 	 */
-	public double rate() {
+	@Override public double rate() {
 		return rate;
 	}
 
@@ -66,6 +67,22 @@ public class ClusterSource implements Source {
 		return faults.size();
 	}
 
+	@Override public double mMax() {
+		double mMax = Double.NEGATIVE_INFINITY;
+		for (FaultSource fault : faults) {
+			mMax = Math.max(mMax, fault.mMax());
+		}
+		return mMax;
+	}
+
+	@Override public double minDistance(Location loc) {
+		double min = Double.MAX_VALUE;
+		for (FaultSource fault : faults) {
+			min = Math.min(min, fault.minDistance(loc));
+		}
+		return min;
+	}
+
 	/**
 	 * Overriden to throw an {@code UnsupportedOperationException}. Cluster
 	 * sources are handled differently than other source types.
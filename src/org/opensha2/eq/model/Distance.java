@@ -7,7 +7,6 @@ import static org.opensha2.geo.Locations.horzDistanceFast;
 
 import java.awt.geom.Area;
 import java.awt.geom.Path2D;
-import java.util.Iterator;
 
 import org.opensha2.eq.fault.Faults;
 import org.opensha2.eq.fault.surface.GriddedSurface;
@@ -46,64 +45,61 @@ public final class Distance {
 	}
 	
 	/**
-	 * Compute distance metrics: rJB, rRup, and rX.
+	 * Compute distance metrics: rJB, rRup, and rX. All surface points are
+	 * considered.
 	 * @param surface
 	 * @param loc
 	 */
 	public static Distance compute(GriddedSurface surface, Location loc) {
-		
-		Location loc1 = loc;
-		Location loc2;
-		double distJB = Double.MAX_VALUE;
-//		double distSeis = Double.MAX_VALUE;
-		double distRup = Double.MAX_VALUE;
-		
-		double horzDist, vertDist, rupDist;
-
-		// flag to project to seisDepth if only one row and depth is below seisDepth
-//		boolean projectToDepth = false;
-//		if (surface.getNumRows() == 1 && surface.getLocation(0,0).depth() < SEIS_DEPTH)
-//			projectToDepth = true;
-
-		// get locations to iterate over depending on dip
-		Iterator<Location> it;
-		if(surface.dip() > 89) {
-			it = surface.getColumnIterator(0);
-//			if (surface.getLocation(0,0).depth() < SEIS_DEPTH)
-//				projectToDepth = true;
-		}
-		else {
-			it = surface.iterator();
-		}
-
-		while( it.hasNext() ){
-
-			loc2 = it.next();
-
-			// get the vertical distance
-			vertDist = Locations.vertDistance(loc1, loc2);
-
-			// get the horizontal dist depending on desired accuracy
-			horzDist = Locations.horzDistanceFast(loc1, loc2);
+		return compute(surface, loc, 0.0);
+	}
 
-			if(horzDist < distJB) distJB = horzDist;
+	/**
+	 * Compute distance metrics: rJB, rRup, and rX, permitting a relative error
+	 * in rJB and rRup of up to {@code tolerance}. Rather than considering every
+	 * point of a surface, a coarser level of the surface grid (every
+	 * 2<sup>n</sup><sup>th</sup> row and column, always including the last
+	 * row and column) is selected such that the maximum discretization error
+	 * of that level does not exceed {@code tolerance} times a lower bound on the
+	 * site-to-surface distance. The lower bound is obtained from a single pass
+	 * over the coarsest level. Near-field sites therefore always use the full
+	 * surface; distant sites may use only a handful of points. A
+	 * {@code tolerance} of 0 yields exact results.
+	 * 
+	 * <p>Because the permitted error is scaled by a lower bound, it is also no
+	 * more than {@code tolerance} times the exact distance. The bound is only
+	 * meaningful when the lower bound is positive; when it is not, the site is
+	 * within one coarse grid cell of the surface and the full surface is used,
+	 * giving exact results.</p>
+	 * 
+	 * @param surface
+	 * @param loc
+	 * @param tolerance relative error permitted in rJB and rRup
+	 */
+	public static Distance compute(GriddedSurface surface, Location loc, double tolerance) {
 
-			rupDist = horzDist * horzDist + vertDist * vertDist;
-			if(rupDist < distRup) distRup = rupDist;
+		// vertical surfaces only require the upper edge
+		int rows = (surface.dip() > 89) ? 1 : surface.getNumRows();
+		int cols = surface.getNumCols();
 
-//			if (loc2.depth() >= SEIS_DEPTH) {
-//				if (rupDist < distSeis)
-//					distSeis = rupDist;
-//			}
-//			// take care of shallow line or point source case
-//			else if(projectToDepth) {
-//				rupDist = horzDist * horzDist + SEIS_DEPTH * SEIS_DEPTH;
-//				if (rupDist < distSeis)
-//					distSeis = rupDist;
-//			}
+		double[] dists = null;
+		int stride = 1;
+		int maxStride = (tolerance > 0.0) ? maxStride(rows, cols) : 1;
+		if (maxStride > 1) {
+			// lower bound on rJB (<= rRup) from coarsest level
+			double[] coarse = minDistances(surface, loc, rows, cols, maxStride);
+			double lowerBound = coarse[0] - discretizationError(surface, maxStride);
+			double maxError = tolerance * lowerBound;
+			for (stride = maxStride; stride > 1; stride >>= 1) {
+				if (discretizationError(surface, stride) <= maxError) break;
+			}
+			if (stride == maxStride) dists = coarse;
 		}
+		if (dists == null) dists = minDistances(surface, loc, rows, cols, stride);
+
+		double distJB = dists[0];
+		double distRup = Math.pow(dists[1], 0.5);
 
-		distRup = Math.pow(distRup,0.5);
 //		distSeis = Math.pow(distSeis,0.5);
 
 //		if(D) {
@@ -145,6 +141,51 @@ public final class Distance {
 
 	}
 	
+	/*
+	 * Returns the minimum horizontal distance and squared 3D distance from loc
+	 * to the points of a surface at every stride-th row and column. The last
+	 * row and column are always included so that the full extent of the
+	 * surface is represented at every level.
+	 */
+	private static double[] minDistances(GriddedSurface surface, Location loc, int rows,
+			int cols, int stride) {
+		double distJB = Double.MAX_VALUE;
+		double distRup = Double.MAX_VALUE;
+		for (int row = 0; row < rows; row = nextIndex(row, rows, stride)) {
+			for (int col = 0; col < cols; col = nextIndex(col, cols, stride)) {
+				Location surfLoc = surface.get(row, col);
+				double vertDist = Locations.vertDistance(loc, surfLoc);
+				double horzDist = Locations.horzDistanceFast(loc, surfLoc);
+				if (horzDist < distJB) distJB = horzDist;
+				double rupDist = horzDist * horzDist + vertDist * vertDist;
+				if (rupDist < distRup) distRup = rupDist;
+			}
+		}
+		return new double[] { distJB, distRup };
+	}
+
+	private static int nextIndex(int index, int size, int stride) {
+		int next = index + stride;
+		return (next >= size && index < size - 1) ? size - 1 : next;
+	}
+
+	/*
+	 * The largest power of 2 no greater than a quarter of the largest surface
+	 * dimension; smaller surfaces are always processed at full resolution.
+	 */
+	private static int maxStride(int rows, int cols) {
+		int quarter = Math.max(rows, cols) / 4;
+		return (quarter < 2) ? 1 : Integer.highestOneBit(quarter);
+	}
+
+	/*
+	 * The maximum distance from any surface point to the nearest point at the
+	 * supplied stride, i.e. half the diagonal of a stride-sized grid cell.
+	 */
+	private static double discretizationError(GriddedSurface surface, int stride) {
+		return stride * Math.hypot(surface.getStrikeSpacing(), surface.getDipSpacing()) / 2.0;
+	}
+
 	/**
 	 * This computes distanceX
 	 * 
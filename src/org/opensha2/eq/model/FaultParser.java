@@ -34,6 +34,7 @@ import org.opensha2.eq.fault.surface.RuptureScaling;
 import org.opensha2.eq.model.MfdHelper.GR_Data;
 import org.opensha2.eq.model.MfdHelper.IncrData;
 import org.opensha2.eq.model.MfdHelper.SingleData;
+import org.opensha2.geo.Location;
 import org.opensha2.geo.LocationList;
 import org.opensha2.mfd.GaussianMfd;
 import org.opensha2.mfd.GutenbergRichterMfd;
@@ -46,6 +47,8 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 /*
@@ -67,6 +70,12 @@ class FaultParser extends DefaultHandler {
 
 	private ModelConfig config;
 
+	// Region-of-interest filter
+	private Predicate<Location> filter;
+	private boolean skipSource = false;
+	private int sourceCount = 0;
+	private int skipCount = 0;
+
 	private FaultSourceSet sourceSet;
 	private FaultSourceSet.Builder sourceSetBuilder;
 	private FaultSource.Builder sourceBuilder;
@@ -95,13 +104,19 @@ class FaultParser extends DefaultHandler {
 		return new FaultParser(checkNotNull(sax));
 	}
 
-	FaultSourceSet parse(InputStream in, GmmSet gmmSet, ModelConfig config) throws SAXException,
-			IOException {
+	/*
+	 * Sources with traces that do not satisfy the supplied filter are skipped
+	 * before surfaces and ruptures are built; returns null if no sources
+	 * remain.
+	 */
+	FaultSourceSet parse(InputStream in, GmmSet gmmSet, ModelConfig config,
+			Predicate<Location> filter) throws SAXException, IOException {
 		checkState(!used, "This parser has expired");
 		this.gmmSet = gmmSet;
 		this.config = config;
+		this.filter = checkNotNull(filter);
 		sax.parse(in, this);
-		checkState(sourceSet.size() > 0, "FaultSourceSet is empty");
+		checkState(sourceSet == null || sourceSet.size() > 0, "FaultSourceSet is empty");
 		used = true;
 		return sourceSet;
 	}
@@ -164,7 +179,8 @@ class FaultParser extends DefaultHandler {
 						.ruptureScaling(rupScaling)
 						.ruptureFloating(config.ruptureFloating)
 						.ruptureVariability(config.ruptureVariability)
-						.surfaceSpacing(config.surfaceSpacing);
+						.surfaceSpacing(config.surfaceSpacing)
+						.surfaceTolerance(config.surfaceTolerance);
 					log.fine("     Source: " + srcName + " [" + srcId + "]");
 					if (srcId < 0) log.warning("  Invalid Id [" + srcId + ", " + srcName + "]");
 					break;
@@ -222,15 +238,25 @@ class FaultParser extends DefaultHandler {
 
 				case TRACE:
 					readingTrace = false;
-					sourceBuilder.trace(LocationList.fromString(traceBuilder.toString()));
+					LocationList trace = LocationList.fromString(traceBuilder.toString());
+					skipSource = !Iterables.any(trace, filter);
+					sourceBuilder.trace(trace);
 					break;
 
 				case SOURCE:
+					if (skipSource) {
+						skipCount++;
+						skipSource = false;
+						break;
+					}
 					sourceSetBuilder.source(sourceBuilder.buildFaultSource());
+					sourceCount++;
 					log.finer(""); // insert blank line for detailed output
 					break;
 
 				case FAULT_SOURCE_SET:
+					if (skipCount > 0) log.info("    Skipped: " + skipCount + " sources outside region");
+					if (sourceCount == 0) break;
 					sourceSet = sourceSetBuilder.buildFaultSet();
 					break;
 			}
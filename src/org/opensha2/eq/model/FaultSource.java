@@ -25,6 +25,7 @@ import org.opensha2.eq.fault.surface.DefaultGriddedSurface;
 import org.opensha2.eq.fault.surface.RuptureFloating;
 import org.opensha2.eq.fault.surface.RuptureScaling;
 import org.opensha2.eq.fault.surface.RuptureSurface;
+import org.opensha2.geo.Location;
 import org.opensha2.geo.LocationList;
 import org.opensha2.mfd.IncrementalMfd;
 
@@ -114,6 +115,30 @@ public class FaultSource implements Source {
 		return name;
 	}
 
+	@Override public double rate() {
+		double rate = 0.0;
+		for (IncrementalMfd mfd : mfds) {
+			rate += mfd.getTotalIncrRate();
+		}
+		return rate;
+	}
+
+	@Override public double mMax() {
+		double mMax = Double.NEGATIVE_INFINITY;
+		for (Rupture rupture : this) {
+			mMax = Math.max(mMax, rupture.mag());
+		}
+		return mMax;
+	}
+
+	/*
+	 * All ruptures lie on the surface of the source. The surface distance
+	 * tolerance is ignored as a coarser calculation may overestimate rJB.
+	 */
+	@Override public double minDistance(Location loc) {
+		return Distance.compute(surface, loc, 0.0).rJB;
+	}
+
 	@Override public Iterator<Rupture> iterator() {
 		return Iterables.concat(ruptureLists).iterator();
 	}
@@ -182,6 +207,7 @@ public class FaultSource implements Source {
 		ImmutableList.Builder<IncrementalMfd> mfdsBuilder = ImmutableList.builder();
 		List<IncrementalMfd> mfds;
 		Double spacing;
+		double tolerance = 0.0;
 		RuptureScaling rupScaling;
 		RuptureFloating rupFloating;
 		Boolean rupVariability;
@@ -239,6 +265,11 @@ public class FaultSource implements Source {
 			return this;
 		}
 
+		Builder surfaceTolerance(double tolerance) {
+			this.tolerance = tolerance;
+			return this;
+		}
+
 		Builder ruptureScaling(RuptureScaling rupScaling) {
 			this.rupScaling = checkNotNull(rupScaling, "Rup-Scaling Relation is null");
 			return this;
@@ -279,7 +310,8 @@ public class FaultSource implements Source {
 
 			// create surface
 			DefaultGriddedSurface surface = DefaultGriddedSurface.builder().trace(trace)
-				.depth(depth).dip(dip).width(width).spacing(spacing).build();
+				.depth(depth).dip(dip).width(width).spacing(spacing)
+				.distanceTolerance(tolerance).build();
 
 			return new FaultSource(name, id, trace, dip, width, surface, rake,
 				ImmutableList.copyOf(mfds), spacing, rupScaling, rupFloating, rupVariability);
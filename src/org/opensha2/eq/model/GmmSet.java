@@ -103,11 +103,35 @@ public final class GmmSet {
 		return new double[][] { { v[0], v[1], v[2] }, { v[3], v[4], v[5] }, { v[6], v[7], v[8] } };
 	}
 
-	/*
-	 * Returns the epistemic uncertainty for the supplied magnitude (M) and
-	 * distance (D) that
+	/**
+	 * Whether additional epistemic uncertainty should be applied to the
+	 * ground motions computed from these models.
+	 */
+	public boolean epiUncertainty() {
+		return uncertainty != UncertType.NONE;
+	}
+
+	/**
+	 * The weights of the additional epistemic uncertainty branches, in the
+	 * order: {@code μ + δ}, {@code μ}, {@code μ - δ}, where {@code δ} is
+	 * supplied by {@link #epiValue(double, double)}. Returns {@code null} if no
+	 * additional uncertainty is defined.
+	 */
+	public double[] epiWeights() {
+		return (epiWeights == null) ? null : epiWeights.clone();
+	}
+
+	/**
+	 * Returns the additional epistemic uncertainty, {@code δ}, to apply to the
+	 * natural log of ground motion for the supplied magnitude ({@code M}) and
+	 * distance ({@code D}). Multiple uncertainty values are binned on
+	 * magnitude (M<6, 6≤M<7, 7≤M) and distance (D<10, 10≤D<30, 30≤D).
+	 * Returns 0 if no additional uncertainty is defined.
+	 * 
+	 * @param M magnitude
+	 * @param D distance
 	 */
-	private double getUncertainty(double M, double D) {
+	public double epiValue(double M, double D) {
 		switch (uncertainty) {
 			case MULTI:
 				int mi = (M < 6) ? 0 : (M < 7) ? 1 : 2;
@@ -50,6 +50,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.ImmutableSortedSet.Builder;
 import com.google.common.primitives.Doubles;
@@ -78,6 +79,11 @@ class GridParser extends DefaultHandler {
 
 	private ModelConfig config;
 
+	// Region-of-interest filter
+	private Predicate<Location> filter;
+	private int nodeCount = 0;
+	private int skipCount = 0;
+
 	private GridSourceSet sourceSet;
 	private GridSourceSet.Builder sourceSetBuilder;
 
@@ -107,11 +113,16 @@ class GridParser extends DefaultHandler {
 		return new GridParser(sax);
 	}
 
-	GridSourceSet parse(InputStream in, GmmSet gmmSet, ModelConfig config) throws SAXException,
-			IOException {
+	/*
+	 * Nodes that do not satisfy the supplied filter are skipped; returns null
+	 * if no nodes remain.
+	 */
+	GridSourceSet parse(InputStream in, GmmSet gmmSet, ModelConfig config,
+			Predicate<Location> filter) throws SAXException, IOException {
 		checkState(!used, "This parser has expired");
 		this.gmmSet = gmmSet;
 		this.config = config;
+		this.filter = checkNotNull(filter);
 		sax.parse(in, this);
 		used = true;
 		return sourceSet;
@@ -225,10 +236,15 @@ class GridParser extends DefaultHandler {
 			case NODE:
 				readingLoc = false;
 				Location loc = Location.fromString(locBuilder.toString());
-				if (nodeMechMap != null) {
-					sourceSetBuilder.location(loc, nodeMFD, nodeMechMap);
+				if (!filter.apply(loc)) {
+					skipCount++;
 				} else {
-					sourceSetBuilder.location(loc, nodeMFD);
+					if (nodeMechMap != null) {
+						sourceSetBuilder.location(loc, nodeMFD, nodeMechMap);
+					} else {
+						sourceSetBuilder.location(loc, nodeMFD);
+					}
+					nodeCount++;
 				}
 				nodeMFD = null;
 				nodeMechMap = null;
@@ -247,6 +263,8 @@ class GridParser extends DefaultHandler {
 				 */
 				double cleanDelta = Double.valueOf(String.format("%.2f", deltaMag));
 				double[] mags = DataUtils.buildCleanSequence(minMag, maxMag, cleanDelta, true, 2);
+				if (skipCount > 0) log.info("    Skipped: " + skipCount + " nodes outside region");
+				if (nodeCount == 0) break;
 				sourceSetBuilder.magMaster(Doubles.asList(mags));
 				sourceSet = sourceSetBuilder.build();
 
@@ -9,9 +9,11 @@ import java.nio.file.Path;
 import java.util.Iterator;
 
 import org.opensha2.calc.CalcConfig;
+import org.opensha2.geo.Region;
 import org.opensha2.gmm.GroundMotionModel;
 import org.opensha2.util.Named;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.SetMultimap;
@@ -85,6 +87,24 @@ public final class HazardModel implements Iterable<SourceSet<? extends Source>>,
 		return Loader.load(path);
 	}
 
+	/**
+	 * Load a {@code HazardModel} from a directory or Zip file specified by the
+	 * supplied {@code path}, skipping those grid nodes, faults, and fault
+	 * system ruptures that lie farther than the maximum distance of their
+	 * associated ground motion models from the supplied {@code region}. Use
+	 * when a calculation will only consider sites within {@code region}.
+	 * Sources in area, cluster, and subduction interface source sets are not
+	 * filtered.
+	 * 
+	 * @param path to {@code HazardModel} directory or Zip file
+	 * @param region of interest
+	 * @return a newly instantiated {@code HazardModel}
+	 * @see #load(Path)
+	 */
+	public static HazardModel load(Path path, Region region) {
+		return Loader.load(path, Optional.of(region));
+	}
+
 	/**
 	 * The number of {@code SourceSet}s in this {@code HazardModel}.
 	 */
@@ -144,6 +144,7 @@ class InterfaceParser extends DefaultHandler {
 					sourceBuilder.ruptureFloating(config.ruptureFloating);
 					sourceBuilder.ruptureVariability(config.ruptureVariability);
 					sourceBuilder.surfaceSpacing(config.surfaceSpacing);
+					sourceBuilder.surfaceTolerance(config.surfaceTolerance);
 					log.fine("     Source: " + srcName);
 					break;
 
@@ -152,6 +152,7 @@ public class InterfaceSource extends FaultSource {
 					.dip(dip)
 					.width(width)
 					.spacing(spacing)
+					.distanceTolerance(tolerance)
 					.build();
 			}
 
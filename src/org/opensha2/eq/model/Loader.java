@@ -20,19 +20,28 @@ import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.opensha2.calc.CalcConfig;
+import org.opensha2.eq.fault.surface.GriddedSurface;
 import org.opensha2.eq.model.HazardModel.Builder;
+import org.opensha2.geo.Location;
+import org.opensha2.geo.Locations;
+import org.opensha2.geo.Region;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
@@ -53,12 +62,27 @@ class Loader {
 	static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
 	private static final String LF = LINE_SEPARATOR.value();
+	private static final String GZIP_EXTENSION = ".gz";
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
 	private static Logger log;
 
 	static {
 		log = Logger.getLogger(Loader.class.getName());
 	}
 
+	/**
+	 * Load a {@code HazardModel}. Supplied path should be an absolute path to a
+	 * directory containing sub-directories by {@code SourceType}s, or the
+	 * absolute path to a zipped model.
+	 * 
+	 * @param path to model directory or Zip file (absolute)
+	 * @return a newly created {@code HazardModel}
+	 * @see #load(Path, Optional)
+	 */
+	static HazardModel load(Path path) {
+		return load(path, Optional.<Region> absent());
+	}
+
 	/**
 	 * Load a {@code HazardModel}. Supplied path should be an absolute path to a
 	 * directory containing sub-directories by {@code SourceType}s, or the
@@ -67,10 +91,15 @@ class Loader {
 	 * <p>This method is not thread safe. Any exceptions thrown while loading
 	 * will be logged and the JVM will exit.</p>
 	 * 
+	 * <p>If a {@code region} is supplied, sources that lie beyond the maximum
+	 * distance of their associated ground motion models are skipped while
+	 * parsing.</p>
+	 * 
 	 * @param path to model directory or Zip file (absolute)
+	 * @param region of interest
 	 * @return a newly created {@code HazardModel}
 	 */
-	static HazardModel load(Path path) {
+	static HazardModel load(Path path, Optional<Region> region) {
 
 		SAXParser sax = null;
 		try {
@@ -105,7 +134,7 @@ class Loader {
 				String typeName = cleanZipName(typePath.getFileName().toString());
 				log.info("");
 				log.info("=======  " + typeName + " Sources  =======");
-				processTypeDir(typePath, builder, modelConfig, sax);
+				processTypeDir(typePath, builder, modelConfig, region, sax);
 				log.info("==========================" + Strings.repeat("=", typeName.length()));
 			}
 
@@ -170,7 +199,7 @@ class Loader {
 	}
 
 	private static void processTypeDir(Path typeDir, Builder builder, ModelConfig modelConfig,
-			SAXParser sax) throws IOException {
+			Optional<Region> region, SAXParser sax) throws IOException {
 
 		String typeName = cleanZipName(typeDir.getFileName().toString());
 		SourceType type = SourceType.fromString(typeName);
@@ -223,8 +252,8 @@ class Loader {
 		for (Path sourcePath : typePaths) {
 			log.info("Parsing: " + typeDir.getParent().relativize(sourcePath));
 			SourceSet<? extends Source> sourceSet = parseSource(type, sourcePath, gmmSet, config,
-				sax);
-			builder.sourceSet(sourceSet);
+				region, sax);
+			addSourceSet(builder, sourceSet);
 		}
 
 		try (DirectoryStream<Path> ds = Files.newDirectoryStream(typeDir, NestedDirFilter.INSTANCE)) {
@@ -235,13 +264,14 @@ class Loader {
 					log.info("========  Nested " + typeName + " Sources  ========");
 					firstDir = false;
 				}
-				processNestedDir(nestedSourceDir, type, gmmSet, builder, config, sax);
+				processNestedDir(nestedSourceDir, type, gmmSet, builder, config, region, sax);
 			}
 		}
 	}
 
 	private static void processNestedDir(Path sourceDir, SourceType type, GmmSet gmmSet,
-			Builder builder, ModelConfig parentConfig, SAXParser sax) throws IOException {
+			Builder builder, ModelConfig parentConfig, Optional<Region> region, SAXParser sax)
+			throws IOException {
 
 		/*
 		 * gmm.xml -- this MUST exist if there is at least one source file and
@@ -292,19 +322,33 @@ class Loader {
 
 		if (type == SourceType.SYSTEM) {
 			log.info("Parsing: " + typeDir.relativize(sourceDir));
-			parseSystemSource(sourceDir, nestedGmmSet, builder, nestedConfig, sax);
+			parseSystemSource(sourceDir, nestedGmmSet, builder, nestedConfig, region, sax);
 		} else {
 			for (Path sourcePath : nestedSourcePaths) {
 				log.info("Parsing: " + typeDir.relativize(sourcePath));
 				SourceSet<? extends Source> sourceSet = parseSource(type, sourcePath, nestedGmmSet,
-					nestedConfig, sax);
-				builder.sourceSet(sourceSet);
+					nestedConfig, region, sax);
+				addSourceSet(builder, sourceSet);
 			}
 		}
 	}
 
+	/* Source sets may be null if all sources were outside a region of interest. */
+	private static void addSourceSet(Builder builder, SourceSet<? extends Source> sourceSet) {
+		if (sourceSet == null) {
+			log.info("(no sources in region)");
+			return;
+		}
+		builder.sourceSet(sourceSet);
+	}
+
+	private static Predicate<Location> locationFilter(Optional<Region> region, GmmSet gmmSet) {
+		return region.isPresent() ? Locations.regionFilter(region.get(), gmmSet.maxDistance())
+			: Predicates.<Location> alwaysTrue();
+	}
+
 	private static SourceSet<? extends Source> parseSource(SourceType type, Path path,
-			GmmSet gmmSet, ModelConfig config, SAXParser sax) {
+			GmmSet gmmSet, ModelConfig config, Optional<Region> region, SAXParser sax) {
 		try {
 			InputStream in = Files.newInputStream(path);
 			switch (type) {
@@ -313,13 +357,16 @@ class Loader {
 				case CLUSTER:
 					return ClusterParser.create(sax).parse(in, gmmSet, config);
 				case FAULT:
-					return FaultParser.create(sax).parse(in, gmmSet, config);
+					return FaultParser.create(sax).parse(in, gmmSet, config,
+						locationFilter(region, gmmSet));
 				case GRID:
-					return GridParser.create(sax).parse(in, gmmSet, config);
+					return GridParser.create(sax).parse(in, gmmSet, config,
+						locationFilter(region, gmmSet));
 				case INTERFACE:
 					return InterfaceParser.create(sax).parse(in, gmmSet, config);
 				case SLAB:
-					return SlabParser.create(sax).parse(in, gmmSet, config);
+					return SlabParser.create(sax).parse(in, gmmSet, config,
+						locationFilter(region, gmmSet));
 				case SYSTEM:
 					throw new UnsupportedOperationException(
 						"Fault system sources are not processed with this method");
@@ -333,27 +380,90 @@ class Loader {
 	}
 
 	private static void parseSystemSource(Path dir, GmmSet gmmSet, Builder builder,
-			ModelConfig config, SAXParser sax) {
+			ModelConfig config, Optional<Region> region, SAXParser sax) {
 		try {
 			Path sectionsPath = dir.resolve(SECTIONS_FILENAME);
-			InputStream sectionsIn = Files.newInputStream(sectionsPath);
 			Path rupturesPath = dir.resolve(RUPTURES_FILENAME);
-			InputStream rupturesIn = Files.newInputStream(rupturesPath);
-
-			SystemParser faultParser = SystemParser.create(sax);
-			builder.sourceSet(faultParser.parse(sectionsIn, rupturesIn, gmmSet));
+			if (!Files.exists(rupturesPath)) {
+				Path gzipPath = dir.resolve(RUPTURES_FILENAME + GZIP_EXTENSION);
+				if (Files.exists(gzipPath)) rupturesPath = gzipPath;
+			}
+			Predicate<Location> filter = locationFilter(region, gmmSet);
+			addSourceSet(builder, loadSystemSourceSet(sectionsPath, rupturesPath, gmmSet, config,
+				filter, !region.isPresent(), sax));
 
 			Path gridSourcePath = dir.resolve(GRIDSOURCE_FILENAME);
 			InputStream gridIn = Files.newInputStream(gridSourcePath);
-			GridSourceSet gridSet = GridParser.create(sax).parse(gridIn, gmmSet, config);
-			builder.sourceSet(gridSet);
+			GridSourceSet gridSet = GridParser.create(sax).parse(gridIn, gmmSet, config, filter);
+			addSourceSet(builder, gridSet);
 			log.info("   Grid set: " + dir.getFileName() + "/" + GRIDSOURCE_FILENAME);
-			log.info("    Sources: " + gridSet.size());
+			if (gridSet != null) log.info("    Sources: " + gridSet.size());
 		} catch (Exception e) {
 			handleParseException(e, dir);
 		}
 	}
 
+	/*
+	 * Loads a fault system rupture set from a binary snapshot if one exists,
+	 * otherwise parses XML and writes a snapshot for subsequent use. Snapshot
+	 * problems are logged and never prevent a model from loading. Snapshots
+	 * always contain the complete rupture set and are only written when
+	 * unfiltered.
+	 */
+	private static SystemSourceSet loadSystemSourceSet(Path sectionsPath, Path rupturesPath,
+			GmmSet gmmSet, ModelConfig config, Predicate<Location> filter, boolean unfiltered,
+			SAXParser sax) throws SAXException, IOException {
+
+		Path snapshot = null;
+		try {
+			snapshot = SystemSnapshot.path(sectionsPath, rupturesPath, config);
+		} catch (IOException ioe) {
+			log.warning("Snapshot key error: " + ioe.getMessage());
+		}
+
+		if (snapshot != null && Files.exists(snapshot)) {
+			InputStream sectionsIn = Files.newInputStream(sectionsPath);
+			List<GriddedSurface> sections = SystemSectionParser.create(sax).parse(sectionsIn);
+			try {
+				BitSet sectionFilter = SystemParser.sectionFilter(sections, filter);
+				SystemSourceSet sourceSet = SystemSnapshot.read(snapshot, sections, gmmSet,
+					sectionFilter);
+				log.info("   Sections: " + sections.size());
+				if (sourceSet == null) return null;
+				log.info("Rupture set: " + sourceSet.name() + " [snapshot: " +
+					snapshot.getFileName() + "]");
+				log.info("   Ruptures: " + sourceSet.size());
+				return sourceSet;
+			} catch (IOException | RuntimeException e) {
+				log.warning("Invalid snapshot, parsing XML: " + e.getMessage());
+			}
+		}
+
+		InputStream sectionsIn = Files.newInputStream(sectionsPath);
+		InputStream rupturesIn = newInputStream(rupturesPath);
+		SystemSourceSet sourceSet = SystemParser.create(sax).parse(sectionsIn, rupturesIn, gmmSet,
+			filter);
+
+		if (snapshot != null && unfiltered) {
+			try {
+				SystemSnapshot.write(snapshot, sourceSet);
+				log.info("   Snapshot: " + snapshot);
+			} catch (IOException ioe) {
+				log.warning("Snapshot write error: " + ioe.getMessage());
+			}
+		}
+		return sourceSet;
+	}
+
+	/* Opens a stream, decompressing files with a '.gz' extension. */
+	private static InputStream newInputStream(Path path) throws IOException {
+		InputStream in = Files.newInputStream(path);
+		if (path.getFileName().toString().toLowerCase().endsWith(GZIP_EXTENSION)) {
+			return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+		}
+		return in;
+	}
+
 	private static GmmSet parseGMM(Path path, SAXParser sax) {
 		try {
 			InputStream in = Files.newInputStream(path);
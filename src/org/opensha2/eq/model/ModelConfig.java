@@ -23,7 +23,10 @@ import com.google.gson.GsonBuilder;
 
 /**
  * Model and calculation configuration class. No defaults; 'config.json' must be
- * supplied with model.
+ * supplied with model. The only exception is the optional
+ * {@code surfaceTolerance}, the relative error permitted when computing
+ * distances to gridded fault surfaces, which defaults to 0 (exact). Distances
+ * to surfaces within a coarse grid cell of a site are always exact.
  *
  * @author Peter Powers
  */
@@ -37,6 +40,7 @@ final class ModelConfig {
 
 	public final String name;
 	public final double surfaceSpacing;
+	public final double surfaceTolerance;
 	public final RuptureFloating ruptureFloating;
 	public final boolean ruptureVariability;
 	public final PointSourceType pointSourceType;
@@ -46,6 +50,7 @@ final class ModelConfig {
 			String name,
 			Path resource,
 			double surfaceSpacing,
+			double surfaceTolerance,
 			RuptureFloating ruptureFloating,
 			boolean ruptureVariability,
 			PointSourceType pointSourceType,
@@ -54,6 +59,7 @@ final class ModelConfig {
 		this.name = name;
 		this.resource = resource;
 		this.surfaceSpacing = surfaceSpacing;
+		this.surfaceTolerance = surfaceTolerance;
 		this.ruptureFloating = ruptureFloating;
 		this.ruptureVariability = ruptureVariability;
 		this.pointSourceType = pointSourceType;
@@ -64,6 +70,7 @@ final class ModelConfig {
 		NAME,
 		RESOURCE,
 		SURFACE_SPACING,
+		SURFACE_TOLERANCE,
 		RUPTURE_FLOATING,
 		RUPTURE_VARIABILITY,
 		POINT_SOURCE_TYPE,
@@ -85,6 +92,7 @@ final class ModelConfig {
 			.append(format(Key.NAME)).append(name)
 			.append(format(Key.RESOURCE)).append(resource)
 			.append(format(Key.SURFACE_SPACING)).append(surfaceSpacing)
+			.append(format(Key.SURFACE_TOLERANCE)).append(surfaceTolerance)
 			.append(format(Key.RUPTURE_FLOATING)).append(ruptureFloating)
 			.append(format(Key.RUPTURE_VARIABILITY)).append(ruptureVariability)
 			.append(format(Key.POINT_SOURCE_TYPE)).append(pointSourceType)
@@ -125,6 +133,7 @@ final class ModelConfig {
 		private String name;
 		private Path resource;
 		private Double surfaceSpacing;
+		private Double surfaceTolerance;
 		private RuptureFloating ruptureFloating;
 		private Boolean ruptureVariability;
 		private PointSourceType pointSourceType;
@@ -135,6 +144,7 @@ final class ModelConfig {
 			this.name = config.name;
 			this.resource = config.resource;
 			this.surfaceSpacing = config.surfaceSpacing;
+			this.surfaceTolerance = config.surfaceTolerance;
 			this.ruptureFloating = config.ruptureFloating;
 			this.ruptureVariability = config.ruptureVariability;
 			this.pointSourceType = config.pointSourceType;
@@ -147,6 +157,7 @@ final class ModelConfig {
 			// name can't be overridden
 			if (that.resource != null) this.resource = that.resource;
 			if (that.surfaceSpacing != null) this.surfaceSpacing = that.surfaceSpacing;
+			if (that.surfaceTolerance != null) this.surfaceTolerance = that.surfaceTolerance;
 			if (that.ruptureFloating != null) this.ruptureFloating = that.ruptureFloating;
 			if (that.ruptureVariability != null) this.ruptureVariability = that.ruptureVariability;
 			if (that.pointSourceType != null) this.pointSourceType = that.pointSourceType;
@@ -169,7 +180,8 @@ final class ModelConfig {
 		ModelConfig build() {
 			validateState(ID);
 			return new ModelConfig(
-				name, resource, surfaceSpacing, ruptureFloating,
+				name, resource, surfaceSpacing,
+				(surfaceTolerance == null) ? 0.0 : surfaceTolerance, ruptureFloating,
 				ruptureVariability, pointSourceType, areaGridScaling);
 		}
 	}
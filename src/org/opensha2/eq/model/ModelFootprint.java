@@ -0,0 +1,320 @@
+package org.opensha2.eq.model;
+
+import static com.google.common.base.Strings.padEnd;
+import static com.google.common.base.Strings.padStart;
+import static org.opensha2.util.TextUtils.NEWLINE;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensha2.eq.fault.surface.GriddedSubsetSurface;
+import org.opensha2.eq.fault.surface.GriddedSurface;
+import org.opensha2.eq.model.SystemSourceSet.SystemSource;
+import org.opensha2.mfd.IncrementalMfd;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Estimated memory footprint and cardinality of a {@link HazardModel}. Use
+ * this class to identify those {@link SourceSet}s and components (e.g.
+ * locations, ruptures, MFDs) that dominate the memory required by a model.
+ *
+ * <p>Byte counts are estimates of retained heap based on typical object sizes
+ * for a 64-bit JVM with compressed object pointers; they do not account for
+ * objects shared across source sets or for transient objects, such as grid
+ * source ruptures, that are created on demand during a calculation. Rupture
+ * counts for grid and area sources are therefore reported but have no retained
+ * size.</p>
+ *
+ * @author Peter Powers
+ * @see org.opensha2.programs.ModelReport
+ */
+public final class ModelFootprint {
+
+	/** Model component identifiers. */
+	public enum Component {
+		/** {@code Location}s of traces, surfaces and grid nodes. */
+		LOCATIONS,
+		/** {@code Rupture}s and floating rupture surface views. */
+		RUPTURES,
+		/** Fault system rupture section indices. */
+		BITSETS,
+		/** Magnitude frequency distributions. */
+		MFDS,
+		/** Primitive data columns (e.g. fault system rupture parameters). */
+		COLUMNS;
+	}
+
+	// estimated object sizes (bytes)
+	private static final int REF = 4;
+	private static final int ARRAY = 16;
+	private static final int LOCATION = 40;
+	private static final int RUPTURE = 48;
+	private static final int SUBSET_SURFACE = 64;
+	private static final int MFD = 64;
+	private static final int BITSET = 24;
+
+	private final String name;
+	private final List<Entry> entries;
+
+	private ModelFootprint(String name, List<Entry> entries) {
+		this.name = name;
+		this.entries = entries;
+	}
+
+	/**
+	 * Compute the footprint of the supplied {@code model}. Note that for large
+	 * models, this method iterates every fault rupture and may take some time.
+	 *
+	 * @param model to examine
+	 */
+	public static ModelFootprint create(HazardModel model) {
+		ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+		for (SourceSet<? extends Source> sourceSet : model) {
+			Entry entry = new Entry(sourceSet);
+			switch (sourceSet.type()) {
+				case AREA:
+					processArea(entry, (AreaSourceSet) sourceSet);
+					break;
+				case CLUSTER:
+					for (ClusterSource source : (ClusterSourceSet) sourceSet) {
+						processFault(entry, source.faults());
+					}
+					break;
+				case FAULT:
+				case INTERFACE:
+					processFault(entry, sourceSet);
+					break;
+				case GRID:
+				case SLAB:
+					processGrid(entry, sourceSet);
+					break;
+				case SYSTEM:
+					processSystem(entry, (SystemSourceSet) sourceSet);
+					break;
+				default:
+					throw new IllegalStateException("Unhandled source type: " + sourceSet.type());
+			}
+			entries.add(entry);
+		}
+		return new ModelFootprint(model.name(), entries.build());
+	}
+
+	/**
+	 * The footprint of each {@code SourceSet} in the model.
+	 */
+	public List<Entry> entries() {
+		return entries;
+	}
+
+	/**
+	 * The total estimated size of the model, in bytes.
+	 */
+	public long bytes() {
+		long total = 0;
+		for (Entry entry : entries) {
+			total += entry.bytes();
+		}
+		return total;
+	}
+
+	/**
+	 * Footprint and cardinality of a single {@code SourceSet}.
+	 */
+	public static final class Entry {
+
+		private final SourceType type;
+		private final String name;
+		private int sources;
+		private long ruptures;
+		private long surfacePoints;
+		private final Map<Component, Long> bytes;
+
+		private Entry(SourceSet<? extends Source> sourceSet) {
+			type = sourceSet.type();
+			name = sourceSet.name();
+			sources = sourceSet.size();
+			bytes = Maps.newEnumMap(Component.class);
+			for (Component component : Component.values()) {
+				bytes.put(component, 0L);
+			}
+		}
+
+		/* Copy constructor used when computing totals. */
+		private Entry(Entry entry) {
+			type = entry.type;
+			name = "";
+			sources = entry.sources;
+			ruptures = entry.ruptures;
+			surfacePoints = entry.surfacePoints;
+			bytes = Maps.newEnumMap(entry.bytes);
+		}
+
+		private void add(Component component, long value) {
+			bytes.put(component, bytes.get(component) + value);
+		}
+
+		/** The {@code SourceType} of the source set. */
+		public SourceType type() {
+			return type;
+		}
+
+		/** The name of the source set. */
+		public String name() {
+			return name;
+		}
+
+		/** The number of sources in the source set. */
+		public int sources() {
+			return sources;
+		}
+
+		/** The number of ruptures in the source set. */
+		public long ruptures() {
+			return ruptures;
+		}
+
+		/** The number of rupture surface points in the source set. */
+		public long surfacePoints() {
+			return surfacePoints;
+		}
+
+		/** The estimated size of each model component, in bytes. */
+		public Map<Component, Long> componentBytes() {
+			return Collections.unmodifiableMap(bytes);
+		}
+
+		/** The total estimated size of the source set, in bytes. */
+		public long bytes() {
+			long total = 0;
+			for (long value : bytes.values()) {
+				total += value;
+			}
+			return total;
+		}
+	}
+
+	private static void processFault(Entry entry, SourceSet<? extends Source> sourceSet) {
+		for (Source src : sourceSet) {
+			FaultSource source = (FaultSource) src;
+			long points = source.surface.size();
+			entry.surfacePoints += points;
+			entry.add(Component.LOCATIONS, (source.trace.size() + points) * (LOCATION + REF) +
+				2 * ARRAY);
+			entry.add(Component.MFDS, mfdBytes(source.mfds));
+			long ruptures = 0;
+			long floaters = 0;
+			for (Rupture rupture : source) {
+				ruptures++;
+				if (rupture.surface instanceof GriddedSubsetSurface) floaters++;
+			}
+			entry.ruptures += ruptures;
+			entry.add(Component.RUPTURES, ruptures * (RUPTURE + REF) + floaters *
+				SUBSET_SURFACE + ARRAY);
+		}
+	}
+
+	private static void processGrid(Entry entry, SourceSet<? extends Source> sourceSet) {
+		Set<IncrementalMfd> mfds = Collections.newSetFromMap(
+			new IdentityHashMap<IncrementalMfd, Boolean>());
+		for (Source src : sourceSet) {
+			PointSource source = (PointSource) src;
+			entry.ruptures += source.size();
+			entry.add(Component.LOCATIONS, LOCATION + REF);
+			if (mfds.add(source.mfd)) entry.add(Component.MFDS, mfdBytes(source.mfd));
+			entry.add(Component.MFDS, REF);
+		}
+	}
+
+	private static void processArea(Entry entry, AreaSourceSet sourceSet) {
+		for (AreaSource source : sourceSet) {
+			entry.ruptures += source.size();
+			entry.add(Component.LOCATIONS, source.border().size() * (LOCATION + REF) + ARRAY);
+		}
+	}
+
+	private static void processSystem(Entry entry, SystemSourceSet sourceSet) {
+		for (GriddedSurface section : sourceSet.sections()) {
+			long points = section.size();
+			entry.surfacePoints += points;
+			entry.add(Component.LOCATIONS, points * (LOCATION + REF) + ARRAY);
+		}
+		for (SystemSource source : sourceSet) {
+			BitSet bits = source.bitset();
+			entry.add(Component.BITSETS, BITSET + REF + ARRAY + bits.size() / 8);
+		}
+		entry.ruptures = sourceSet.size();
+		entry.add(Component.COLUMNS, 6L * (ARRAY + 8L * sourceSet.size()));
+	}
+
+	private static long mfdBytes(List<IncrementalMfd> mfds) {
+		long total = ARRAY;
+		for (IncrementalMfd mfd : mfds) {
+			total += mfdBytes(mfd) + REF;
+		}
+		return total;
+	}
+
+	private static long mfdBytes(IncrementalMfd mfd) {
+		return MFD + ARRAY + 8L * mfd.getNum();
+	}
+
+	@Override public String toString() {
+		StringBuilder sb = new StringBuilder("Model footprint: ").append(name).append(NEWLINE);
+		sb.append(padEnd("Type", 11, ' '))
+			.append(padEnd("Name", 32, ' '))
+			.append(padStart("Sources", 10, ' '))
+			.append(padStart("Ruptures", 14, ' '))
+			.append(padStart("Points", 14, ' '));
+		for (Component component : Component.values()) {
+			sb.append(padStart(component.name(), 12, ' '));
+		}
+		sb.append(padStart("TOTAL", 12, ' ')).append(NEWLINE);
+
+		Map<SourceType, Entry> totals = new EnumMap<>(SourceType.class);
+		for (Entry entry : entries) {
+			appendEntry(sb, entry.type.name(), entry.name, entry);
+			Entry total = totals.get(entry.type);
+			if (total == null) {
+				total = new Entry(entry);
+				totals.put(entry.type, total);
+			} else {
+				total.sources += entry.sources;
+				total.ruptures += entry.ruptures;
+				total.surfacePoints += entry.surfacePoints;
+				for (Component component : Component.values()) {
+					total.add(component, entry.bytes.get(component));
+				}
+			}
+		}
+		sb.append(NEWLINE).append("Totals by source type:").append(NEWLINE);
+		for (Entry total : totals.values()) {
+			appendEntry(sb, total.type.name(), "", total);
+		}
+		sb.append("Estimated model size: ").append(toMegabytes(bytes())).append(" MB");
+		return sb.toString();
+	}
+
+	private static void appendEntry(StringBuilder sb, String type, String name, Entry entry) {
+		sb.append(padEnd(type, 11, ' '))
+			.append(padEnd(name.length() > 30 ? name.substring(0, 30) : name, 32, ' '))
+			.append(padStart(Integer.toString(entry.sources), 10, ' '))
+			.append(padStart(Long.toString(entry.ruptures), 14, ' '))
+			.append(padStart(Long.toString(entry.surfacePoints), 14, ' '));
+		for (Component component : Component.values()) {
+			sb.append(padStart(toMegabytes(entry.bytes.get(component)), 12, ' '));
+		}
+		sb.append(padStart(toMegabytes(entry.bytes()), 12, ' ')).append(NEWLINE);
+	}
+
+	private static String toMegabytes(long bytes) {
+		return String.format("%.2f", bytes / (1024.0 * 1024.0));
+	}
+
+}
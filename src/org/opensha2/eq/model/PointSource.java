@@ -88,6 +88,26 @@ class PointSource implements Source {
 		return rupCount;
 	}
 
+	@Override public double rate() {
+		return mfd.getTotalIncrRate();
+	}
+
+	@Override public double mMax() {
+		return mfd.getMaxMagWithNonZeroRate();
+	}
+
+	/*
+	 * Point source ruptures are cheap to iterate and their distances are
+	 * computed without reference to a finite surface.
+	 */
+	@Override public double minDistance(Location loc) {
+		double min = Double.MAX_VALUE;
+		for (Rupture rupture : this) {
+			min = Math.min(min, rupture.surface().distanceTo(loc).rJB);
+		}
+		return min;
+	}
+
 	/*
 	 * NOTE/TODO: Should not be many instances where a PointSource.rupture rate
 	 * is reduced to zero; not checked below such that rupture is skipped
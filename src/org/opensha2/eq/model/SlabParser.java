@@ -7,8 +7,11 @@ import java.io.InputStream;
 
 import javax.xml.parsers.SAXParser;
 
+import org.opensha2.geo.Location;
 import org.xml.sax.SAXException;
 
+import com.google.common.base.Predicate;
+
 /*
  * Placeholder parser; delegates to GridParser.
  * 
@@ -27,10 +30,10 @@ class SlabParser {
 		return new SlabParser(sax);
 	}
 
-	SlabSourceSet parse(InputStream in, GmmSet gmmSet, ModelConfig config) throws SAXException,
-			IOException {
-		GridSourceSet delegate = gridParser.parse(in, gmmSet, config);
-		return new SlabSourceSet(delegate);
+	SlabSourceSet parse(InputStream in, GmmSet gmmSet, ModelConfig config,
+			Predicate<Location> filter) throws SAXException, IOException {
+		GridSourceSet delegate = gridParser.parse(in, gmmSet, config, filter);
+		return (delegate == null) ? null : new SlabSourceSet(delegate);
 	}
 
 }
@@ -1,5 +1,6 @@
 package org.opensha2.eq.model;
 
+import org.opensha2.geo.Location;
 import org.opensha2.mfd.IncrementalMfd;
 import org.opensha2.util.Named;
 
@@ -17,4 +18,24 @@ public interface Source extends Named, Iterable<Rupture> {
 	 */
 	int size();
 
+	/**
+	 * The total annual rate of all {@link Rupture}s this {@code Source}
+	 * represents.
+	 */
+	double rate();
+
+	/**
+	 * The largest magnitude of any {@link Rupture} this {@code Source}
+	 * represents.
+	 */
+	double mMax();
+
+	/**
+	 * A lower bound on the Joyner-Boore distance (rJB) from a {@code Location}
+	 * to any {@link Rupture} this {@code Source} represents.
+	 * 
+	 * @param loc {@code Location} of interest
+	 */
+	double minDistance(Location loc);
+
 }
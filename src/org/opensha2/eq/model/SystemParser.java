@@ -15,7 +15,7 @@ import static org.opensha2.mfd.MfdType.GR;
 import static org.opensha2.mfd.MfdType.GR_TAPER;
 import static org.opensha2.mfd.MfdType.INCR;
 import static org.opensha2.mfd.MfdType.SINGLE;
-import static org.opensha2.util.Parsing.rangeStringToIntList;
+import static org.opensha2.util.Parsing.rangeStringToBits;
 import static org.opensha2.util.Parsing.readDouble;
 import static org.opensha2.util.Parsing.readEnum;
 import static org.opensha2.util.Parsing.readInt;
@@ -23,6 +23,7 @@ import static org.opensha2.util.Parsing.readString;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -30,6 +31,7 @@ import javax.xml.parsers.SAXParser;
 
 import org.opensha2.eq.fault.surface.GriddedSurface;
 import org.opensha2.eq.model.MfdHelper.SingleData;
+import org.opensha2.geo.Location;
 import org.opensha2.mfd.IncrementalMfd;
 import org.opensha2.mfd.MfdType;
 import org.opensha2.mfd.Mfds;
@@ -39,6 +41,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 
 /*
@@ -66,6 +69,11 @@ class SystemParser extends DefaultHandler {
 	private SystemSourceSet sourceSet;
 	private SystemSourceSet.Builder sourceSetBuilder;
 
+	// Region-of-interest filter
+	private BitSet sectionFilter;
+	private int ruptureCount = 0;
+	private int skipCount = 0;
+
 	/*
 	 * Currently, SystemSourceSets simply maintain lists of magnitudes and rates
 	 * for each rupture, but they may be refactored in the future to support one
@@ -96,17 +104,36 @@ class SystemParser extends DefaultHandler {
 		return new SystemParser(checkNotNull(sax));
 	}
 
-	SystemSourceSet parse(InputStream sectionsIn, InputStream rupturesIn, GmmSet gmmSet)
-			throws SAXException, IOException {
+	/*
+	 * Ruptures that do not include at least one section with a centroid that
+	 * satisfies the supplied filter are skipped; all sections are retained as
+	 * ruptures reference them by index. Returns null if no ruptures remain.
+	 */
+	SystemSourceSet parse(InputStream sectionsIn, InputStream rupturesIn, GmmSet gmmSet,
+			Predicate<Location> filter) throws SAXException, IOException {
 		checkState(!used, "This parser has expired");
 		this.gmmSet = gmmSet;
 		sections = parseSections(sectionsIn);
+		sectionFilter = sectionFilter(sections, filter);
 		sax.parse(rupturesIn, this);
-		checkState(sourceSet.size() > 0, "SystemSourceSet is empty");
+		checkState(sourceSet == null || sourceSet.size() > 0, "SystemSourceSet is empty");
 		used = true;
 		return sourceSet;
 	}
 
+	/*
+	 * Returns a BitSet with bits set for each section with a centroid that
+	 * satisfies the supplied filter.
+	 */
+	static BitSet sectionFilter(List<GriddedSurface> sections, Predicate<Location> filter) {
+		BitSet bits = new BitSet(sections.size());
+		int index = 0;
+		for (GriddedSurface section : sections) {
+			bits.set(index++, filter.apply(section.centroid()));
+		}
+		return bits;
+	}
+
 	private List<GriddedSurface> parseSections(InputStream in) throws SAXException, IOException {
 		SystemSectionParser parser = SystemSectionParser.create(sax);
 		return parser.parse(in);
@@ -156,10 +183,16 @@ class SystemParser extends DefaultHandler {
 					break;
 
 				case GEOMETRY:
+					BitSet indices = rangeStringToBits(readString(INDICES, atts), sections.size());
+					if (!indices.intersects(sectionFilter)) {
+						skipCount++;
+						break;
+					}
+					ruptureCount++;
 					sourceSetBuilder
 						.mag(mfd.getX(0))
 						.rate(mfd.getY(0))
-						.indices(rangeStringToIntList(readString(INDICES, atts)))
+						.indices(indices)
 						.depth(readDouble(DEPTH, atts))
 						.dip(readDouble(DIP, atts))
 						.rake(readDouble(RAKE, atts))
@@ -193,6 +226,8 @@ class SystemParser extends DefaultHandler {
 					break;
 
 				case SYSTEM_SOURCE_SET:
+					if (skipCount > 0) log.info("    Skipped: " + skipCount + " ruptures outside region");
+					if (ruptureCount == 0) break;
 					sourceSet = sourceSetBuilder.build();
 					log.info("   Ruptures: " + sourceSet.size());
 					break;
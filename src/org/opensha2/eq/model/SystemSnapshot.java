@@ -0,0 +1,214 @@
+package org.opensha2.eq.model;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.List;
+
+import org.opensha2.eq.fault.surface.GriddedSurface;
+import org.opensha2.eq.model.SystemSourceSet.SystemSource;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/*
+ * Versioned binary snapshot of the rupture table of a SystemSourceSet. Parsing
+ * fault_ruptures.xml (~250k ruptures for UCERF3) dominates model load times;
+ * the associated fault sections are comparatively few and are always parsed
+ * from XML as they are required to build rupture surfaces.
+ *
+ * Snapshots are keyed by a hash of the section and rupture file contents and
+ * the ModelConfig in effect, and are written to the directory specified by the
+ * 'nshmp.snapshot.dir' system property (default: ${java.io.tmpdir}/nshmp-haz).
+ * Setting the property to 'none' disables snapshots. Subsequent loads memory
+ * map the snapshot file in lieu of parsing XML.
+ *
+ * File layout (big-endian): MAGIC, VERSION, name (int length and UTF-8
+ * bytes), id, weight, section count, rupture count, index count;
+ * int[ruptures + 1] index offsets, int[] section indices; double[ruptures]
+ * for each of mag, rate, depth, dip, width, rake.
+ *
+ * @author Peter Powers
+ */
+final class SystemSnapshot {
+
+	static final String DIR_PROPERTY = "nshmp.snapshot.dir";
+
+	private static final int MAGIC = 0x4e534853; // 'NSHS'
+	private static final int VERSION = 2;
+	private static final String DISABLED = "none";
+	private static final String EXTENSION = ".bin";
+
+	private SystemSnapshot() {}
+
+	/*
+	 * Returns the snapshot path for the supplied system source files and
+	 * config, or null if snapshots are disabled.
+	 */
+	static Path path(Path sectionsPath, Path rupturesPath, ModelConfig config)
+			throws IOException {
+		String dir = System.getProperty(DIR_PROPERTY,
+			Paths.get(System.getProperty("java.io.tmpdir"), "nshmp-haz").toString());
+		if (dir.equalsIgnoreCase(DISABLED)) return null;
+		Hasher hasher = Hashing.sha1().newHasher();
+		hasher.putInt(VERSION);
+		hash(hasher, sectionsPath);
+		hash(hasher, rupturesPath);
+		hasher.putString(config.name, UTF_8)
+			.putDouble(config.surfaceSpacing)
+			.putDouble(config.surfaceTolerance)
+			.putString(String.valueOf(config.ruptureFloating), UTF_8)
+			.putBoolean(config.ruptureVariability)
+			.putString(String.valueOf(config.pointSourceType), UTF_8)
+			.putString(String.valueOf(config.areaGridScaling), UTF_8);
+		return Paths.get(dir).resolve("system-" + hasher.hash() + EXTENSION);
+	}
+
+	private static void hash(Hasher hasher, Path path) throws IOException {
+		byte[] buffer = new byte[1 << 16];
+		try (InputStream in = Files.newInputStream(path)) {
+			int count;
+			while ((count = in.read(buffer)) != -1) {
+				hasher.putBytes(buffer, 0, count);
+			}
+		}
+	}
+
+	/*
+	 * Write a snapshot of the supplied source set. Data is written to a
+	 * temporary file that is subsequently moved into place so that concurrent
+	 * readers never see a partial snapshot.
+	 */
+	static void write(Path path, SystemSourceSet sourceSet) throws IOException {
+		Files.createDirectories(path.getParent());
+		Path tmp = Files.createTempFile(path.getParent(), "system-", ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			Files.newOutputStream(tmp, WRITE, TRUNCATE_EXISTING), 1 << 16))) {
+
+			int size = sourceSet.size();
+			int indexCount = 0;
+			int sectionCount = 0;
+			for (SystemSource source : sourceSet) {
+				BitSet bits = source.bitset();
+				indexCount += bits.cardinality();
+				sectionCount = Math.max(sectionCount, bits.length());
+			}
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			byte[] name = sourceSet.name().getBytes(UTF_8);
+			out.writeInt(name.length);
+			out.write(name);
+			out.writeInt(sourceSet.id());
+			out.writeDouble(sourceSet.weight());
+			out.writeInt(sectionCount);
+			out.writeInt(size);
+			out.writeInt(indexCount);
+
+			int offset = 0;
+			out.writeInt(offset);
+			for (SystemSource source : sourceSet) {
+				offset += source.bitset().cardinality();
+				out.writeInt(offset);
+			}
+			for (SystemSource source : sourceSet) {
+				BitSet bits = source.bitset();
+				for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+					out.writeInt(i);
+				}
+			}
+			// @formatter:off
+			for (SystemSource source : sourceSet) out.writeDouble(source.magnitude());
+			for (SystemSource source : sourceSet) out.writeDouble(source.rate());
+			for (SystemSource source : sourceSet) out.writeDouble(source.depth());
+			for (SystemSource source : sourceSet) out.writeDouble(source.dip());
+			for (SystemSource source : sourceSet) out.writeDouble(source.width());
+			for (SystemSource source : sourceSet) out.writeDouble(source.rake());
+			// @formatter:on
+		} catch (IOException ioe) {
+			Files.deleteIfExists(tmp);
+			throw ioe;
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+			StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/*
+	 * Read a snapshot, rebuilding the source set against the supplied
+	 * sections and ground motion models. Only those ruptures that include a
+	 * section in sectionFilter are retained; returns null if no ruptures
+	 * remain. Throws an IllegalStateException if the snapshot is not
+	 * compatible with this version or the sections.
+	 */
+	static SystemSourceSet read(Path path, List<GriddedSurface> sections, GmmSet gmmSet,
+			BitSet sectionFilter) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, READ)) {
+			ByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+
+			checkState(buf.getInt() == MAGIC, "Invalid snapshot: %s", path);
+			int version = buf.getInt();
+			checkState(version == VERSION, "Snapshot version [%s] not supported", version);
+
+			byte[] nameBytes = new byte[buf.getInt()];
+			buf.get(nameBytes);
+			String name = new String(nameBytes, UTF_8);
+			int id = buf.getInt();
+			double weight = buf.getDouble();
+			int sectionCount = buf.getInt();
+			checkState(sectionCount <= sections.size(),
+				"Snapshot section count [%s] exceeds model [%s]", sectionCount, sections.size());
+			int size = buf.getInt();
+			int indexCount = buf.getInt();
+
+			int[] offsets = new int[size + 1];
+			buf.asIntBuffer().get(offsets);
+			buf.position(buf.position() + offsets.length * 4);
+			int[] indices = new int[indexCount];
+			buf.asIntBuffer().get(indices);
+			buf.position(buf.position() + indices.length * 4);
+
+			double[][] columns = new double[6][size];
+			for (double[] column : columns) {
+				buf.asDoubleBuffer().get(column);
+				buf.position(buf.position() + column.length * 8);
+			}
+
+			SystemSourceSet.Builder builder = new SystemSourceSet.Builder();
+			builder.name(name).id(id).weight(weight).gmms(gmmSet);
+			builder.sections(sections);
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				BitSet bits = new BitSet(sections.size());
+				for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+					bits.set(indices[j]);
+				}
+				if (!bits.intersects(sectionFilter)) continue;
+				count++;
+				builder.indices(bits)
+					.mag(columns[0][i])
+					.rate(columns[1][i])
+					.depth(columns[2][i])
+					.dip(columns[3][i])
+					.width(columns[4][i])
+					.rake(columns[5][i]);
+			}
+			return (count == 0) ? null : builder.build();
+		}
+	}
+
+}
@@ -107,6 +107,11 @@ public class SystemSourceSet extends AbstractSourceSet<SystemSourceSet.SystemSou
 		};
 	}
 
+	/* Package exposure for model diagnostics. */
+	List<GriddedSurface> sections() {
+		return sections;
+	}
+
 	@Override public Predicate<SystemSource> distanceFilter(Location loc, double distance) {
 		BitSet siteBitset = bitsetForLocation(loc, distance);
 		return new BitsetFilter(siteBitset);
@@ -138,6 +143,23 @@ public class SystemSourceSet extends AbstractSourceSet<SystemSourceSet.SystemSou
 			return "Unnamed fault system source";
 		}
 
+		@Override public double rate() {
+			return rates.get(index);
+		}
+
+		@Override public double mMax() {
+			return magnitude();
+		}
+
+		@Override public double minDistance(Location loc) {
+			double min = Double.MAX_VALUE;
+			BitSet bitset = bitset();
+			for (int i = bitset.nextSetBit(0); i >= 0; i = bitset.nextSetBit(i + 1)) {
+				min = Math.min(min, sections.get(i).distanceTo(loc).rJB);
+			}
+			return min;
+		}
+
 		@Override public Iterator<Rupture> iterator() {
 			/*
 			 * Rupture iterator not currently supported but may be in future if
@@ -148,13 +170,12 @@ public class SystemSourceSet extends AbstractSourceSet<SystemSourceSet.SystemSou
 		}
 
 		// @formatter:off
-		private final BitSet bitset()    { return bitsets.get(index); }
-		private final double magnitude() { return mags.get(index); }
-		private final double rate()      { return rates.get(index); }
-		private final double depth()     { return depths.get(index); }
-		private final double dip()       { return dips.get(index); }
-		private final double width()     { return widths.get(index); }
-		private final double rake()      { return rakes.get(index); }
+		final BitSet bitset()    { return bitsets.get(index); }
+		final double magnitude() { return mags.get(index); }
+		final double depth()     { return depths.get(index); }
+		final double dip()       { return dips.get(index); }
+		final double width()     { return widths.get(index); }
+		final double rake()      { return rakes.get(index); }
 		// @formatter:on
 	}
 
@@ -197,6 +218,16 @@ public class SystemSourceSet extends AbstractSourceSet<SystemSourceSet.SystemSou
 			return this;
 		}
 
+		Builder indices(BitSet bits) {
+			checkState(sections != null, "Indices may only be set after call to sections()");
+			checkNotNull(bits, "Rupture index bitset is null");
+			checkArgument(bits.cardinality() > 1, "Rupture index bitset must contain 2 or more values");
+			checkArgument(bits.length() <= sections.size(), "Rupture index [%s] out of range",
+				bits.length() - 1);
+			bitsets.add(bits);
+			return this;
+		}
+
 		Builder mag(double mag) {
 			mags.add(validateMag(mag));
 			return this;
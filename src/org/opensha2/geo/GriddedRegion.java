@@ -23,6 +23,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.awt.Shape;
 import java.awt.geom.Area;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Rectangle2D;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -524,12 +525,13 @@ public class GriddedRegion extends Region implements Iterable<Location> {
 		List<Location> nodeList = Lists.newArrayList();
 		int node_idx = 0;
 		int grid_idx = 0;
-		Location loc;
+		Scanline scanline = new Scanline(area, lonNodes);
+		boolean[] inside = new boolean[lonSize];
 		for (double lat : latNodes) {
-			for (double lon : lonNodes) {
-				loc = Location.create(lat, lon);
-				if (contains(loc)) {
-					nodeList.add(loc);
+			scanline.fill(lat, inside);
+			for (int i = 0; i < lonSize; i++) {
+				if (inside[i]) {
+					nodeList.add(Location.create(lat, lonNodes[i]));
 					gridIndices[grid_idx] = node_idx++;
 				} else {
 					gridIndices[grid_idx] = -1;
@@ -541,6 +543,130 @@ public class GriddedRegion extends Region implements Iterable<Location> {
 		nodeCount = node_idx;
 	}
 
+	/*
+	 * Scanline rasterization of an Area over a row of node longitudes. Rather
+	 * than test each node with Area.contains(), the border segment crossings
+	 * for each row of nodes are computed once and the nodes in each row are
+	 * then assigned to interior or exterior spans directly.
+	 * 
+	 * Tests replicate those of Area.contains(x, y) exactly, such that node sets
+	 * are identical: a point must be within the Area bounds, and is inside if
+	 * the number of non-horizontal segments whose y-range [yTop, yBot) spans
+	 * the point, and whose x-value at the point's y (clamped to the segment
+	 * x-range) is greater than that of the point, is odd (see
+	 * sun.awt.geom.Curve.crossingsFor() and Order1.XforY()). Coordinates are
+	 * those of Location.lat() and lon(), which may differ slightly from the
+	 * supplied node values due to internal radian conversion.
+	 */
+	private static final class Scanline {
+
+		private final Rectangle2D bounds;
+		private final double[] xTop;
+		private final double[] yTop;
+		private final double[] xBot;
+		private final double[] yBot;
+		private final double[] xMin;
+		private final double[] xMax;
+		private final int size;
+		private final double[] xs;
+		private double[] crossings;
+
+		Scanline(Area area, double[] lons) {
+			xs = new double[lons.length];
+			for (int i = 0; i < lons.length; i++) {
+				xs[i] = Location.create(0.0, lons[i]).lon();
+			}
+			bounds = area.getBounds2D();
+			List<double[]> segments = Lists.newArrayList();
+			double[] coords = new double[6];
+			double xStart = 0.0, yStart = 0.0, x = 0.0, y = 0.0;
+			for (PathIterator it = area.getPathIterator(null); !it.isDone(); it.next()) {
+				switch (it.currentSegment(coords)) {
+					case PathIterator.SEG_MOVETO:
+						xStart = x = coords[0];
+						yStart = y = coords[1];
+						break;
+					case PathIterator.SEG_LINETO:
+						addSegment(segments, x, y, coords[0], coords[1]);
+						x = coords[0];
+						y = coords[1];
+						break;
+					case PathIterator.SEG_CLOSE:
+						addSegment(segments, x, y, xStart, yStart);
+						x = xStart;
+						y = yStart;
+						break;
+					default:
+						throw new IllegalStateException("Area contains curved segments");
+				}
+			}
+			size = segments.size();
+			xTop = new double[size];
+			yTop = new double[size];
+			xBot = new double[size];
+			yBot = new double[size];
+			xMin = new double[size];
+			xMax = new double[size];
+			for (int i = 0; i < size; i++) {
+				double[] s = segments.get(i);
+				xTop[i] = s[0];
+				yTop[i] = s[1];
+				xBot[i] = s[2];
+				yBot[i] = s[3];
+				xMin[i] = Math.min(s[0], s[2]);
+				xMax[i] = Math.max(s[0], s[2]);
+			}
+			crossings = new double[8];
+		}
+
+		/* Horizontal segments never yield crossings and are skipped. */
+		private static void addSegment(List<double[]> segments, double x0, double y0,
+				double x1, double y1) {
+			if (y0 == y1) return;
+			segments.add((y0 < y1) ? new double[] { x0, y0, x1, y1 } :
+				new double[] { x1, y1, x0, y0 });
+		}
+
+		/*
+		 * Populate inside with the insidedness of the nodes in the row at lat.
+		 */
+		void fill(double lat, boolean[] inside) {
+			double y = Location.create(lat, 0.0).lat();
+			if (!(y >= bounds.getY() && y < bounds.getY() + bounds.getHeight())) {
+				Arrays.fill(inside, false);
+				return;
+			}
+
+			// crossing thresholds; a point is left of a segment if x < threshold
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (y >= yTop[i] && y < yBot[i]) {
+					if (count == crossings.length) crossings = Arrays.copyOf(crossings, count * 2);
+					crossings[count++] = Math.min(xMax[i], Math.max(xMin[i], xForY(i, y)));
+				}
+			}
+			Arrays.sort(crossings, 0, count);
+
+			// advance through thresholds; inside if count above x is odd
+			double xMinBound = bounds.getX();
+			double xMaxBound = bounds.getX() + bounds.getWidth();
+			int index = 0;
+			for (int i = 0; i < xs.length; i++) {
+				double x = xs[i];
+				while (index < count && crossings[index] <= x) {
+					index++;
+				}
+				inside[i] = x >= xMinBound && x < xMaxBound && ((count - index) & 1) == 1;
+			}
+		}
+
+		private double xForY(int i, double y) {
+			if (xTop[i] == xBot[i] || y <= yTop[i]) return xTop[i];
+			if (y >= yBot[i]) return xBot[i];
+			return xTop[i] + (y - yTop[i]) * (xBot[i] - xTop[i]) / (yBot[i] - yTop[i]);
+		}
+	}
+
 	/*
 	 * Initializes an array of node centers. The first (lowest) bin is centered
 	 * on the min value.
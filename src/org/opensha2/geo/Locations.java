@@ -727,6 +727,49 @@ public final class Locations {
 		return new RectangleFilter(origin, distance);
 	}
 
+	/**
+	 * Return a {@code Location} filter that accepts {@code Location}s inside
+	 * or within {@code distance} of a {@code Region}. The filter first checks
+	 * whether a {@code Location} falls inside a rectangle that bounds the
+	 * {@code Region} plus {@code distance} before computing
+	 * {@link Region#distanceToLocation(Location)}.
+	 * 
+	 * @param region of filter
+	 * @param distance beyond which the filter will return {@code false}
+	 */
+	public static Predicate<Location> regionFilter(Region region, double distance) {
+		return new RegionFilter(region, distance);
+	}
+
+	private static class RegionFilter implements Predicate<Location> {
+		private final Region region;
+		private final double distance;
+		private final Rectangle2D rect;
+
+		private RegionFilter(Region region, double distance) {
+			this.region = region;
+			this.distance = distance;
+			Location min = Location.create(region.getMinLat(), region.getMinLon());
+			Location max = Location.create(region.getMaxLat(), region.getMaxLon());
+			Location minLatMaxLon = Location.create(region.getMinLat(), region.getMaxLon());
+			Location maxLatMinLon = Location.create(region.getMaxLat(), region.getMinLon());
+			rect = rectangle(min, distance);
+			rect.add(rectangle(max, distance));
+			rect.add(rectangle(minLatMaxLon, distance));
+			rect.add(rectangle(maxLatMinLon, distance));
+		}
+
+		@Override public boolean apply(Location loc) {
+			return rect.contains(loc.lonRad(), loc.latRad()) &&
+				region.distanceToLocation(loc) <= distance;
+		}
+
+		@Override public String toString() {
+			return "Locations.RegionFilter [region: " + region.name() + ", distance: " + distance +
+				"]";
+		}
+	}
+
 	private static class RectangleFilter implements Predicate<Location> {
 		private final Rectangle2D rect;
 
@@ -0,0 +1,163 @@
+package org.opensha2.programs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.opensha2.util.Parsing;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
+
+/*
+ * Progress record of a multi-site calculation whose results are written to a
+ * directory in site order. A checkpoint holds the number of sites, from the
+ * start of the site sequence, whose results have been completely written, and
+ * the length in bytes of each result file at that point. Because results are
+ * written in site order, completed sites always form a contiguous prefix;
+ * sites that finish out of order are only recorded once all preceding sites
+ * have been written.
+ *
+ * Checkpoints are written at most once per INTERVAL, and on demand, to a
+ * temporary file that atomically replaces the previous checkpoint. When a
+ * calculation is resumed, result files are truncated to their checkpointed
+ * lengths, discarding any partial trailing writes, and result files created
+ * after the checkpoint are deleted. The site count and shard of the
+ * calculation must match those of the checkpoint. A new calculation, or one
+ * resumed from a checkpoint with no completed sites, starts from an empty
+ * results directory.
+ *
+ * @author Peter Powers
+ */
+final class Checkpoint {
+
+	static final String FILE = "checkpoint.json";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final String RESULT_FILE_GLOB = "*.csv";
+	private static final long INTERVAL = 30; // seconds
+
+	/* Serialized state. */
+	private final String shard;
+	private final int size;
+	private int completed;
+	private Map<String, Long> files = new TreeMap<>();
+
+	private transient Path dir;
+	private transient Stopwatch watch;
+
+	private Checkpoint(Path dir, String shard, int size) {
+		this.dir = dir;
+		this.shard = shard;
+		this.size = size;
+		this.watch = Stopwatch.createStarted();
+	}
+
+	/*
+	 * Create a new checkpoint for a calculation of size sites, identified by
+	 * shard (null if unsharded), that writes results to dir. Any existing
+	 * checkpoint is replaced and any existing result files, which may be for
+	 * other Imts, are deleted, such that the new checkpoint records no
+	 * results.
+	 */
+	static Checkpoint create(Path dir, String shard, int size) throws IOException {
+		deleteResults(dir, Collections.<String> emptySet());
+		Checkpoint checkpoint = new Checkpoint(dir, shard, size);
+		checkpoint.write();
+		return checkpoint;
+	}
+
+	/*
+	 * Resume from the checkpoint in dir, restoring result files to their
+	 * checkpointed state. If no checkpoint exists, or no sites were completed,
+	 * the calculation is restarted with a new checkpoint.
+	 */
+	static Checkpoint resume(Path dir, String shard, int size) throws IOException {
+		Path file = dir.resolve(FILE);
+		if (Files.notExists(file)) return create(dir, shard, size);
+
+		Checkpoint checkpoint;
+		try (Reader reader = Files.newBufferedReader(file, US_ASCII)) {
+			checkpoint = Parsing.GSON.fromJson(reader, Checkpoint.class);
+		}
+		if (checkpoint.completed == 0) return create(dir, shard, size);
+		checkState(Objects.equal(checkpoint.shard, shard),
+			"Checkpoint shard [%s] differs from calculation [%s]", checkpoint.shard, shard);
+		checkState(checkpoint.size == size,
+			"Checkpoint site count [%s] differs from calculation [%s]", checkpoint.size, size);
+
+		deleteResults(dir, checkpoint.files.keySet());
+		for (Entry<String, Long> entry : checkpoint.files.entrySet()) {
+			Path resultFile = dir.resolve(entry.getKey());
+			long length = entry.getValue();
+			checkState(Files.exists(resultFile) && Files.size(resultFile) >= length,
+				"Result file [%s] is shorter than checkpoint length [%s]", resultFile, length);
+			try (FileChannel channel = FileChannel.open(resultFile, WRITE)) {
+				channel.truncate(length);
+			}
+		}
+		checkpoint.dir = dir;
+		checkpoint.watch = Stopwatch.createStarted();
+		return checkpoint;
+	}
+
+	/* Delete the result files in dir whose names are not in keep. */
+	private static void deleteResults(Path dir, Set<String> keep) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, RESULT_FILE_GLOB)) {
+			for (Path resultFile : stream) {
+				if (!keep.contains(resultFile.getFileName().toString())) Files.delete(resultFile);
+			}
+		}
+	}
+
+	/* The number of sites completed. */
+	int completed() {
+		return completed;
+	}
+
+	/*
+	 * Record that the results of the first completed sites have been written.
+	 * The checkpoint is written if INTERVAL has elapsed since the last write or
+	 * if force is true.
+	 */
+	void update(int completed, boolean force) throws IOException {
+		checkArgument(completed >= this.completed && completed <= size,
+			"Completed site count [%s] out of range [%s, %s]", completed, this.completed, size);
+		this.completed = completed;
+		if (force || watch.elapsed(SECONDS) >= INTERVAL) write();
+	}
+
+	private void write() throws IOException {
+		Map<String, Long> lengths = new TreeMap<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, RESULT_FILE_GLOB)) {
+			for (Path resultFile : stream) {
+				lengths.put(resultFile.getFileName().toString(), Files.size(resultFile));
+			}
+		}
+		files = lengths;
+		Path temp = dir.resolve(FILE + TEMP_SUFFIX);
+		try (Writer writer = Files.newBufferedWriter(temp, US_ASCII)) {
+			Parsing.GSON.toJson(this, writer);
+		}
+		Files.move(temp, dir.resolve(FILE), ATOMIC_MOVE, REPLACE_EXISTING);
+		watch.reset().start();
+	}
+
+}
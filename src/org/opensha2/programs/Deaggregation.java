@@ -1,25 +1,210 @@
 package org.opensha2.programs;
 
+import static java.lang.Runtime.getRuntime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static org.opensha2.util.TextUtils.NEWLINE;
+import static org.opensha2.util.TextUtils.format;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+
+import org.opensha2.calc.CalcConfig;
+import org.opensha2.calc.Calcs;
+import org.opensha2.calc.Deagg;
 import org.opensha2.calc.HazardResult;
+import org.opensha2.calc.PreparedCalc;
 import org.opensha2.calc.Site;
 import org.opensha2.eq.model.HazardModel;
 import org.opensha2.gmm.Imt;
+import org.opensha2.util.Logging;
+
+import com.google.common.base.Optional;
+import com.google.common.base.StandardSystemProperty;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 
 /**
- * Add comments here
+ * Entry point for deaggregating hazard at a {@link Site} for a
+ * {@link HazardModel}. The {@code main()} method of this class deaggregates
+ * hazard for each {@link Imt} and site at the intensity measure level
+ * corresponding to the supplied return period. For programmatic use, consider
+ * the {@code calc()} method of this class.
  *
  * @author Peter Powers
+ * @see Deagg
  */
 public class Deaggregation {
 
-//	public Deagg calc(HazardResult model, Imt imt, Site site, double rate) {
-//		
-//		
-//		// HazardResult should reference model??
-//		
-//		// compute targetIml from totalCurve
-//		
-//	}
-	
-	// 
+	/**
+	 * Entry point for a deaggregation calculation.
+	 *
+	 * <p>Deaggregation requires at least 2, and at most 4, arguments: the path
+	 * to a model zip file or directory and a return period (in years). An
+	 * optional calculation configuration file and comma-delimited site data
+	 * file may also be supplied; these are handled in the same manner as
+	 * {@link HazardCurve#main(String[])}. Ground motions are always retained
+	 * for deaggregation, regardless of configuration.</p>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		String status = run(args);
+		if (status != null) System.err.print(status);
+	}
+
+	static String run(String[] args) {
+		int argCount = args.length;
+
+		if (argCount < 2 || argCount > 4) {
+			return USAGE;
+		}
+
+		Logging.init();
+		Logger log = Logger.getLogger(Deaggregation.class.getName());
+
+		try {
+
+			log.info("Deaggregation: init...");
+			Path modelPath = Paths.get(args[0]);
+			double returnPeriod = Double.valueOf(args[1]);
+			HazardModel model = HazardModel.load(modelPath);
+
+			CalcConfig.Builder configBuilder = CalcConfig.builder().copy(model.config());
+			if (argCount > 2) configBuilder.extend(CalcConfig.builder(Paths.get(args[2])));
+			CalcConfig config = configBuilder.retainGroundMotions(true).build();
+			log.info(config.toString());
+
+			Iterable<Site> sites = config.sites();
+			if (argCount > 3) {
+				Path sitePath = Paths.get(args[3]);
+				sites = Site.fromCsv(sitePath);
+				log.info("");
+				StringBuilder sb = new StringBuilder()
+					.append("Site config:")
+					.append(format("resource")).append(sitePath)
+					.append(format("(override) sites"))
+					.append(sites);
+				log.info(sb.toString());
+			}
+
+			calc(model, config, sites, returnPeriod, log);
+			return null;
+
+		} catch (Exception e) {
+			return new StringBuilder()
+				.append(NEWLINE)
+				.append("Deaggregation: error").append(NEWLINE)
+				.append("   Arguments: ").append(Arrays.toString(args)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(Throwables.getStackTraceAsString(e)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(USAGE)
+				.toString();
+		}
+	}
+
+	private static final OpenOption[] WRITE_OPTIONS = new OpenOption[] { CREATE,
+		TRUNCATE_EXISTING };
+	private static final OpenOption[] APPEND_OPTIONS = new OpenOption[] { CREATE, APPEND };
+
+	/*
+	 * Compute hazard and deaggregate at each site, writing one summary file
+	 * per Imt.
+	 */
+	private static void calc(
+			HazardModel model,
+			CalcConfig config,
+			Iterable<Site> sites,
+			double returnPeriod,
+			Logger log) throws IOException {
+
+		ExecutorService execSvc = new ForkJoinPool(getRuntime().availableProcessors());
+		Optional<Executor> executor = Optional.<Executor> of(execSvc);
+		PreparedCalc prepared = PreparedCalc.create(model, config);
+
+		log.info("Deaggregation: calculating ...");
+		Stopwatch totalWatch = Stopwatch.createStarted();
+		Path dir = Paths.get(StandardSystemProperty.USER_DIR.value(), "results", "deagg");
+		Files.createDirectories(dir);
+		Set<Imt> written = EnumSet.noneOf(Imt.class);
+		int count = 0;
+
+		for (Site site : sites) {
+			HazardResult result = HazardCurve.calc(prepared, site, executor);
+			for (Imt imt : result.curves().keySet()) {
+				Deagg deagg = calc(result, imt, returnPeriod, executor);
+				String summary = site + NEWLINE + deagg + NEWLINE;
+				log.info(summary);
+				OpenOption[] opts = written.add(imt) ? WRITE_OPTIONS : APPEND_OPTIONS;
+				Files.write(dir.resolve(imt.name() + ".txt"), summary.getBytes(UTF_8), opts);
+			}
+			count++;
+		}
+		log.info("Deaggregation: " + count + " complete " + totalWatch);
+
+		execSvc.shutdown();
+	}
+
+	/**
+	 * Deaggregate a {@code HazardResult} at the intensity measure level
+	 * corresponding to the supplied return period. If an {@code executor} is
+	 * supplied, it will be used to distribute tasks; otherwise, one will be
+	 * created.
+	 *
+	 * @param result to deaggregate
+	 * @param imt to deaggregate
+	 * @param returnPeriod of interest (in years)
+	 * @param executor to use ({@link Optional})
+	 * @return a Deagg
+	 */
+	public static Deagg calc(
+			HazardResult result,
+			Imt imt,
+			double returnPeriod,
+			Optional<Executor> executor) {
+
+		Executor ex = executor.or(new ForkJoinPool(getRuntime().availableProcessors()));
+
+		try {
+			Deagg deagg = Calcs.deaggregation(result, imt, returnPeriod, ex);
+			if (!executor.isPresent()) ((ExecutorService) ex).shutdown();
+			return deagg;
+		} catch (ExecutionException | InterruptedException e) {
+			Throwables.propagate(e);
+			return null;
+		}
+	}
+
+	private static final String USAGE_COMMAND = "java -cp nshmp-haz.jar org.opensha2.programs.Deaggregation model returnPeriod [config [sites]]";
+	private static final String USAGE_URL1 = "https://github.com/usgs/nshmp-haz/wiki/Earthquake-Source-Models";
+	private static final String USAGE_URL2 = "https://github.com/usgs/nshmp-haz/wiki/Hazard-Calculations";
+
+	static final String USAGE = new StringBuilder()
+		.append("Deaggregation usage:").append(NEWLINE)
+		.append("  ").append(USAGE_COMMAND).append(NEWLINE)
+		.append(NEWLINE)
+		.append("Where:").append(NEWLINE)
+		.append("  'model' is a model zip file or directory").append(NEWLINE)
+		.append("  'returnPeriod' is the return period of interest, in years").append(NEWLINE)
+		.append("  'config' supplies a calculation configuration").append(NEWLINE)
+		.append("  'sites' is a comma-delimited site data file").append(NEWLINE)
+		.append(NEWLINE)
+		.append("For more information, see:").append(NEWLINE)
+		.append("  ").append(USAGE_URL1).append(NEWLINE)
+		.append("  ").append(USAGE_URL2).append(NEWLINE)
+		.toString();
 }
@@ -2,7 +2,6 @@ package org.opensha2.programs;
 
 import static java.lang.Runtime.getRuntime;
 import static java.nio.file.StandardOpenOption.APPEND;
-import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.opensha2.util.TextUtils.NEWLINE;
 import static org.opensha2.util.TextUtils.format;
 
@@ -13,18 +12,27 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
 import org.opensha2.calc.CalcConfig;
+import org.opensha2.calc.CalcConfig.OutputData;
 import org.opensha2.calc.Calcs;
 import org.opensha2.calc.HazardResult;
+import org.opensha2.calc.PreparedCalc;
 import org.opensha2.calc.Results;
 import org.opensha2.calc.Site;
+import org.opensha2.calc.SiteShard;
 import org.opensha2.eq.model.HazardModel;
+import org.opensha2.geo.Location;
 import org.opensha2.gmm.Imt;
 import org.opensha2.util.Logging;
 
@@ -32,6 +40,11 @@ import com.google.common.base.Optional;
 import com.google.common.base.StandardSystemProperty;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
 
 /**
  * Entry point for computing a hazard curve at a {@link Site} from a
@@ -46,6 +59,10 @@ public class HazardCurve {
 
 	private static final int FLUSH_LIMIT = 2;
 
+	/* Site locations per tiling batch and tile width (in decimal degrees). */
+	private static final int TILE_BATCH = 512;
+	private static final double TILE_WIDTH = 1.0;
+
 	/**
 	 * Entry point for a hazard curve calculation.
 	 * 
@@ -69,6 +86,35 @@ public class HazardCurve {
 	 * comprehensive descriptions of source models, configuration files, and
 	 * hazard calculations.</p>
 	 * 
+	 * <p>Consecutive sites that share a location but differ in site properties
+	 * (e.g. vs30) are computed together, reusing rupture geometry and
+	 * distances for each variant.</p>
+	 * 
+	 * <p>Unless ground motions are retained for deaggregation, sites are
+	 * processed in batches that are partitioned into spatial tiles. The
+	 * sources within range of any site in a tile are identified once per tile,
+	 * and only those candidates are filtered for each site in the tile.
+	 * Results are written in the order sites are supplied.</p>
+	 * 
+	 * <p>If the configuration specifies output return periods, ground motions
+	 * at those return periods are written by {@code Imt} and as uniform
+	 * hazard spectra, optionally in place of full curves.</p>
+	 * 
+	 * <p>To distribute a large calculation across processes or machines, a
+	 * shard argument of the form {@code --shard=index/count[:strided]} may be
+	 * supplied in addition to the arguments above. Only the sites of the
+	 * specified {@link SiteShard} are then computed, and results are written to
+	 * a {@code shard-<index>} subdirectory of the results directory along with
+	 * a manifest that marks the shard complete. Use {@link ShardMerge} to
+	 * combine the results of all shards.</p>
+	 * 
+	 * <p>Progress is periodically checkpointed to a file in the results
+	 * directory that records the number of sites whose results have been
+	 * written and the length of each result file. If a calculation is
+	 * interrupted, it may be resumed by rerunning it with the same arguments
+	 * and an additional {@code --resume} argument; completed sites are skipped
+	 * and any partially written results are discarded.</p>
+	 * 
 	 * @param args
 	 * @see <a href="https://github.com/usgs/nshmp-haz/wiki/Building-&-Running">
 	 *      nshmp-haz wiki</a>
@@ -87,7 +133,24 @@ public class HazardCurve {
 	}
 
 	static String run(String[] args) {
-		int argCount = args.length;
+		List<String> argList = new ArrayList<>();
+		Optional<SiteShard> shard = Optional.absent();
+		boolean resume = false;
+		for (String arg : args) {
+			if (arg.equals(RESUME_ARG)) {
+				resume = true;
+			} else if (arg.startsWith(SHARD_ARG)) {
+				if (shard.isPresent()) return USAGE;
+				try {
+					shard = Optional.of(SiteShard.fromString(arg.substring(SHARD_ARG.length())));
+				} catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+					return USAGE;
+				}
+			} else {
+				argList.add(arg);
+			}
+		}
+		int argCount = argList.size();
 
 		if (argCount < 1 || argCount > 3) {
 			return USAGE;
@@ -99,21 +162,21 @@ public class HazardCurve {
 		try {
 
 			log.info("Hazard curve: init...");
-			Path modelPath = Paths.get(args[0]);
+			Path modelPath = Paths.get(argList.get(0));
 			HazardModel model = HazardModel.load(modelPath);
 
 			CalcConfig config = model.config();
 			if (argCount > 1) {
 				config = CalcConfig.builder()
 					.copy(model.config())
-					.extend(CalcConfig.builder(Paths.get(args[1])))
+					.extend(CalcConfig.builder(Paths.get(argList.get(1))))
 					.build();
 			}
 			log.info(config.toString());
 
 			Iterable<Site> sites = config.sites();
 			if (argCount > 2) {
-				Path sitePath = Paths.get(args[2]);
+				Path sitePath = Paths.get(argList.get(2));
 				sites = Site.fromCsv(sitePath);
 				log.info("");
 				StringBuilder sb = new StringBuilder()
@@ -124,7 +187,7 @@ public class HazardCurve {
 				log.info(sb.toString());
 			}
 
-			calc(model, config, sites, log);
+			calc(model, config, sites, shard, resume, log);
 			return null;
 
 		} catch (Exception e) {
@@ -144,16 +207,21 @@ public class HazardCurve {
 	private static final OpenOption[] APPEND_OPTIONS = new OpenOption[] { APPEND };
 
 	/*
-	 * Compute hazard curves using the supplied model, config, and site files.
+	 * Compute hazard curves using the supplied model, config, and site files,
+	 * optionally for a single shard of the sites, and optionally resuming from
+	 * a checkpoint.
 	 */
 	private static void calc(
 			HazardModel model,
 			CalcConfig config,
 			Iterable<Site> sites,
+			Optional<SiteShard> shard,
+			boolean resume,
 			Logger log) throws IOException {
 
 		ExecutorService execSvc = createExecutor();
 		Optional<Executor> executor = Optional.<Executor> of(execSvc);
+		PreparedCalc prepared = PreparedCalc.create(model, config);
 
 		log.info("Hazard Curve: calculating ...");
 		Stopwatch batchWatch = Stopwatch.createStarted();
@@ -163,34 +231,79 @@ public class HazardCurve {
 		List<HazardResult> results = new ArrayList<>();
 		boolean firstBatch = true;
 		Path dir = Paths.get(StandardSystemProperty.USER_DIR.value(), "results");
+		int size = SiteShard.size(sites);
+		int calcSize = size;
+		if (shard.isPresent()) {
+			sites = shard.get().sites(sites, size);
+			calcSize = shard.get().size(size);
+			dir = dir.resolve(ShardMerge.SHARD_DIR_PREFIX + shard.get().index());
+			log.info("Hazard Curve: shard " + shard.get() + ", " + calcSize + " of " + size +
+				" sites");
+		}
 		Files.createDirectories(dir);
-		
-		for (Site site : sites) {
-			HazardResult result = calc(model, config, site, executor);
-			results.add(result);
-
-			if (results.size() == FLUSH_LIMIT) {
-				OpenOption[] opts = firstBatch ? WRITE_OPTIONS : APPEND_OPTIONS;
-				firstBatch = false;
-				Results.writeResults(dir, results, opts);
-				log.info("       batch: " + (count + 1) + "  " + batchWatch + "  total: " +
-					totalWatch);
-				results.clear();
-				batchWatch.reset();
-			}
+		Files.deleteIfExists(dir.resolve(ShardMerge.MANIFEST_FILE));
+
+		String shardId = shard.isPresent() ? shard.get().toString() : null;
+		Checkpoint checkpoint = resume ?
+			Checkpoint.resume(dir, shardId, calcSize) :
+			Checkpoint.create(dir, shardId, calcSize);
+		if (checkpoint.completed() > 0) {
+			count = checkpoint.completed();
+			sites = Iterables.skip(sites, count);
+			firstBatch = false;
+			log.info("Hazard Curve: resuming after " + count + " of " + calcSize + " sites");
+		}
 
-			count++;
+		// results with ground motions are too large to hold a batch in memory
+		int batchSize = config.retainGroundMotions() ? 1 : TILE_BATCH;
+		for (List<List<Site>> batch : Iterables.partition(groupByLocation(sites), batchSize)) {
+			for (HazardResult result : calcTiles(prepared, batch, executor)) {
+				results.add(result);
+				count++;
+
+				if (results.size() == FLUSH_LIMIT) {
+					OpenOption[] opts = firstBatch ? WRITE_OPTIONS : APPEND_OPTIONS;
+					firstBatch = false;
+					write(dir, results, config, opts);
+					checkpoint.update(count, false);
+					log.info("       batch: " + count + "  " + batchWatch + "  total: " +
+						totalWatch);
+					results.clear();
+					batchWatch.reset();
+				}
+			}
 		}
 		// write final batch
 		if (!results.isEmpty()) {
 			OpenOption[] opts = firstBatch ? WRITE_OPTIONS : APPEND_OPTIONS;
-			Results.writeResults(dir, results, opts);
+			write(dir, results, config, opts);
 		}
+		checkpoint.update(count, true);
+		if (shard.isPresent()) ShardMerge.writeManifest(dir, shard.get(), size);
 		log.info("Hazard Curve: " + count + " complete " + totalWatch);
+		if (config.gmmCache().isPresent()) log.info(config.gmmCache().get().toString());
+		if (config.sourcePruner().isPresent()) log.info(config.sourcePruner().get().toString());
 
 		execSvc.shutdown();
 	}
 
+	/*
+	 * Write curves and/or return period ground motions, as configured.
+	 */
+	private static void write(
+			Path dir,
+			List<HazardResult> results,
+			CalcConfig config,
+			OpenOption[] opts) throws IOException {
+
+		OutputData output = config.outputData();
+		if (output.curves) Results.writeResults(dir, results, opts);
+		double[] returnPeriods = output.returnPeriods();
+		if (returnPeriods.length > 0) {
+			Results.writeReturnPeriodResults(dir, results, returnPeriods, opts);
+		}
+	}
+
 	/**
 	 * Compute hazard curves at a {@code site} for a {@code model} and
 	 * {@code config}. If an {@code executor} is supplied, it will be used to
@@ -211,10 +324,28 @@ public class HazardCurve {
 			Site site,
 			Optional<Executor> executor) {
 
+		return calc(PreparedCalc.create(model, config), site, executor);
+	}
+
+	/**
+	 * Compute hazard curves at a {@code site} for a prepared calculation. If an
+	 * {@code executor} is supplied, it will be used to distribute tasks;
+	 * otherwise, one will be created.
+	 * 
+	 * @param calc prepared model and configuration
+	 * @param site of interest
+	 * @param executor to use ({@link Optional})
+	 * @return a HazardResult
+	 */
+	public static HazardResult calc(
+			PreparedCalc calc,
+			Site site,
+			Optional<Executor> executor) {
+
 		Executor ex = executor.or(createExecutor());
 
 		try {
-			HazardResult result = Calcs.hazardCurve(model, config, site, ex);
+			HazardResult result = Calcs.hazardCurve(calc, site, ex);
 			if (!executor.isPresent()) ((ExecutorService) ex).shutdown();
 			return result;
 		} catch (ExecutionException | InterruptedException e) {
@@ -223,11 +354,119 @@ public class HazardCurve {
 		}
 	}
 
+	/**
+	 * Compute hazard curves for multiple variants of a site that share a
+	 * location but differ in site properties (e.g. vs30). Rupture geometry and
+	 * distances are computed once and reused for each variant. If an
+	 * {@code executor} is supplied, it will be used to distribute tasks;
+	 * otherwise, one will be created.
+	 * 
+	 * @param calc prepared model and configuration
+	 * @param sites variants of a site at a single location
+	 * @param executor to use ({@link Optional})
+	 * @return a HazardResult for each site
+	 */
+	public static List<HazardResult> calc(
+			PreparedCalc calc,
+			List<Site> sites,
+			Optional<Executor> executor) {
+
+		Executor ex = executor.or(createExecutor());
+
+		try {
+			List<HazardResult> results = Calcs.hazardCurves(calc, sites, ex);
+			if (!executor.isPresent()) ((ExecutorService) ex).shutdown();
+			return results;
+		} catch (ExecutionException | InterruptedException e) {
+			Throwables.propagate(e);
+			return null;
+		}
+	}
+
+	/*
+	 * Compute hazard curves for a batch of site variant groups, tile by tile.
+	 * Groups are assigned to tiles of TILE_WIDTH degrees by location, and each
+	 * tile with more than one location shares a set of candidate sources.
+	 * Results are returned in batch order.
+	 */
+	static List<HazardResult> calcTiles(
+			PreparedCalc calc,
+			List<List<Site>> batch,
+			Optional<Executor> executor) {
+
+		Map<Long, List<Integer>> tiles = new LinkedHashMap<>();
+		for (int i = 0; i < batch.size(); i++) {
+			Long key = tileKey(batch.get(i).get(0).location);
+			List<Integer> tile = tiles.get(key);
+			if (tile == null) {
+				tile = new ArrayList<>();
+				tiles.put(key, tile);
+			}
+			tile.add(i);
+		}
+
+		List<List<HazardResult>> results = new ArrayList<>(
+			Collections.<List<HazardResult>> nCopies(batch.size(), null));
+		for (List<Integer> tile : tiles.values()) {
+			PreparedCalc tileCalc = calc;
+			if (tile.size() > 1) {
+				List<Location> locations = new ArrayList<>();
+				for (int index : tile) {
+					locations.add(batch.get(index).get(0).location);
+				}
+				tileCalc = calc.forTile(locations);
+			}
+			for (int index : tile) {
+				List<Site> variants = batch.get(index);
+				results.set(index, (variants.size() == 1) ?
+					Collections.singletonList(calc(tileCalc, variants.get(0), executor)) :
+					calc(tileCalc, variants, executor));
+			}
+		}
+		return Lists.newArrayList(Iterables.concat(results));
+	}
+
+	private static Long tileKey(Location loc) {
+		long row = (long) Math.floor(loc.lat() / TILE_WIDTH);
+		long col = (long) Math.floor(loc.lon() / TILE_WIDTH);
+		return (row << 32) | (col & 0xffffffffL);
+	}
+
+	/*
+	 * Group consecutive sites that share a location so that site property
+	 * variants (e.g. multiple vs30 values) may be computed together. Groups are
+	 * created lazily so that streamed sites are not all held in memory.
+	 */
+	private static Iterable<List<Site>> groupByLocation(final Iterable<Site> sites) {
+		return new Iterable<List<Site>>() {
+			@Override public Iterator<List<Site>> iterator() {
+				final PeekingIterator<Site> siteIterator = Iterators.peekingIterator(sites.iterator());
+				return new AbstractIterator<List<Site>>() {
+					@Override protected List<Site> computeNext() {
+						if (!siteIterator.hasNext()) return endOfData();
+						List<Site> group = new ArrayList<>();
+						group.add(siteIterator.next());
+						while (siteIterator.hasNext() &&
+							siteIterator.peek().location.equals(group.get(0).location)) {
+							group.add(siteIterator.next());
+						}
+						return group;
+					}
+				};
+			}
+		};
+	}
+
 	private static ExecutorService createExecutor() {
-		return newFixedThreadPool(getRuntime().availableProcessors());
+		return new ForkJoinPool(getRuntime().availableProcessors());
 	}
 
-	private static final String USAGE_COMMAND = "java -cp nshmp-haz.jar org.opensha.programs.HazardCurve model [config [sites]]";
+	private static final String SHARD_ARG = "--shard=";
+	private static final String RESUME_ARG = "--resume";
+
+	private static final String USAGE_COMMAND =
+		"java -cp nshmp-haz.jar org.opensha2.programs.HazardCurve model [config [sites]]" +
+			" [--shard=index/count[:strided]] [--resume]";
 	private static final String USAGE_URL1 = "https://github.com/usgs/nshmp-haz/wiki/Earthquake-Source-Models";
 	private static final String USAGE_URL2 = "https://github.com/usgs/nshmp-haz/wiki/Hazard-Calculations";
 
@@ -239,6 +478,11 @@ public class HazardCurve {
 		.append("  'model' is a model zip file or directory").append(NEWLINE)
 		.append("  'config' supplies a calculation configuration").append(NEWLINE)
 		.append("  'sites' is a comma-delimited site data file").append(NEWLINE)
+		.append("  'index/count' computes only one of 'count' shards of the sites;").append(NEWLINE)
+		.append("     shards are contiguous runs of sites unless ':strided' is specified")
+		.append(NEWLINE)
+		.append("  '--resume' continues an interrupted calculation from its checkpoint")
+		.append(NEWLINE)
 		.append(NEWLINE)
 		.append("For more information, see:").append(NEWLINE)
 		.append("  ").append(USAGE_URL1).append(NEWLINE)
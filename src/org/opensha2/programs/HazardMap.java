@@ -1,204 +1,637 @@
 package org.opensha2.programs;
 
-import static com.google.common.base.StandardSystemProperty.*;
 import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Runtime.getRuntime;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.opensha2.util.TextUtils.NEWLINE;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
 
+import org.opensha2.calc.CalcConfig;
+import org.opensha2.calc.CalcConfig.MapData;
+import org.opensha2.calc.CalcConfig.OutputData;
 import org.opensha2.calc.HazardResult;
+import org.opensha2.calc.PreparedCalc;
+import org.opensha2.calc.ResultMatrix;
+import org.opensha2.calc.Results;
 import org.opensha2.calc.Site;
 import org.opensha2.data.ArrayXY_Sequence;
 import org.opensha2.eq.model.HazardModel;
-import org.opensha2.geo.GriddedRegion;
+import org.opensha2.eq.model.SourceType;
 import org.opensha2.geo.Location;
-import org.opensha2.geo.Regions;
 import org.opensha2.gmm.Imt;
-import org.opensha2.util.Parsing;
-import org.opensha2.util.Parsing.Delimiter;
+import org.opensha2.mfd.Mfds;
+import org.opensha2.util.Logging;
 
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
 import com.google.common.base.StandardSystemProperty;
-import com.google.common.collect.FluentIterable;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
-import com.google.common.collect.Iterables;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Doubles;
 
 /**
- * Entry point for computing a hazard map at a {@link Site} from a
- * {@link HazardModel}.
- * 
+ * Entry point for computing a hazard map over a rectangular region from a
+ * {@link HazardModel}. The {@code main()} method of this class writes mean
+ * hazard curves at every node of the map for each {@link Imt} specified by a
+ * calculation configuration.
+ *
+ * <p>By default, curves are computed at every node. If the configuration
+ * specifies {@link MapData#refinementLevels refinementLevels} greater than
+ * zero, maps are refined adaptively: curves are first computed on a coarse
+ * grid, and each coarse cell is then tested by computing curves at its center
+ * and edge midpoints and comparing the ground motions at the configured
+ * return periods with those derived from curves interpolated from the cell
+ * corners. Cells that fail the test are subdivided and tested again; the
+ * remaining nodes of cells that pass are interpolated. Map output identifies
+ * which nodes were computed and which were interpolated.</p>
+ *
  * @author Peter Powers
  */
 public class HazardMap {
 
-	// TODO expose
-	private static final double SPACING = 0.1;
+	/**
+	 * Entry point for a hazard map calculation.
+	 *
+	 * <p>Computing a hazard map requires at least 7, and at most 8, arguments:
+	 * the path to a model zip file or directory, the longitude and latitude of
+	 * two opposite corners of the map, the node spacing (in decimal degrees),
+	 * and the vs30 to use at every node. An optional calculation configuration
+	 * file may also be supplied; it is handled in the same manner as
+	 * {@link HazardCurve#main(String[])}, although any sites it specifies are
+	 * ignored and ground motions are never retained. Results are written to a
+	 * 'map' directory in the current working directory.</p>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		String status = run(args);
+		if (status != null) System.err.print(status);
+	}
 
-	// delegate to HazardCurve with list of locations and vs30
+	static String run(String[] args) {
+		int argCount = args.length;
 
-	// take list of locations to make griddedRegion
+		if (argCount < 7 || argCount > 8) {
+			return USAGE;
+		}
 
-	// also note in docs that mean curve for model is being returned
+		Logging.init();
+		Logger log = Logger.getLogger(HazardMap.class.getName());
 
-	public static Result create(HazardModel model, Imt imt, Path locPath) {
+		try {
 
-		return null;
-	}
+			log.info("Hazard map: init...");
+			Path modelPath = Paths.get(args[0]);
+			HazardModel model = HazardModel.load(modelPath);
 
-	public static Result create(HazardModel model, Imt imt, Location p1, Location p2) {
-		GriddedRegion mapRegion = Regions.createRectangularGridded(model.name() + " Map", p1,
-			p2, SPACING, SPACING, GriddedRegion.ANCHOR_0_0);
+			CalcConfig.Builder configBuilder = CalcConfig.builder().copy(model.config());
+			if (argCount > 7) configBuilder.extend(CalcConfig.builder(Paths.get(args[7])));
+			CalcConfig config = configBuilder.retainGroundMotions(false).build();
+			log.info(config.toString());
 
-		return null;
-	}
+			Location loc1 = Location.create(Double.valueOf(args[2]), Double.valueOf(args[1]));
+			Location loc2 = Location.create(Double.valueOf(args[4]), Double.valueOf(args[3]));
+			double spacing = Double.valueOf(args[5]);
+			Site template = Site.builder().vs30(Double.valueOf(args[6])).build();
+
+			ExecutorService execSvc = createExecutor();
+			Stopwatch watch = Stopwatch.createStarted();
+			log.info("Hazard map: calculating ...");
+			Result map = calc(PreparedCalc.create(model, config), loc1, loc2, spacing, template,
+				Optional.<Executor> of(execSvc));
+			execSvc.shutdown();
+			log.info("Hazard map: " + map + " " + watch);
 
-	static Result create(HazardModel model, Imt imt, Iterable<Site> sites) {
-		Builder<Site> siteBuilder = ImmutableList.builder();
-		Builder<ArrayXY_Sequence> curveBuilder = ImmutableList.builder();
-		for (Site site : sites) {
-			siteBuilder.add(site);
-//			curveBuilder.add(HazardCurve.calc(model, imt, site).curve());
+			Path dir = Paths.get(StandardSystemProperty.USER_DIR.value(), "map");
+			Files.createDirectories(dir);
+			map.export(dir);
+			return null;
+
+		} catch (Exception e) {
+			return new StringBuilder()
+				.append(NEWLINE)
+				.append("Hazard map: error").append(NEWLINE)
+				.append("   Arguments: ").append(Arrays.toString(args)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(Throwables.getStackTraceAsString(e)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(USAGE)
+				.toString();
 		}
-		return new Result(siteBuilder.build(), curveBuilder.build());
 	}
 
 	/**
-	 * The result of a HazardMap calculation.
+	 * Compute a hazard map over the rectangle spanned by two locations. The
+	 * map grid is anchored at the minimum latitude and longitude of the
+	 * rectangle and, if adaptive refinement is enabled, is extended north and
+	 * east as necessary to be spanned by whole coarse cells. The supplied
+	 * calculation must not retain ground motions. If an
+	 * {@code executor} is supplied, it will be used to distribute tasks;
+	 * otherwise, one will be created.
+	 *
+	 * @param calc prepared model and configuration
+	 * @param loc1 a corner of the map
+	 * @param loc2 the opposite corner of the map
+	 * @param spacing of map nodes (in decimal degrees)
+	 * @param template site supplying the site properties used at every node
+	 * @param executor to use ({@link Optional})
+	 * @return the map Result
+	 */
+	public static Result calc(
+			PreparedCalc calc,
+			Location loc1,
+			Location loc2,
+			double spacing,
+			Site template,
+			Optional<Executor> executor) {
+
+		checkArgument(spacing > 0.0, "Spacing [%s] must be positive", spacing);
+		checkArgument(!calc.config().retainGroundMotions(),
+			"Hazard maps require a configuration with retainGroundMotions = false");
+		MapData mapData = calc.config().mapData();
+		checkArgument(mapData.refinementLevels >= 0 && mapData.refinementLevels < 16,
+			"Refinement levels [%s] must be in the range [0, 15]", mapData.refinementLevels);
+
+		int step = 1 << mapData.refinementLevels;
+		double latMin = Math.min(loc1.lat(), loc2.lat());
+		double lonMin = Math.min(loc1.lon(), loc2.lon());
+		int rows = cellMultiple(Math.abs(loc1.lat() - loc2.lat()) / spacing, step) + 1;
+		int cols = cellMultiple(Math.abs(loc1.lon() - loc2.lon()) / spacing, step) + 1;
+
+		ExecutorService ownExecutor = executor.isPresent() ? null : createExecutor();
+		Optional<Executor> ex = executor.isPresent() ? executor :
+			Optional.<Executor> of(ownExecutor);
+
+		Result map = new Result(calc.model(), calc.config(), template, latMin, lonMin, spacing,
+			rows, cols);
+		Refinement refinement = new Refinement(calc, map, mapData, ex);
+		refinement.run(step);
+
+		if (ownExecutor != null) ownExecutor.shutdown();
+		return map;
+	}
+
+	/* The smallest multiple of step that is not less than span. */
+	private static int cellMultiple(double span, int step) {
+		int nodes = (int) Math.ceil(span - 1e-6);
+		return ((nodes + step - 1) / step) * step;
+	}
+
+	/*
+	 * Adaptive refinement of a map. Cells are identified by the row and
+	 * column of their southwest node and their size, in nodes.
 	 */
-	public static class Result {
-
-		/** The {@code List} of {@code Location}s */
-		public final List<Site> sites;
-
-		/** A {@code List} of {@code Location}s */
-		public final List<ArrayXY_Sequence> curves;
-
-		Result(List<Site> sites, List<ArrayXY_Sequence> curves) {
-			this.sites = sites;
-			this.curves = curves;
-		}
-
-		void export(Path path) throws IOException {
-			Joiner joiner = Joiner.on(',');
-			List<String> lines = new ArrayList<>();
-			List<Object> header = Lists.newArrayList();
-			header.add("lon");
-			header.add("lat");
-			header.addAll(curves.get(0).xValues());
-			lines.add(joiner.join(header));
-			for (int i = 0; i < sites.size(); i++) {
-				Site s = sites.get(i);
-				List<Double> line = Lists.newArrayList(s.location.lon(), s.location.lat());
-				line.addAll(curves.get(i).yValues());
+	private static final class Refinement {
+
+		private final PreparedCalc calc;
+		private final Result map;
+		private final double tolerance;
+		private final double[] rates;
+		private final Optional<Executor> executor;
+
+		Refinement(PreparedCalc calc, Result map, MapData mapData, Optional<Executor> executor) {
+			this.calc = calc;
+			this.map = map;
+			this.tolerance = mapData.tolerance;
+			double[] returnPeriods = mapData.returnPeriods();
+			rates = new double[returnPeriods.length];
+			for (int i = 0; i < rates.length; i++) {
+				rates[i] = 1.0 / returnPeriods[i];
 			}
-			Files.write(path, lines, Charset.forName("UTF-8"));
+			this.executor = executor;
 		}
 
-	}
+		void run(int step) {
+			Set<Integer> pending = new TreeSet<>();
+			List<int[]> cells = new ArrayList<>();
+			for (int row = 0; row < map.rows; row += step) {
+				for (int col = 0; col < map.cols; col += step) {
+					pending.add(map.index(row, col));
+					if (row < map.rows - 1 && col < map.cols - 1) {
+						cells.add(new int[] { row, col });
+					}
+				}
+			}
+			compute(pending);
 
-	// file of coords [vs30]
-	// 2 Locations ofr rect region
+			List<int[]> accepted = new ArrayList<>();
+			List<Integer> acceptedSizes = new ArrayList<>();
+			for (int size = step; size > 1; size /= 2) {
+				int half = size / 2;
+				for (int[] cell : cells) {
+					for (int[] node : testNodes(cell, half)) {
+						pending.add(map.index(node[0], node[1]));
+					}
+				}
+				compute(pending);
 
-	// output dir
+				List<int[]> refined = new ArrayList<>();
+				for (int[] cell : cells) {
+					if (error(cell, size) > tolerance) {
+						refined.add(new int[] { cell[0], cell[1] });
+						refined.add(new int[] { cell[0] + half, cell[1] });
+						refined.add(new int[] { cell[0], cell[1] + half });
+						refined.add(new int[] { cell[0] + half, cell[1] + half });
+					} else {
+						accepted.add(cell);
+						acceptedSizes.add(size);
+					}
+				}
+				cells = refined;
+			}
 
-	// java -cp nshmp-haz.jar HazardMap /path/to/HazardModel.zip/or/directory PGA
-	// -120.0 33.0 -115.0 36.0
-	// java -cp nshmp-haz.jar HazardMap /path/to/HazardModel.zip/or/directory PGA
-	// /path/to/loc.dat
+			// fill from smallest cells first so finer interpolation prevails
+			for (int i = accepted.size() - 1; i >= 0; i--) {
+				fill(accepted.get(i), acceptedSizes.get(i));
+			}
+		}
 
-	// all supported Imts
-	// java -cp nshmp-haz.jar HazardSpectra /path/to/HazardModel.zip/or/directory
-	// -117.5 34.5
+		/* Center and edge midpoints of a cell. */
+		private static int[][] testNodes(int[] cell, int half) {
+			int r = cell[0];
+			int c = cell[1];
+			return new int[][] {
+				{ r + half, c + half },
+				{ r, c + half },
+				{ r + 2 * half, c + half },
+				{ r + half, c },
+				{ r + half, c + 2 * half } };
+		}
 
-	// other
-	// java -cp nshmp-haz.jar DeterministicSpectra args[] :: ASK_14,CB_14
+		/* Compute and store curves at pending nodes, in index order. */
+		private void compute(Set<Integer> pending) {
+			List<Integer> indices = new ArrayList<>(pending);
+			pending.clear();
+			for (List<Integer> batch : Lists.partition(indices, BATCH_SIZE)) {
+				List<List<Site>> sites = new ArrayList<>();
+				for (int index : batch) {
+					sites.add(Collections.singletonList(map.site(index)));
+				}
+				List<HazardResult> results = HazardCurve.calcTiles(calc, sites, executor);
+				for (int i = 0; i < batch.size(); i++) {
+					map.set(batch.get(i), results.get(i));
+				}
+			}
+		}
 
-	// loc.dat
-	// #
-	// lon,lat[,vs30]
+		/*
+		 * The maximum absolute difference between the log ground motions at
+		 * target rates derived from computed and interpolated curves at the
+		 * test nodes of a cell.
+		 */
+		private double error(int[] cell, int size) {
+			double error = 0.0;
+			for (int[] node : testNodes(cell, size / 2)) {
+				double fr = (node[0] - cell[0]) / (double) size;
+				double fc = (node[1] - cell[1]) / (double) size;
+				int index = map.index(node[0], node[1]);
+				for (Imt imt : map.matrix.imts()) {
+					double[] imls = map.imls.get(imt);
+					double[] computed = map.matrix.totalCurve(index, imt);
+					double[] interpolated = map.interpolateTotal(imt, cell, size, fr, fc);
+					for (double rate : rates) {
+						double diff = logImlAtRate(imls, computed, rate) -
+							logImlAtRate(imls, interpolated, rate);
+						error = Math.max(error, Math.abs(diff));
+					}
+				}
+			}
+			return error;
+		}
 
-	/**
-	 * @param args
+		/* Interpolate curves at all unset nodes of a cell. */
+		private void fill(int[] cell, int size) {
+			for (int r = 0; r <= size; r++) {
+				for (int c = 0; c <= size; c++) {
+					int index = map.index(cell[0] + r, cell[1] + c);
+					if (map.filled.get(index)) continue;
+					for (Imt imt : map.matrix.imts()) {
+						for (SourceType type : map.matrix.types()) {
+							map.matrix.put(index, imt, type, map.interpolate(imt, type, cell,
+								size, r / (double) size, c / (double) size));
+						}
+					}
+					map.filled.set(index);
+				}
+			}
+		}
+	}
+
+	/*
+	 * The natural log of the intensity measure level at which a curve reaches
+	 * a rate. Levels below the lowest level of the curve, including the 0
+	 * returned when the curve does not reach the rate, are raised to the
+	 * lowest level so that errors are finite.
 	 */
-	public static void main(String[] args) {
-		System.out.println(USAGE);
-		// checkArgument(args.length == 7 || args.length == 4, USAGE);
-		// try {
-		// HazardModel model = HazardModel.load(args[0], args[0]);
-		// Imt imt = Imt.parseImt(args[1]);
-		// Path locsPath = null;
-		// Location loc1 = null;
-		// Location loc2 = null;
-		// Path outPath = null;
-		// Result map = null;
-		// if (args.length == 3) {
-		// locsPath = Paths.get(args[2]);
-		// outPath = Paths.get(args[3]);
-		// map = create(model, imt, locsPath);
-		// } else {
-		// loc1 = Location.create(Double.valueOf(args[3]),
-		// Double.valueOf(args[2]));
-		// loc2 = Location.create(Double.valueOf(args[5]),
-		// Double.valueOf(args[4]));
-		// outPath = Paths.get(args[6]);
-		// map = create(model, imt, loc1, loc2);
-		// }
-		// map.export(outPath);
-		// return;
-		// } catch (Exception e) {
-		// e.printStackTrace();
-		// }
+	private static double logImlAtRate(double[] imls, double[] rates, double rate) {
+		return Math.log(Math.max(Results.imlAtRate(imls, rates, rate), imls[0]));
 	}
 
-	private static final String USAGE = "HazardMap usage:" +
-		LINE_SEPARATOR.value() +
-		LINE_SEPARATOR.value() +
-		"command: java -cp nshmp-haz.jar org.opensha.programs.HazardMap model.file Imt lon1 lat1 lon2 lat2 spacing vs30 out.file" +
-		LINE_SEPARATOR.value() +
-		"example: java -cp nshmp-haz.jar org.opensha.programs.HazardMap path/to/model.zip PGA -120.0 33.0 -115.0 36.0 0.1 760.0 path/to/results" +
-		LINE_SEPARATOR.value() +
-		"  - or -" +
-		LINE_SEPARATOR.value() +
-		"command: java -cp nshmp-haz.jar org.opensha.programs.HazardMap model.file Imt border.file spacing vs30 out.file" +
-		LINE_SEPARATOR.value() +
-		"example: java -cp nshmp-haz.jar org.opensha.programs.HazardMap path/to/model.zip PGA path/to/border.csv path/to/results" +
-		LINE_SEPARATOR.value() +
-		LINE_SEPARATOR.value() +
-		"  - model.file is the path to a model zip file or directory." +
-		LINE_SEPARATOR.value() +
-		"  - border.file is a file containing comma-delimited [lon,lat] pairs, one per line, defining a map region." +
-		LINE_SEPARATOR.value() +
-		"  - To vary vs30 by location, use org.opensha.programs.HazardCurve." +
-		LINE_SEPARATOR.value() +
-		"  - For more details, see: http://usgs.github.io/nshmp-haz/docs/org/opensha2/programs/HazardMap.html";
-	
-	static class LocationToSite implements Function<Location, Site> {
-		@Override public Site apply(Location loc) {
-			return Site.builder().location(loc).build();
+	private static final int BATCH_SIZE = 512;
+
+	/**
+	 * The result of a hazard map calculation: a mean hazard curve for each
+	 * {@code Imt} and {@code SourceType} at every node of a regularly spaced
+	 * grid, and whether each node was computed or interpolated. Curves are
+	 * held in a {@link ResultMatrix} outside the Java heap.
+	 */
+	public static final class Result {
+
+		private final Site template;
+		private final OutputData output;
+		private final double latMin;
+		private final double lonMin;
+		private final double spacing;
+		private final int rows;
+		private final int cols;
+
+		private final Map<Imt, double[]> imls;
+		private final ResultMatrix matrix;
+		private final BitSet computed;
+		private final BitSet filled;
+
+		private Result(
+				HazardModel model,
+				CalcConfig config,
+				Site template,
+				double latMin,
+				double lonMin,
+				double spacing,
+				int rows,
+				int cols) {
+
+			this.template = template;
+			this.output = config.outputData();
+			this.latMin = latMin;
+			this.lonMin = lonMin;
+			this.spacing = spacing;
+			this.rows = rows;
+			this.cols = cols;
+			imls = new EnumMap<>(Imt.class);
+			for (Imt imt : config.imts()) {
+				imls.put(imt, Doubles.toArray(config.modelCurve(imt).xValues()));
+			}
+			matrix = ResultMatrix.create(model, config, rows * cols);
+			for (int index = 0; index < rows * cols; index++) {
+				matrix.location(index, location(index));
+			}
+			computed = new BitSet(rows * cols);
+			filled = new BitSet(rows * cols);
+		}
+
+		int index(int row, int col) {
+			return row * cols + col;
+		}
+
+		Location location(int index) {
+			return Location.create(latMin + (index / cols) * spacing,
+				lonMin + (index % cols) * spacing);
+		}
+
+		Site site(int index) {
+			Site.Builder builder = Site.builder()
+				.location(location(index))
+				.vs30(template.vs30)
+				.vsInferred(template.vsInferred);
+			if (!Double.isNaN(template.z1p0)) builder.z1p0(template.z1p0);
+			if (!Double.isNaN(template.z2p5)) builder.z2p5(template.z2p5);
+			return builder.build();
+		}
+
+		void set(int index, HazardResult result) {
+			matrix.add(index, result);
+			computed.set(index);
+			filled.set(index);
+		}
+
+		/*
+		 * Total of the curves of each SourceType interpolated within a cell.
+		 */
+		double[] interpolateTotal(Imt imt, int[] cell, int size, double fr, double fc) {
+			double[] total = new double[imls.get(imt).length];
+			for (SourceType type : matrix.types()) {
+				double[] curve = interpolate(imt, type, cell, size, fr, fc);
+				for (int i = 0; i < total.length; i++) {
+					total[i] += curve[i];
+				}
+			}
+			return total;
+		}
+
+		/*
+		 * Bilinear interpolation of a curve within a cell at fractional row and
+		 * column offsets. Rates are interpolated in log space unless any corner
+		 * rate is zero.
+		 */
+		double[] interpolate(Imt imt, SourceType type, int[] cell, int size, double fr,
+				double fc) {
+
+			double[] c00 = matrix.curve(index(cell[0], cell[1]), imt, type);
+			double[] c01 = matrix.curve(index(cell[0], cell[1] + size), imt, type);
+			double[] c10 = matrix.curve(index(cell[0] + size, cell[1]), imt, type);
+			double[] c11 = matrix.curve(index(cell[0] + size, cell[1] + size), imt, type);
+			double w00 = (1.0 - fr) * (1.0 - fc);
+			double w01 = (1.0 - fr) * fc;
+			double w10 = fr * (1.0 - fc);
+			double w11 = fr * fc;
+			double[] curve = new double[c00.length];
+			for (int i = 0; i < curve.length; i++) {
+				if (c00[i] > 0.0 && c01[i] > 0.0 && c10[i] > 0.0 && c11[i] > 0.0) {
+					curve[i] = Math.exp(w00 * Math.log(c00[i]) + w01 * Math.log(c01[i]) +
+						w10 * Math.log(c10[i]) + w11 * Math.log(c11[i]));
+				} else {
+					curve[i] = w00 * c00[i] + w01 * c01[i] + w10 * c10[i] + w11 * c11[i];
+				}
+			}
+			return curve;
+		}
+
+		/** The number of nodes in the map. */
+		public int size() {
+			return rows * cols;
+		}
+
+		/** The number of nodes at which curves were computed. */
+		public int computedCount() {
+			return computed.cardinality();
+		}
+
+		/**
+		 * The mean hazard curve (annual rates of exceedance) for an
+		 * {@code Imt} at a node.
+		 *
+		 * @param imt of interest
+		 * @param index of node, ordered by row, south to north, and then by
+		 *        column, west to east
+		 */
+		public ArrayXY_Sequence curve(Imt imt, int index) {
+			checkArgument(imls.containsKey(imt), "IMT [%s] not present in map", imt);
+			return ArrayXY_Sequence.create(imls.get(imt), matrix.totalCurve(index, imt));
+		}
+
+		/**
+		 * The matrix of curves of this map, including curves for each
+		 * {@code SourceType}. Node indices are the same as those of the map.
+		 */
+		public ResultMatrix matrix() {
+			return matrix;
+		}
+
+		/**
+		 * Whether the curves at a node were computed, {@code true}, or
+		 * interpolated, {@code false}.
+		 *
+		 * @param index of node
+		 */
+		public boolean isComputed(int index) {
+			return computed.get(index);
+		}
+
+		/**
+		 * Write this map to files in the specified directory, as specified by
+		 * the {@link OutputData output} settings of the calculation
+		 * configuration. Unless disabled, curves are written to one file for
+		 * each {@code Imt}; each line contains the longitude, latitude, a flag
+		 * indicating whether the curve at the node was computed (1) or
+		 * interpolated (0), and the Poisson probabilities of exceedance in one
+		 * year of the intensity measure levels listed in the header. If any
+		 * output return periods are specified, a grid of the ground motions at
+		 * each return period is also written for each {@code Imt}. If output
+		 * by {@code SourceType} is enabled, the same files are also written to
+		 * a subdirectory for each {@code SourceType}.
+		 *
+		 * @param dir to write to
+		 * @throws IOException if a problem is encountered
+		 * @see Results#imlAtRate(double[], double[], double)
+		 */
+		public void export(Path dir) throws IOException {
+			export(dir, null);
+			if (output.byType) {
+				for (SourceType type : matrix.types()) {
+					Path typeDir = dir.resolve(type.name());
+					Files.createDirectories(typeDir);
+					export(typeDir, type);
+				}
+			}
+		}
+
+		/* Write total curves if type is null. */
+		private void export(Path dir, SourceType type) throws IOException {
+			double[] returnPeriods = output.returnPeriods();
+			for (Imt imt : matrix.imts()) {
+				if (output.curves) {
+					List<String> header = new ArrayList<>();
+					for (double iml : imls.get(imt)) {
+						header.add(String.valueOf(iml));
+					}
+					export(dir.resolve(imt.name() + MAP_FILE_SUFFIX), imt, type, header, null);
+				}
+				if (returnPeriods.length > 0) {
+					List<String> header = new ArrayList<>();
+					for (double returnPeriod : returnPeriods) {
+						header.add(Results.RETURN_PERIOD_LABEL.apply(returnPeriod));
+					}
+					export(dir.resolve(imt.name() + RP_MAP_FILE_SUFFIX), imt, type, header,
+						returnPeriods);
+				}
+			}
+		}
+
+		/* Write curves, or ground motions if returnPeriods is not null. */
+		private void export(Path file, Imt imt, SourceType type, List<String> header,
+				double[] returnPeriods) throws IOException {
+
+			double[] imtImls = imls.get(imt);
+			try (BufferedWriter writer = Files.newBufferedWriter(file, US_ASCII)) {
+				writer.write("lon,lat,computed");
+				for (String value : header) {
+					writer.write(',');
+					writer.write(value);
+				}
+				writer.newLine();
+				for (int index = 0; index < matrix.size(); index++) {
+					Location loc = location(index);
+					double[] rates = (type == null) ? matrix.totalCurve(index, imt) :
+						matrix.curve(index, imt, type);
+					StringBuilder line = new StringBuilder()
+						.append(String.format(Location.FORMAT, loc.lon())).append(',')
+						.append(String.format(Location.FORMAT, loc.lat())).append(',')
+						.append(computed.get(index) ? 1 : 0);
+					if (returnPeriods == null) {
+						for (double rate : rates) {
+							line.append(',').append(
+								String.format(RATE_FMT, Mfds.rateToProb(rate, 1.0)));
+						}
+					} else {
+						for (double returnPeriod : returnPeriods) {
+							double iml = Results.imlAtRate(imtImls, rates, 1.0 / returnPeriod);
+							line.append(',').append(String.format(IML_FMT, iml));
+						}
+					}
+					writer.write(line.toString());
+					writer.newLine();
+				}
+			}
+		}
+
+		@Override public String toString() {
+			return new StringBuilder()
+				.append(rows).append(" x ").append(cols).append(" nodes, ")
+				.append(computedCount()).append(" computed, ")
+				.append(size() - computedCount()).append(" interpolated")
+				.toString();
 		}
 	}
 
-	static class StringToSite implements Function<String, Site> {
-		// @formatter:off
-		@Override public Site apply(String locDat) {
-			List<Double> parts =  FluentIterable
-					.from(Parsing.split(locDat, Delimiter.COMMA))
-					.transform(Doubles.stringConverter())
-					.toList();
-			Location loc = Location.create(parts.get(1), parts.get(0));
-			double vs30 = (parts.size() > 2) ? parts.get(2) : 760.0;
-			return Site.builder().location(loc).vs30(vs30).build();
-		}
-		// @formatter:on
+	private static final String MAP_FILE_SUFFIX = "-map.csv";
+	private static final String RP_MAP_FILE_SUFFIX = "-rp-map.csv";
+	private static final String RATE_FMT = "%.8e";
+	private static final String IML_FMT = "%.6g";
+
+	private static ExecutorService createExecutor() {
+		return new ForkJoinPool(getRuntime().availableProcessors());
 	}
 
+	private static final String USAGE_COMMAND =
+		"java -cp nshmp-haz.jar org.opensha2.programs.HazardMap" +
+			" model lon1 lat1 lon2 lat2 spacing vs30 [config]";
+	private static final String USAGE_URL1 =
+		"https://github.com/usgs/nshmp-haz/wiki/Earthquake-Source-Models";
+	private static final String USAGE_URL2 =
+		"https://github.com/usgs/nshmp-haz/wiki/Hazard-Calculations";
+
+	static final String USAGE = new StringBuilder()
+		.append("HazardMap usage:").append(NEWLINE)
+		.append("  ").append(USAGE_COMMAND).append(NEWLINE)
+		.append(NEWLINE)
+		.append("Where:").append(NEWLINE)
+		.append("  'model' is a model zip file or directory").append(NEWLINE)
+		.append("  'lon1 lat1 lon2 lat2' are opposite corners of the map").append(NEWLINE)
+		.append("  'spacing' is the node spacing, in decimal degrees").append(NEWLINE)
+		.append("  'vs30' is the site vs30 to use at every node").append(NEWLINE)
+		.append("  'config' supplies a calculation configuration; use the 'map'")
+		.append(" settings to enable adaptive refinement").append(NEWLINE)
+		.append(NEWLINE)
+		.append("For more information, see:").append(NEWLINE)
+		.append("  ").append(USAGE_URL1).append(NEWLINE)
+		.append("  ").append(USAGE_URL2).append(NEWLINE)
+		.toString();
 }
@@ -0,0 +1,570 @@
+package org.opensha2.programs;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.opensha2.util.TextUtils.NEWLINE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.opensha2.calc.CalcConfig;
+import org.opensha2.calc.CalcConfig.ServiceData;
+import org.opensha2.calc.Calcs;
+import org.opensha2.calc.HazardResult;
+import org.opensha2.calc.PreparedCalc;
+import org.opensha2.calc.Site;
+import org.opensha2.data.ArrayXY_Sequence;
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.gmm.Imt;
+import org.opensha2.mfd.Mfds;
+import org.opensha2.util.Logging;
+import org.opensha2.util.Parsing;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Doubles;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A lightweight HTTP service that computes hazard curves at individual sites
+ * on request, built on the JDK's {@code com.sun.net.httpserver}. A service
+ * holds a single loaded {@link HazardModel}; calculations for each requested
+ * set of {@link Imt}s are {@link PreparedCalc prepared} once and shared by all
+ * requests for that set.
+ *
+ * <p>Hazard curves are requested with {@code GET /hazard?lon=&lat=[&vs30=]
+ * [&imt=]}, where {@code imt} is a comma-delimited list of {@code Imt}s that
+ * must be a subset of the {@code Imt}s of the service configuration (the
+ * default). Sites are located at the nearest multiple of the configured
+ * {@link ServiceData#siteRounding site rounding}. Responses are JSON objects
+ * containing the site and, for each {@code Imt}, the intensity measure levels
+ * and their Poisson probabilities of exceedance in one year. {@code GET
+ * /status} returns request, cache, and queue statistics.</p>
+ *
+ * <p>Requests are answered from an LRU cache of results keyed by rounded site
+ * location, Vs30, and {@code Imt} set when possible. Concurrent requests for
+ * a result that is not cached are coalesced, such that the result is computed
+ * once and returned to all of them. At most
+ * {@link ServiceData#threads threads} results are computed at a time, at most
+ * {@link ServiceData#queueSize queueSize} further computations wait for a
+ * thread, and requests that would exceed the queue are rejected immediately
+ * with status 503. Requests that are not answered within the configured
+ * {@link ServiceData#timeout timeout}, including any time spent in the queue,
+ * fail with status 504; the computation of a result that has timed out
+ * continues, and the result is cached once available. Request handlers do not
+ * block while results are computed.</p>
+ *
+ * @author Peter Powers
+ */
+public class HazardService {
+
+	private static final String HAZARD_PATH = "/hazard";
+	private static final String STATUS_PATH = "/status";
+
+	private static final String LON_KEY = "lon";
+	private static final String LAT_KEY = "lat";
+	private static final String VS30_KEY = "vs30";
+	private static final String IMT_KEY = "imt";
+
+	private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+	private static final int HANDLER_THREADS = 2;
+	private static final int PREPARED_CALC_CACHE_SIZE = 8;
+
+	private final HazardModel model;
+	private final CalcConfig config;
+	private final ServiceData settings;
+	private final Logger log;
+
+	private final LoadingCache<Set<Imt>, PreparedCalc> calcs;
+	private final Cache<Key, byte[]> results;
+	private final ConcurrentMap<Key, ListenableFuture<byte[]>> inFlight;
+
+	private final ThreadPoolExecutor requestExecutor;
+	private final ExecutorService calcExecutor;
+	private final ExecutorService handlerExecutor;
+	private final ScheduledExecutorService timer;
+	private final HttpServer server;
+
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private HazardService(HazardModel model, CalcConfig config, Logger log) throws IOException {
+		this.model = model;
+		this.config = config;
+		this.settings = config.serviceData();
+		this.log = log;
+
+		checkArgument(settings.threads > 0, "Service threads [%s] must be positive",
+			settings.threads);
+		checkArgument(settings.queueSize > 0, "Service queue size [%s] must be positive",
+			settings.queueSize);
+		checkArgument(settings.timeout > 0.0, "Service timeout [%s] must be positive",
+			settings.timeout);
+		checkArgument(settings.siteRounding > 0.0, "Service site rounding [%s] must be positive",
+			settings.siteRounding);
+
+		calcs = CacheBuilder.newBuilder()
+			.maximumSize(PREPARED_CALC_CACHE_SIZE)
+			.build(new CacheLoader<Set<Imt>, PreparedCalc>() {
+				@Override public PreparedCalc load(Set<Imt> imts) {
+					return prepare(imts);
+				}
+			});
+		// a single segment makes eviction strictly least-recently-used
+		results = CacheBuilder.newBuilder()
+			.maximumSize(settings.cacheSize)
+			.concurrencyLevel(1)
+			.build();
+		inFlight = new ConcurrentHashMap<>();
+
+		requestExecutor = new ThreadPoolExecutor(settings.threads, settings.threads, 0L,
+			MILLISECONDS, new ArrayBlockingQueue<Runnable>(settings.queueSize));
+		calcExecutor = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		handlerExecutor = Executors.newFixedThreadPool(HANDLER_THREADS);
+		// remove cancelled timeouts, and their exchanges, from the queue
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+		timer.setRemoveOnCancelPolicy(true);
+		this.timer = timer;
+
+		server = HttpServer.create(new InetSocketAddress(settings.port), 0);
+		server.createContext(HAZARD_PATH, new HazardHandler());
+		server.createContext(STATUS_PATH, new StatusHandler());
+		server.setExecutor(handlerExecutor);
+	}
+
+	/**
+	 * Entry point for a hazard service.
+	 *
+	 * <p>Starting a service requires 1 or 2 arguments. At a minimum, the path
+	 * to a model zip file or directory must be specified. The path to a file
+	 * with calculation configuration, including {@link ServiceData service
+	 * settings}, may also be supplied; any settings in this file override
+	 * those included with the model. Per-rupture ground motions are never
+	 * retained by a service. The service runs until the JVM is shut down.</p>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		String status = run(args);
+		if (status != null) System.err.print(status);
+	}
+
+	static String run(String[] args) {
+		int argCount = args.length;
+
+		if (argCount < 1 || argCount > 2) {
+			return USAGE;
+		}
+
+		Logging.init();
+		Logger log = Logger.getLogger(HazardService.class.getName());
+
+		try {
+			log.info("Hazard service: init...");
+			Path modelPath = Paths.get(args[0]);
+			HazardModel model = HazardModel.load(modelPath);
+
+			CalcConfig.Builder configBuilder = CalcConfig.builder().copy(model.config());
+			if (argCount > 1) configBuilder.extend(CalcConfig.builder(Paths.get(args[1])));
+			CalcConfig config = configBuilder.retainGroundMotions(false).build();
+			log.info(config.toString());
+
+			final HazardService service = create(model, config);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override public void run() {
+					service.stop();
+				}
+			});
+			service.start();
+			return null;
+
+		} catch (Exception e) {
+			return new StringBuilder()
+				.append(NEWLINE)
+				.append("Hazard Service: error").append(NEWLINE)
+				.append("   Arguments: ").append(Arrays.toString(args)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(Throwables.getStackTraceAsString(e)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(USAGE)
+				.toString();
+		}
+	}
+
+	/**
+	 * Create a new hazard service for a model and configuration. The service
+	 * is bound to the configured port but does not accept requests until it
+	 * is {@link #start() started}.
+	 *
+	 * @param model to use
+	 * @param config calculation and service configuration
+	 * @throws IOException if the service can not be bound to its port
+	 */
+	public static HazardService create(HazardModel model, CalcConfig config) throws IOException {
+		return new HazardService(model, config, Logger.getLogger(HazardService.class.getName()));
+	}
+
+	/**
+	 * Start accepting requests.
+	 */
+	public void start() {
+		server.start();
+		log.info("Hazard service: " + model.name() + " listening on port " +
+			server.getAddress().getPort());
+	}
+
+	/**
+	 * Stop accepting requests, and shut down once all current exchanges have
+	 * completed or one second has elapsed.
+	 */
+	public void stop() {
+		server.stop(1);
+		handlerExecutor.shutdown();
+		requestExecutor.shutdownNow();
+		calcExecutor.shutdownNow();
+		timer.shutdownNow();
+		log.info("Hazard service: stopped");
+	}
+
+	/* Prepare a calculation for a subset of the configured Imts. */
+	private PreparedCalc prepare(Set<Imt> imts) {
+		CalcConfig imtConfig = imts.equals(config.imts()) ? config :
+			CalcConfig.builder().copy(config).imts(imts).build();
+		return PreparedCalc.create(model, imtConfig);
+	}
+
+	/*
+	 * Cache key: a site location as indices of the rounding grid, Vs30, and a
+	 * set of Imts.
+	 */
+	private static final class Key {
+
+		final long lonIndex;
+		final long latIndex;
+		final double vs30;
+		final Set<Imt> imts;
+
+		Key(long lonIndex, long latIndex, double vs30, Set<Imt> imts) {
+			this.lonIndex = lonIndex;
+			this.latIndex = latIndex;
+			this.vs30 = vs30;
+			this.imts = imts;
+		}
+
+		@Override public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key that = (Key) obj;
+			return lonIndex == that.lonIndex && latIndex == that.latIndex &&
+				Double.compare(vs30, that.vs30) == 0 && imts.equals(that.imts);
+		}
+
+		@Override public int hashCode() {
+			return Objects.hash(lonIndex, latIndex, vs30, imts);
+		}
+	}
+
+	/* A request for hazard at a site. */
+	private final class Request {
+
+		final Key key;
+		final Site site;
+
+		Request(Map<String, String> params) {
+			checkArgument(params.containsKey(LON_KEY) && params.containsKey(LAT_KEY),
+				"Parameters '%s' and '%s' are required", LON_KEY, LAT_KEY);
+			double rounding = settings.siteRounding;
+			long lonIndex = Math.round(Double.parseDouble(params.get(LON_KEY)) / rounding);
+			long latIndex = Math.round(Double.parseDouble(params.get(LAT_KEY)) / rounding);
+
+			Site.Builder siteBuilder = Site.builder()
+				.location(latIndex * rounding, lonIndex * rounding);
+			if (params.containsKey(VS30_KEY)) {
+				siteBuilder.vs30(Double.parseDouble(params.get(VS30_KEY)));
+			}
+			site = siteBuilder.build();
+
+			Set<Imt> imts = config.imts();
+			if (params.containsKey(IMT_KEY)) {
+				Set<Imt> requested = EnumSet.noneOf(Imt.class);
+				for (String imt : Splitter.on(',').trimResults().omitEmptyStrings()
+					.split(params.get(IMT_KEY))) {
+					requested.add(Imt.valueOf(imt));
+				}
+				checkArgument(!requested.isEmpty(), "No IMTs requested");
+				checkArgument(config.imts().containsAll(requested),
+					"IMTs %s not supported by service", Sets.difference(requested, config.imts()));
+				imts = Sets.immutableEnumSet(requested);
+			}
+			key = new Key(lonIndex, latIndex, site.vs30, imts);
+		}
+	}
+
+	/* Computes and serializes the result of a request. */
+	private final class Calculation implements Callable<byte[]> {
+
+		private final Request request;
+
+		Calculation(Request request) {
+			this.request = request;
+		}
+
+		@Override public byte[] call() throws InterruptedException, ExecutionException {
+			PreparedCalc calc = calcs.getUnchecked(request.key.imts);
+			HazardResult result = Calcs.hazardCurve(calc, request.site, calcExecutor);
+			return toJson(config, request.site, result).getBytes(UTF_8);
+		}
+	}
+
+	private final class HazardHandler implements HttpHandler {
+
+		@Override public void handle(HttpExchange exchange) throws IOException {
+			requestCount.incrementAndGet();
+			if (!exchange.getRequestMethod().equals("GET")) {
+				send(exchange, 405, error("Method not allowed"));
+				return;
+			}
+
+			Request request;
+			try {
+				request = new Request(parseQuery(exchange.getRequestURI().getRawQuery()));
+			} catch (IllegalArgumentException iae) {
+				send(exchange, 400, error(iae.getMessage()));
+				return;
+			}
+
+			byte[] cached = results.getIfPresent(request.key);
+			if (cached != null) {
+				hitCount.incrementAndGet();
+				send(exchange, 200, cached);
+				return;
+			}
+
+			ListenableFuture<byte[]> result;
+			try {
+				result = submit(request);
+			} catch (RejectedExecutionException ree) {
+				rejectedCount.incrementAndGet();
+				send(exchange, 503, error("Service busy"));
+				return;
+			}
+			respond(exchange, result);
+		}
+	}
+
+	/*
+	 * Return the pending result of a request, joining an identical request in
+	 * flight if possible.
+	 */
+	private ListenableFuture<byte[]> submit(Request request) {
+		final Key key = request.key;
+		final ListenableFutureTask<byte[]> task = ListenableFutureTask.create(
+			new Calculation(request));
+		ListenableFuture<byte[]> pending = inFlight.putIfAbsent(key, task);
+		if (pending != null) {
+			coalescedCount.incrementAndGet();
+			return pending;
+		}
+		// cache before removal so that results are always found in one or other
+		task.addListener(new Runnable() {
+			@Override public void run() {
+				try {
+					results.put(key, Futures.getUnchecked(task));
+				} catch (RuntimeException e) {
+					// failures are reported to each waiting request
+				} finally {
+					inFlight.remove(key, task);
+				}
+			}
+		}, MoreExecutors.directExecutor());
+		try {
+			requestExecutor.execute(task);
+		} catch (RejectedExecutionException ree) {
+			inFlight.remove(key, task);
+			throw ree;
+		}
+		return task;
+	}
+
+	/*
+	 * Send a result once available, or a timeout error if the result is not
+	 * available in time, whichever comes first.
+	 */
+	private void respond(final HttpExchange exchange, ListenableFuture<byte[]> result) {
+		final AtomicBoolean responded = new AtomicBoolean();
+		final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+			@Override public void run() {
+				if (responded.compareAndSet(false, true)) {
+					timeoutCount.incrementAndGet();
+					send(exchange, 504, error("Request timed out"));
+				}
+			}
+		}, (long) (settings.timeout * 1000), MILLISECONDS);
+
+		Futures.addCallback(result, new FutureCallback<byte[]>() {
+			@Override public void onSuccess(byte[] json) {
+				if (responded.compareAndSet(false, true)) {
+					timeout.cancel(false);
+					send(exchange, 200, json);
+				}
+			}
+
+			@Override public void onFailure(Throwable t) {
+				if (responded.compareAndSet(false, true)) {
+					timeout.cancel(false);
+					log.log(Level.WARNING, "Hazard service: calculation failed", t);
+					send(exchange, 500, error(String.valueOf(t.getMessage())));
+				}
+			}
+		}, handlerExecutor);
+	}
+
+	private final class StatusHandler implements HttpHandler {
+
+		@Override public void handle(HttpExchange exchange) throws IOException {
+			Map<String, Object> status = new HashMap<>();
+			status.put("model", model.name());
+			status.put("requests", requestCount.get());
+			status.put("cacheHits", hitCount.get());
+			status.put("coalesced", coalescedCount.get());
+			status.put("rejected", rejectedCount.get());
+			status.put("timeouts", timeoutCount.get());
+			status.put("cacheSize", results.size());
+			status.put("inFlight", inFlight.size());
+			status.put("queued", requestExecutor.getQueue().size());
+			send(exchange, 200, Parsing.GSON.toJson(status).getBytes(UTF_8));
+		}
+	}
+
+	/* Send a response and close the exchange, logging any failure. */
+	private void send(HttpExchange exchange, int code, byte[] body) {
+		try {
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			exchange.sendResponseHeaders(code, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} catch (IOException ioe) {
+			log.log(Level.FINE, "Hazard service: response failed", ioe);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] error(String message) {
+		Map<String, String> error = new HashMap<>();
+		error.put("status", "error");
+		error.put("message", message);
+		return Parsing.GSON.toJson(error).getBytes(UTF_8);
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> params = new HashMap<>();
+		if (query == null) return params;
+		try {
+			for (String param : Splitter.on('&').omitEmptyStrings().split(query)) {
+				List<String> pair = Splitter.on('=').limit(2).splitToList(param);
+				checkArgument(pair.size() == 2, "Invalid parameter [%s]", param);
+				params.put(URLDecoder.decode(pair.get(0), UTF_8.name()),
+					URLDecoder.decode(pair.get(1), UTF_8.name()));
+			}
+		} catch (IOException ioe) {
+			throw new IllegalArgumentException(ioe);
+		}
+		return params;
+	}
+
+	/* Response content. */
+	private static final class Response {
+		final String status = "success";
+		final Map<String, Double> site = new HashMap<>();
+		final List<Curve> curves = new ArrayList<>();
+	}
+
+	private static final class Curve {
+		String imt;
+		double[] imls;
+		double[] probabilities;
+	}
+
+	private static String toJson(CalcConfig config, Site site, HazardResult result) {
+		Response response = new Response();
+		response.site.put(LON_KEY, site.location.lon());
+		response.site.put(LAT_KEY, site.location.lat());
+		response.site.put(VS30_KEY, site.vs30);
+		for (Entry<Imt, ArrayXY_Sequence> entry : result.curves().entrySet()) {
+			Curve curve = new Curve();
+			curve.imt = entry.getKey().name();
+			curve.imls = Doubles.toArray(config.modelCurve(entry.getKey()).xValues());
+			curve.probabilities = new double[curve.imls.length];
+			int i = 0;
+			for (double rate : entry.getValue().yValues()) {
+				curve.probabilities[i++] = Mfds.rateToProb(rate, 1.0);
+			}
+			response.curves.add(curve);
+		}
+		return Parsing.GSON.toJson(response);
+	}
+
+	private static final String USAGE_COMMAND =
+		"java -cp nshmp-haz.jar org.opensha2.programs.HazardService model [config]";
+
+	static final String USAGE = new StringBuilder()
+		.append("HazardService usage:").append(NEWLINE)
+		.append("  ").append(USAGE_COMMAND).append(NEWLINE)
+		.append(NEWLINE)
+		.append("Where:").append(NEWLINE)
+		.append("  'model' is a model zip file or directory").append(NEWLINE)
+		.append("  'config' supplies a calculation and service configuration").append(NEWLINE)
+		.append(NEWLINE)
+		.append("Requests:").append(NEWLINE)
+		.append("  GET /hazard?lon=&lat=[&vs30=][&imt=PGA,SA1P0,...]").append(NEWLINE)
+		.append("  GET /status").append(NEWLINE)
+		.toString();
+}
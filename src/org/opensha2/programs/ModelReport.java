@@ -0,0 +1,88 @@
+package org.opensha2.programs;
+
+import static org.opensha2.util.TextUtils.NEWLINE;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.eq.model.ModelFootprint;
+import org.opensha2.util.Logging;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+
+/**
+ * Entry point for summarizing the estimated memory footprint and rupture
+ * cardinality of a {@link HazardModel} by {@code SourceSet}. Use the results to
+ * guide heap sizing, model subsetting, and surface spacing choices.
+ *
+ * @author Peter Powers
+ * @see ModelFootprint
+ */
+public class ModelReport {
+
+	/**
+	 * Entry point for a model report. Requires a single argument: the path to a
+	 * model zip file or directory. The report is logged on completion.
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		String status = run(args);
+		if (status != null) System.err.print(status);
+	}
+
+	static String run(String[] args) {
+		if (args.length != 1) return USAGE;
+
+		Logging.init();
+		Logger log = Logger.getLogger(ModelReport.class.getName());
+
+		try {
+			Runtime runtime = Runtime.getRuntime();
+			System.gc();
+			long heapStart = runtime.totalMemory() - runtime.freeMemory();
+			Stopwatch watch = Stopwatch.createStarted();
+			Path modelPath = Paths.get(args[0]);
+			HazardModel model = HazardModel.load(modelPath);
+			log.info("Model load time: " + watch);
+
+			ModelFootprint footprint = ModelFootprint.create(model);
+			log.info(NEWLINE + footprint);
+
+			System.gc();
+			long heapEnd = runtime.totalMemory() - runtime.freeMemory();
+			log.info(String.format("Observed heap change: %.2f MB",
+				(heapEnd - heapStart) / (1024.0 * 1024.0)));
+			return null;
+
+		} catch (Exception e) {
+			return new StringBuilder()
+				.append(NEWLINE)
+				.append("Model Report: error").append(NEWLINE)
+				.append("   Arguments: ").append(Arrays.toString(args)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(Throwables.getStackTraceAsString(e)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(USAGE)
+				.toString();
+		}
+	}
+
+	private static final String USAGE_COMMAND = "java -cp nshmp-haz.jar org.opensha2.programs.ModelReport model";
+	private static final String USAGE_URL = "https://github.com/usgs/nshmp-haz/wiki/Earthquake-Source-Models";
+
+	static final String USAGE = new StringBuilder()
+		.append("ModelReport usage:").append(NEWLINE)
+		.append("  ").append(USAGE_COMMAND).append(NEWLINE)
+		.append(NEWLINE)
+		.append("Where:").append(NEWLINE)
+		.append("  'model' is a model zip file or directory").append(NEWLINE)
+		.append(NEWLINE)
+		.append("For more information, see:").append(NEWLINE)
+		.append("  ").append(USAGE_URL).append(NEWLINE)
+		.toString();
+}
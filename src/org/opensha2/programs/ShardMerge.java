@@ -0,0 +1,258 @@
+package org.opensha2.programs;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.opensha2.util.TextUtils.NEWLINE;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.opensha2.calc.SiteShard;
+import org.opensha2.calc.SiteShard.Partition;
+import org.opensha2.util.Logging;
+import org.opensha2.util.Parsing;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+
+/**
+ * Entry point for merging the results of a sharded hazard curve calculation.
+ * When {@link HazardCurve} is run with a {@link SiteShard shard} argument, it
+ * writes results for the sites of that shard to a {@code shard-<index>}
+ * subdirectory of its results directory, along with a manifest that is
+ * written once all results are complete. This program combines the result
+ * files of all shards into files with the same names, and with sites in the
+ * order in which they were originally supplied.
+ *
+ * <p>Merging is line-oriented and streaming; only one line of each shard file
+ * is held in memory at a time. Before and during merging, the shards are
+ * verified to be complete: every shard must have a manifest, all manifests
+ * must agree on the shard count, partitioning scheme, and total number of
+ * sites, every shard must contain the expected number of sites, and every
+ * result file must have the same header and exactly one line per site in
+ * every shard. Merged files are written to temporary files that replace any
+ * existing files of the same name only once merging succeeds.</p>
+ *
+ * @author Peter Powers
+ */
+public class ShardMerge {
+
+	static final String SHARD_DIR_PREFIX = "shard-";
+	static final String MANIFEST_FILE = "shard.json";
+
+	private static final String RESULT_FILE_GLOB = "*.csv";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * Entry point for merging sharded results.
+	 *
+	 * <p>Merging requires 1 or 2 arguments: the directory containing the
+	 * {@code shard-<index>} subdirectories of each shard and, optionally, the
+	 * directory to write merged results to. If no output directory is
+	 * specified, merged results are written to the shard directory.</p>
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		String status = run(args);
+		if (status != null) System.err.print(status);
+	}
+
+	static String run(String[] args) {
+		int argCount = args.length;
+
+		if (argCount < 1 || argCount > 2) {
+			return USAGE;
+		}
+
+		Logging.init();
+		Logger log = Logger.getLogger(ShardMerge.class.getName());
+
+		try {
+			Path dir = Paths.get(args[0]);
+			Path out = (argCount > 1) ? Paths.get(args[1]) : dir;
+			Files.createDirectories(out);
+			merge(dir, out, log);
+			return null;
+
+		} catch (Exception e) {
+			return new StringBuilder()
+				.append(NEWLINE)
+				.append("Shard Merge: error").append(NEWLINE)
+				.append("   Arguments: ").append(Arrays.toString(args)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(Throwables.getStackTraceAsString(e)).append(NEWLINE)
+				.append(NEWLINE)
+				.append(USAGE)
+				.toString();
+		}
+	}
+
+	/*
+	 * Verify and merge the results of every shard in dir to out.
+	 */
+	private static void merge(Path dir, Path out, Logger log) throws IOException {
+		Stopwatch watch = Stopwatch.createStarted();
+
+		Manifest first = readManifest(dir.resolve(SHARD_DIR_PREFIX + 0));
+		int count = first.count;
+		int size = first.size;
+		Partition partition = Partition.valueOf(first.partition);
+		log.info("Shard merge: " + count + " shards, " + size + " sites, " +
+			partition.name().toLowerCase() + " partitioning");
+
+		Path[] shardDirs = new Path[count];
+		Set<String> files = new TreeSet<>();
+		for (int i = 0; i < count; i++) {
+			shardDirs[i] = dir.resolve(SHARD_DIR_PREFIX + i);
+			Manifest manifest = (i == 0) ? first : readManifest(shardDirs[i]);
+			checkState(manifest.index == i, "Shard [%s] manifest has index %s", i,
+				manifest.index);
+			checkState(manifest.count == count && manifest.size == size &&
+				Partition.valueOf(manifest.partition) == partition,
+				"Shard [%s] manifest is inconsistent with shard 0", i);
+			int expected = SiteShard.create(i, count, partition).size(size);
+			checkState(manifest.shardSize == expected,
+				"Shard [%s] has %s sites; expected %s", i, manifest.shardSize, expected);
+			files.addAll(resultFiles(shardDirs[i]));
+		}
+
+		for (String file : files) {
+			merge(shardDirs, file, out.resolve(file), partition, size);
+			log.info("       merged: " + file);
+		}
+		log.info("Shard merge: " + files.size() + " files complete " + watch);
+	}
+
+	/*
+	 * Merge one result file. Shards with no sites have no result files.
+	 */
+	private static void merge(Path[] shardDirs, String file, Path target,
+			Partition partition, int size) throws IOException {
+
+		BufferedReader[] readers = new BufferedReader[shardDirs.length];
+		Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+		try {
+			interleave(shardDirs, file, temp, readers, partition, size);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		} finally {
+			for (Reader reader : readers) {
+				if (reader != null) reader.close();
+			}
+		}
+		Files.move(temp, target, REPLACE_EXISTING);
+	}
+
+	/* Interleave shard lines into temp in site order. */
+	private static void interleave(Path[] shardDirs, String file, Path temp,
+			BufferedReader[] readers, Partition partition, int size) throws IOException {
+
+		int count = shardDirs.length;
+		try (BufferedWriter writer = Files.newBufferedWriter(temp, US_ASCII)) {
+			String header = null;
+			for (int i = 0; i < count; i++) {
+				Path shardFile = shardDirs[i].resolve(file);
+				if (Files.notExists(shardFile)) continue;
+				readers[i] = Files.newBufferedReader(shardFile, US_ASCII);
+				String shardHeader = readers[i].readLine();
+				if (header == null) header = shardHeader;
+				checkState(header != null && header.equals(shardHeader),
+					"Shard [%s] file [%s] header differs", i, file);
+			}
+			writeLine(writer, header);
+			for (int site = 0; site < size; site++) {
+				int owner = partition.owner(site, size, count);
+				checkState(readers[owner] != null, "Shard [%s] file [%s] is missing", owner,
+					file);
+				String line = readers[owner].readLine();
+				checkState(line != null, "Shard [%s] file [%s] ends before site %s", owner,
+					file, site);
+				writeLine(writer, line);
+			}
+			for (int i = 0; i < count; i++) {
+				checkState(readers[i] == null || readers[i].readLine() == null,
+					"Shard [%s] file [%s] has more lines than sites", i, file);
+			}
+		}
+	}
+
+	private static void writeLine(Writer writer, String line) throws IOException {
+		writer.write(line);
+		writer.write(NEWLINE);
+	}
+
+	private static List<String> resultFiles(Path dir) throws IOException {
+		List<String> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, RESULT_FILE_GLOB)) {
+			for (Path file : stream) {
+				files.add(file.getFileName().toString());
+			}
+		}
+		return files;
+	}
+
+	/*
+	 * The record of a completed shard: its index and the shard count,
+	 * partitioning scheme, total number of sites, and number of sites in the
+	 * shard.
+	 */
+	static final class Manifest {
+		int index;
+		int count;
+		String partition;
+		int size;
+		int shardSize;
+	}
+
+	/*
+	 * Write the manifest of a completed shard to dir.
+	 */
+	static void writeManifest(Path dir, SiteShard shard, int size) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.index = shard.index();
+		manifest.count = shard.count();
+		manifest.partition = shard.partition().name();
+		manifest.size = size;
+		manifest.shardSize = shard.size(size);
+		try (Writer writer = Files.newBufferedWriter(dir.resolve(MANIFEST_FILE), US_ASCII)) {
+			Parsing.GSON.toJson(manifest, writer);
+		}
+	}
+
+	private static Manifest readManifest(Path dir) throws IOException {
+		Path file = dir.resolve(MANIFEST_FILE);
+		checkState(Files.exists(file), "Shard [%s] is incomplete: no manifest", dir);
+		try (Reader reader = Files.newBufferedReader(file, US_ASCII)) {
+			return Parsing.GSON.fromJson(reader, Manifest.class);
+		}
+	}
+
+	private static final String USAGE_COMMAND =
+		"java -cp nshmp-haz.jar org.opensha2.programs.ShardMerge shards [output]";
+
+	static final String USAGE = new StringBuilder()
+		.append("ShardMerge usage:").append(NEWLINE)
+		.append("  ").append(USAGE_COMMAND).append(NEWLINE)
+		.append(NEWLINE)
+		.append("Where:").append(NEWLINE)
+		.append("  'shards' is a directory of shard-<index> result directories").append(NEWLINE)
+		.append("  'output' is the directory for merged results (default: 'shards')")
+		.append(NEWLINE)
+		.toString();
+}
@@ -674,6 +674,67 @@ public final class Parsing {
 		return Ints.asList(Ints.concat(Iterables.toArray(values, int[].class)));
 	}
 
+	/**
+	 * Set the bits of a new {@code BitSet} at the indices specified by a range
+	 * string of the form created by {@link #intListToRangeString}. This method
+	 * is functionally equivalent to
+	 * {@code DataUtils.indicesToBits(rangeStringToIntList(s), capacity)} but
+	 * scans the supplied string directly, avoiding intermediate strings and
+	 * boxed {@code Integer} collections; use when processing very large numbers
+	 * of index strings (e.g. fault system rupture definitions). Whitespace
+	 * around indices is ignored.
+	 * 
+	 * @param s the string to convert
+	 * @param capacity of returned {@code BitSet}
+	 * @throws IllegalArgumentException if {@code s} is empty or malformed, or
+	 *         if any index is outside the range {@code [0 capacity)}
+	 * @see #rangeStringToIntList(String)
+	 */
+	public static BitSet rangeStringToBits(String s, int capacity) {
+		checkArgument(capacity > 0, "BitSet capacity [%s] must be > 0", capacity);
+		BitSet bits = new BitSet(capacity);
+		int start = -1;
+		int value = -1;
+		boolean ended = false; // whitespace follows digits of value
+		for (int i = 0, len = s.length(); i <= len; i++) {
+			char c = (i == len) ? ',' : s.charAt(i);
+			if (c >= '0' && c <= '9') {
+				checkArgument(!ended, "Invalid range string: %s", s);
+				int digit = c - '0';
+				if (value < 0) {
+					value = digit;
+				} else {
+					checkArgument(value <= (Integer.MAX_VALUE - digit) / 10,
+						"Index out of range [0 %s): %s", capacity, s);
+					value = value * 10 + digit;
+				}
+			} else if (c == ':') {
+				checkArgument(value >= 0 && start < 0, "Invalid range string: %s", s);
+				start = value;
+				value = -1;
+				ended = false;
+			} else if (c == ',') {
+				checkArgument(value >= 0, "Invalid range string: %s", s);
+				checkArgument(value < capacity, "Index [%s] out of range [0 %s)", value, capacity);
+				if (start < 0) {
+					bits.set(value);
+				} else {
+					checkArgument(start < capacity, "Index [%s] out of range [0 %s)", start,
+						capacity);
+					bits.set(Math.min(start, value), Math.max(start, value) + 1);
+				}
+				start = -1;
+				value = -1;
+				ended = false;
+			} else if (Character.isWhitespace(c)) {
+				ended = value >= 0;
+			} else {
+				throw new IllegalArgumentException("Invalid range string: " + s);
+			}
+		}
+		return bits;
+	}
+
 	// internal use only - no argument checking
 	// writes 2-element int[]s as 'a:b' or just 'a' if a==b
 	private enum IntArrayToString implements Function<int[], String> {
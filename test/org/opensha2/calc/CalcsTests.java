@@ -0,0 +1,104 @@
+package org.opensha2.calc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.gmm.Imt;
+
+import com.google.common.io.Resources;
+
+@SuppressWarnings("javadoc")
+public final class CalcsTests {
+
+	/* Single vertical fault; see HazardMapTests. */
+	private static final String MODEL = "org/opensha2/programs/data/map-model";
+
+	/*
+	 * With upper truncation at 2 sigma and a lowest IML of 0.2 g, the fault
+	 * can not contribute to rock site curves at this longitude, but can at
+	 * soil sites.
+	 */
+	private static final String CONFIG = "{ " +
+		"\"exceedanceModel\": \"TRUNCATION_UPPER_ONLY\", " +
+		"\"truncationLevel\": 2.0, " +
+		"\"defaultImls\": [0.2, 0.3, 0.5, 0.7, 1.0], " +
+		"\"pruning\": { \"enabled\": true, \"tolerance\": 1e-20 } }";
+	private static final double LAT = 38.1;
+	private static final double LON = -121.46;
+
+	private static HazardModel model;
+	private static ExecutorService executor;
+
+	@BeforeClass public static void setUpBeforeClass() throws IOException, URISyntaxException {
+		URL url = Resources.getResource(MODEL);
+		model = HazardModel.load(Paths.get(url.toURI()));
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@AfterClass public static void tearDownAfterClass() {
+		executor.shutdown();
+	}
+
+	private static PreparedCalc prepare() throws IOException {
+		Path file = Files.createTempFile("config", ".json");
+		try {
+			Files.write(file, CONFIG.getBytes(UTF_8));
+			CalcConfig config = CalcConfig.builder()
+				.copy(model.config())
+				.extend(CalcConfig.builder(file))
+				.build();
+			return PreparedCalc.create(model, config);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/*
+	 * Curves for site variants computed together are identical to those
+	 * computed for each variant alone, including when pruning retains a
+	 * source for a later variant but not for the first.
+	 */
+	@Test public final void testVariantsWithPruning()
+			throws IOException, InterruptedException, ExecutionException {
+
+		PreparedCalc calc = prepare();
+		List<Site> sites = new ArrayList<>();
+		for (double vs30 : new double[] { 760.0, 260.0, 760.0 }) {
+			sites.add(Site.builder().location(LAT, LON).vs30(vs30).build());
+		}
+		List<HazardResult> expected = new ArrayList<>();
+		for (Site site : sites) {
+			expected.add(Calcs.hazardCurve(calc, site, executor));
+		}
+		assertEquals(0.0, rates(expected.get(0)).get(0), 0.0);
+		assertTrue(rates(expected.get(1)).get(0) > 0.0);
+
+		List<HazardResult> actual = Calcs.hazardCurves(calc, sites, executor);
+		assertEquals(sites.size(), actual.size());
+		for (int i = 0; i < sites.size(); i++) {
+			assertSame(sites.get(i), actual.get(i).site);
+			assertEquals(rates(expected.get(i)), rates(actual.get(i)));
+		}
+	}
+
+	private static List<Double> rates(HazardResult result) {
+		return result.curves().get(Imt.PGA).yValues();
+	}
+
+}
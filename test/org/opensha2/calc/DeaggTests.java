@@ -0,0 +1,158 @@
+package org.opensha2.calc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha2.data.ArrayXY_Sequence;
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.gmm.Imt;
+
+import com.google.common.io.Resources;
+
+/*
+ * Deaggregation of a synthetic model of parallel vertical faults, each with a
+ * single M6.5 rupture, east of a site. There are more faults than fit in one
+ * deaggregation chunk and all ruptures fall within the default bins.
+ */
+@SuppressWarnings("javadoc")
+public final class DeaggTests {
+
+	private static final String MODEL = "org/opensha2/programs/data/map-model";
+	private static final int FAULT_COUNT = 40;
+	private static final double FAULT_SPACING = 0.02;
+	private static final Site SITE = Site.builder().location(38.1, -121.9).build();
+	private static final double IML = 0.1;
+
+	private static Path dir;
+	private static ExecutorService executor;
+	private static HazardResult hazard;
+
+	@BeforeClass public static void setUpBeforeClass()
+			throws IOException, URISyntaxException, InterruptedException, ExecutionException {
+		dir = Files.createTempDirectory("deagg-model");
+		Path source = Paths.get(Resources.getResource(MODEL).toURI());
+		Files.copy(source.resolve("config.json"), dir.resolve("config.json"));
+		Path faults = Files.createDirectory(dir.resolve("Fault"));
+		Files.copy(source.resolve("Fault/gmm.xml"), faults.resolve("gmm.xml"));
+		Files.write(faults.resolve("source.xml"), sourceXml().getBytes(UTF_8));
+
+		HazardModel model = HazardModel.load(dir);
+		executor = Executors.newFixedThreadPool(4);
+		CalcConfig config = CalcConfig.builder()
+			.copy(model.config())
+			.retainGroundMotions(true)
+			.build();
+		hazard = Calcs.hazardCurve(PreparedCalc.create(model, config), SITE, executor);
+	}
+
+	@AfterClass public static void tearDownAfterClass() throws IOException {
+		executor.shutdown();
+		Files.delete(dir.resolve("Fault/source.xml"));
+		Files.delete(dir.resolve("Fault/gmm.xml"));
+		Files.delete(dir.resolve("Fault"));
+		Files.delete(dir.resolve("config.json"));
+		Files.delete(dir);
+	}
+
+	private static String sourceXml() {
+		StringBuilder sb = new StringBuilder()
+			.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+			.append("<FaultSourceSet id=\"-1\" name=\"Deagg Test\" weight=\"1.0\">\n")
+			.append("  <Settings>\n")
+			.append("    <SourceProperties ruptureScaling=\"PEER\"/>\n")
+			.append("  </Settings>\n");
+		for (int i = 0; i < FAULT_COUNT; i++) {
+			double lon = -121.8 + i * FAULT_SPACING;
+			sb.append("  <Source id=\"").append(i).append("\" name=\"Fault ").append(i)
+				.append("\">\n")
+				.append("    <IncrementalMfd floats=\"false\" m=\"6.5\" rate=\"0.001\" ")
+				.append("type=\"SINGLE\" weight=\"1.0\"/>\n")
+				.append("    <Geometry depth=\"0.0\" dip=\"90.0\" rake=\"0.0\" width=\"12.0\">\n")
+				.append("      <Trace>\n")
+				.append(String.format("%.5f,38.22480,0.00000\n", lon))
+				.append(String.format("%.5f,38.00000,0.00000\n", lon))
+				.append("</Trace>\n")
+				.append("    </Geometry>\n")
+				.append("  </Source>\n");
+		}
+		return sb.append("</FaultSourceSet>\n").toString();
+	}
+
+	/*
+	 * The contributions of every chunk are merged: the deaggregated rate is
+	 * that of the hazard curve and is fully binned, in the M6.5 bin and the
+	 * distance bins spanned by the faults, and the nearest fault contributes
+	 * most.
+	 */
+	@Test public final void testBinning() throws InterruptedException, ExecutionException {
+		Deagg deagg = Calcs.deaggregationAtIml(hazard, Imt.PGA, IML, executor);
+		double rate = deagg.targetRate();
+		assertTrue(rate > 0.0);
+		assertEquals(rate, deagg.totalRate(), rate * 1e-12);
+		assertEquals(6.5, deagg.mBar(), 1e-12);
+
+		double[][][] bins = deagg.binnedRates();
+		double binned = 0.0;
+		for (int i = 0; i < bins.length; i++) {
+			for (int j = 0; j < bins[i].length; j++) {
+				double mrRate = 0.0;
+				for (double binRate : bins[i][j]) {
+					mrRate += binRate;
+				}
+				// M6.5 is in bin 15; faults are 8.8 to 77 km from the site
+				assertEquals(i == 15 && j < 8, mrRate > 0.0);
+				binned += mrRate;
+			}
+		}
+		assertEquals(rate, binned, rate * 1e-12);
+
+		List<Deagg.Contributor> contributors = deagg.contributors();
+		assertEquals(10, contributors.size());
+		assertEquals("Fault 0", contributors.get(0).source());
+		for (int i = 1; i < contributors.size(); i++) {
+			assertTrue(contributors.get(i).rate() <= contributors.get(i - 1).rate());
+		}
+	}
+
+	/* Deaggregation at a rate recovers the IML at which the rate was taken. */
+	@Test public final void testAtRate() throws InterruptedException, ExecutionException {
+		Deagg expected = Calcs.deaggregationAtIml(hazard, Imt.PGA, IML, executor);
+		Deagg actual = Calcs.deaggregation(hazard, Imt.PGA, 1.0 / expected.targetRate(),
+			executor);
+		assertEquals(IML, actual.iml(), IML * 1e-9);
+		assertEquals(expected.totalRate(), actual.totalRate(), expected.totalRate() * 1e-8);
+	}
+
+	/*
+	 * Rates are interpolated in log space, and linearly where a rate is zero,
+	 * rather than returning NaN.
+	 */
+	@Test public final void testZeroRates() {
+		double[] xs = { Math.log(0.1), Math.log(0.2), Math.log(0.4), Math.log(0.8) };
+		double[] ys = { 1e-2, 1e-4, 0.0, 0.0 };
+		ArrayXY_Sequence curve = ArrayXY_Sequence.create(xs, ys);
+		double x01 = (xs[0] + xs[1]) / 2.0;
+		double x12 = (xs[1] + xs[2]) / 2.0;
+		double x23 = (xs[2] + xs[3]) / 2.0;
+		assertEquals(1e-3, Deagg.rateForLogIml(curve, x01), 1e-15);
+		assertEquals(5e-5, Deagg.rateForLogIml(curve, x12), 1e-15);
+		assertEquals(0.0, Deagg.rateForLogIml(curve, x23), 0.0);
+		assertEquals(x01, Deagg.logImlForRate(curve, 1e-3), 1e-12);
+		assertEquals(x12, Deagg.logImlForRate(curve, 5e-5), 1e-12);
+		assertEquals(xs[1], Deagg.logImlForRate(curve, 1e-4), 0.0);
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.opensha2.calc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.opensha2.calc.SiteShard.Partition;
+
+import com.google.common.collect.Lists;
+
+@SuppressWarnings("javadoc")
+public final class SiteShardTests {
+
+	private static final int[] SIZES = { 0, 1, 2, 3, 5, 7, 10, 16, 17, 31, 100, 101, 1000 };
+	private static final int[] COUNTS = { 1, 2, 3, 4, 7, 8, 16, 33, 200 };
+
+	private static List<Site> sites(int size) {
+		List<Site> sites = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			sites.add(Site.builder().name("site-" + i).build());
+		}
+		return sites;
+	}
+
+	/*
+	 * For every partition scheme and combination of site and shard counts,
+	 * including more shards than sites, owner(), size(int), contains(), and
+	 * sites() agree, and the sites of all shards are those supplied, each
+	 * exactly once, with shard sizes that differ by at most one.
+	 */
+	@Test public final void testPartition() {
+		for (Partition partition : Partition.values()) {
+			for (int size : SIZES) {
+				List<Site> sites = sites(size);
+				for (int count : COUNTS) {
+					String id = partition + " size=" + size + " count=" + count;
+					int[] owners = new int[size];
+					List<List<Site>> expected = new ArrayList<>();
+					for (int i = 0; i < count; i++) {
+						expected.add(new ArrayList<Site>());
+					}
+					for (int site = 0; site < size; site++) {
+						int owner = partition.owner(site, size, count);
+						assertTrue(id, owner >= 0 && owner < count);
+						owners[site] = owner;
+						expected.get(owner).add(sites.get(site));
+					}
+					int min = Integer.MAX_VALUE;
+					int max = 0;
+					for (int i = 0; i < count; i++) {
+						SiteShard shard = SiteShard.create(i, count, partition);
+						List<Site> actual = Lists.newArrayList(shard.sites(sites, size));
+						assertEquals(id, expected.get(i), actual);
+						assertEquals(id, actual.size(), shard.size(size));
+						for (int site = 0; site < size; site++) {
+							assertEquals(id, owners[site] == i, shard.contains(site, size));
+						}
+						min = Math.min(min, actual.size());
+						max = Math.max(max, actual.size());
+					}
+					assertTrue(id, max - min <= 1);
+				}
+			}
+		}
+	}
+
+	@Test public final void testContiguous() {
+		// each shard owns a single run of sites, in shard order
+		for (int size : SIZES) {
+			for (int count : COUNTS) {
+				int previous = 0;
+				for (int site = 0; site < size; site++) {
+					int owner = Partition.CONTIGUOUS.owner(site, size, count);
+					assertTrue(owner >= previous);
+					previous = owner;
+				}
+			}
+		}
+	}
+
+	@Test public final void testFromString() {
+		SiteShard shard = SiteShard.fromString("3/16");
+		assertEquals(3, shard.index());
+		assertEquals(16, shard.count());
+		assertEquals(Partition.CONTIGUOUS, shard.partition());
+		shard = SiteShard.fromString("15/16:strided");
+		assertEquals(15, shard.index());
+		assertEquals(Partition.STRIDED, shard.partition());
+		assertEquals("15/16:strided", shard.toString());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public final void testIndexOutOfRange() {
+		SiteShard.fromString("16/16");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public final void testInvalidCount() {
+		SiteShard.create(0, 0, Partition.CONTIGUOUS);
+	}
+
+}
@@ -0,0 +1,137 @@
+package org.opensha2.geo;
+
+import static org.junit.Assert.*;
+import static org.opensha2.geo.BorderType.MERCATOR_LINEAR;
+import static org.opensha2.geo.GriddedRegion.ANCHOR_0_0;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.opensha2.util.MathUtils;
+
+import com.google.common.collect.Lists;
+
+@SuppressWarnings("javadoc")
+public final class GriddedRegionTests {
+
+	private static final long SEED = 2016L;
+	private static final int POLYGON_COUNT = 300;
+
+	/*
+	 * Nodes are identified by scanline rasterization; check that they are the
+	 * same as those for which Region.contains(Location), and therefore
+	 * Area.contains(x, y), is true, in the same order.
+	 */
+	private static void checkNodes(GriddedRegion gr, Region region) {
+		List<Location> expected = new ArrayList<>();
+		if (!Double.isNaN(gr.minGridLat()) && !Double.isNaN(gr.minGridLon())) {
+			double[] lats = centers(gr.minGridLat(), gr.maxGridLat(), gr.latSpacing());
+			double[] lons = centers(gr.minGridLon(), gr.maxGridLon(), gr.lonSpacing());
+			for (double lat : lats) {
+				for (double lon : lons) {
+					Location loc = Location.create(lat, lon);
+					if (region.contains(loc)) expected.add(loc);
+				}
+			}
+		}
+		assertEquals(gr.name(), expected, Lists.newArrayList(gr.nodes()));
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(i, gr.indexForLocation(expected.get(i)));
+		}
+	}
+
+	/* Replicates GriddedRegion node center accumulation and rounding. */
+	private static double[] centers(double min, double max, double spacing) {
+		int count = (int) Math.round((max - min) / spacing) + 1;
+		double[] values = new double[count];
+		double value = min;
+		for (int i = 0; i < count; i++) {
+			values[i] = MathUtils.round(value, 8);
+			value += spacing;
+		}
+		return values;
+	}
+
+	/* Star-shaped, and usually concave, polygon about a center. */
+	private static LocationList randomPolygon(Random random, boolean convex) {
+		double lat = -60.0 + 120.0 * random.nextDouble();
+		double lon = -170.0 + 340.0 * random.nextDouble();
+		double radius = 0.2 + 4.0 * random.nextDouble();
+		int size = 3 + random.nextInt(convex ? 6 : 20);
+		double[] angles = new double[size];
+		for (int i = 0; i < size; i++) {
+			angles[i] = 2.0 * Math.PI * random.nextDouble();
+		}
+		Arrays.sort(angles);
+		List<Location> border = new ArrayList<>();
+		for (double angle : angles) {
+			double r = convex ? radius : radius * (0.2 + 0.8 * random.nextDouble());
+			border.add(Location.create(
+				lat + r * Math.sin(angle),
+				lon + r * Math.cos(angle)));
+		}
+		return LocationList.create(border);
+	}
+
+	@Test public final void testRandomPolygons() {
+		Random random = new Random(SEED);
+		for (int i = 0; i < POLYGON_COUNT; i++) {
+			LocationList border = randomPolygon(random, i % 3 == 0);
+			double spacing = 0.05 + 0.45 * random.nextDouble();
+			String name = "polygon-" + i;
+			Region region;
+			GriddedRegion gr;
+			try {
+				region = Regions.create(name, border, MERCATOR_LINEAR);
+				gr = Regions.createGridded(name, border, MERCATOR_LINEAR, spacing, spacing,
+					ANCHOR_0_0);
+			} catch (IllegalArgumentException iae) {
+				continue; // degenerate polygon
+			}
+			checkNodes(gr, region);
+		}
+	}
+
+	@Test public final void testCoincidentNodes() {
+		// border vertices and edges fall exactly on nodes
+		LocationList border = LocationList.create(
+			Location.create(32.0, -120.0),
+			Location.create(32.0, -116.0),
+			Location.create(35.0, -116.0),
+			Location.create(35.0, -118.0),
+			Location.create(34.0, -119.0),
+			Location.create(36.0, -120.0));
+		Region region = Regions.create("coincident", border, MERCATOR_LINEAR);
+		for (double spacing : new double[] { 0.1, 0.25, 0.5, 1.0 }) {
+			checkNodes(Regions.toGridded(region, spacing, spacing, ANCHOR_0_0), region);
+		}
+	}
+
+	@Test public final void testDonut() {
+		Region donut = Regions.createCircular("donut", Location.create(35.0, -118.0), 200.0);
+		Region hole = Regions.createCircular("hole", Location.create(35.2, -117.8), 60.0);
+		donut.addInterior(hole);
+		for (double spacing : new double[] { 0.02, 0.05, 0.1 }) {
+			GriddedRegion gr = Regions.toGridded(donut, spacing, spacing, ANCHOR_0_0);
+			checkNodes(gr, donut);
+		}
+	}
+
+	@Test public final void testBuffered() {
+		LocationList line = LocationList.create(
+			Location.create(34.0, -119.0),
+			Location.create(35.0, -118.0),
+			Location.create(34.5, -116.5),
+			Location.create(36.0, -115.0));
+		for (double buffer : new double[] { 5.0, 25.0, 80.0 }) {
+			Region region = Regions.createBuffered("buffered", line, buffer);
+			for (double spacing : new double[] { 0.05, 0.1 }) {
+				checkNodes(Regions.toGridded(region, spacing, spacing, ANCHOR_0_0), region);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,222 @@
+package org.opensha2.programs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opensha2.calc.CalcConfig;
+import org.opensha2.calc.PreparedCalc;
+import org.opensha2.calc.Results;
+import org.opensha2.calc.Site;
+import org.opensha2.eq.model.HazardModel;
+import org.opensha2.geo.Location;
+import org.opensha2.gmm.Imt;
+
+import com.google.common.base.Optional;
+import com.google.common.io.Resources;
+import com.google.common.primitives.Doubles;
+
+/*
+ * Adaptive map refinement over a smooth synthetic case: a single vertical
+ * fault with two characteristic magnitudes and untruncated ground motion
+ * variability, mapped on the east side of the fault where hazard decays
+ * smoothly with distance.
+ */
+@SuppressWarnings("javadoc")
+public final class HazardMapTests {
+
+	private static final String MODEL = "data/map-model";
+	private static final Location LOC1 = Location.create(37.8, -121.9);
+	private static final Location LOC2 = Location.create(38.6, -121.1);
+	private static final double SPACING = 0.05;
+	private static final int SIZE = 17; // rows and columns
+	private static final double TOLERANCE = 0.05;
+	private static final double[] RETURN_PERIODS = { 475.0, 975.0 };
+
+	private static HazardModel model;
+	private static ExecutorService executor;
+	private static HazardMap.Result full;
+
+	@BeforeClass public static void setUpBeforeClass() throws IOException, URISyntaxException {
+		URL url = Resources.getResource(HazardMapTests.class, MODEL);
+		model = HazardModel.load(Paths.get(url.toURI()));
+		executor = Executors.newSingleThreadExecutor();
+		full = map(0, TOLERANCE);
+	}
+
+	@AfterClass public static void tearDownAfterClass() {
+		executor.shutdown();
+	}
+
+	private static HazardMap.Result map(int levels, double tolerance) throws IOException {
+		Path file = Files.createTempFile("config", ".json");
+		try {
+			String json = "{ \"map\": { " +
+				"\"refinementLevels\": " + levels + ", " +
+				"\"tolerance\": " + tolerance + ", " +
+				"\"returnPeriods\": " + Doubles.asList(RETURN_PERIODS) + " } }";
+			Files.write(file, json.getBytes(UTF_8));
+			CalcConfig config = CalcConfig.builder()
+				.copy(model.config())
+				.extend(CalcConfig.builder(file))
+				.retainGroundMotions(false)
+				.build();
+			Site template = Site.builder().vs30(760.0).build();
+			return HazardMap.calc(PreparedCalc.create(model, config), LOC1, LOC2, SPACING,
+				template, Optional.<Executor> of(executor));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<Double> rates(HazardMap.Result map, Imt imt, int index) {
+		return map.curve(imt, index).yValues();
+	}
+
+	private static double logImlAtRate(HazardMap.Result map, Imt imt, int index, double rate) {
+		List<Double> imls = map.curve(imt, index).xValues();
+		List<Double> rates = map.curve(imt, index).yValues();
+		double iml = Results.imlAtRate(Doubles.toArray(imls), Doubles.toArray(rates), rate);
+		return Math.log(Math.max(iml, imls.get(0)));
+	}
+
+	@Test public final void testUnrefined() {
+		assertEquals(SIZE * SIZE, full.size());
+		assertEquals(full.size(), full.computedCount());
+	}
+
+	/*
+	 * Refined maps have the same grid; computed curves are identical to those
+	 * of the unrefined map, and interpolated ground motions agree to within a
+	 * small multiple of the tolerance, which applies only to test nodes. With
+	 * one level of refinement, every node is a corner or test node.
+	 */
+	@Test public final void testRefined() throws IOException {
+		for (int levels = 2; levels <= 4; levels++) {
+			HazardMap.Result map = map(levels, TOLERANCE);
+			assertEquals(full.size(), map.size());
+			assertTrue(map.computedCount() < map.size());
+			for (int index = 0; index < map.size(); index++) {
+				for (Imt imt : model.config().imts()) {
+					if (map.isComputed(index)) {
+						assertEquals(rates(full, imt, index), rates(map, imt, index));
+						continue;
+					}
+					for (double returnPeriod : RETURN_PERIODS) {
+						double expected = logImlAtRate(full, imt, index, 1.0 / returnPeriod);
+						double actual = logImlAtRate(map, imt, index, 1.0 / returnPeriod);
+						assertEquals(expected, actual, 2.0 * TOLERANCE);
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Coarse cells that fail are split; with a tolerance of zero, every cell
+	 * is split down to the target spacing and every node is computed.
+	 */
+	@Test public final void testSplitting() throws IOException {
+		HazardMap.Result coarse = map(2, Double.MAX_VALUE);
+		HazardMap.Result refined = map(2, TOLERANCE);
+		HazardMap.Result exact = map(2, 0.0);
+		assertTrue(coarse.computedCount() < refined.computedCount());
+		assertTrue(refined.computedCount() < exact.computedCount());
+		assertEquals(exact.size(), exact.computedCount());
+		for (int index = 0; index < exact.size(); index++) {
+			for (Imt imt : model.config().imts()) {
+				assertEquals(rates(full, imt, index), rates(exact, imt, index));
+			}
+		}
+	}
+
+	/*
+	 * Every interpolated node is filled from the smallest accepted cell that
+	 * contains it. Accepted cells are identified from computed nodes: a cell
+	 * was tested if and only if its center was computed, and the smallest
+	 * tested cell containing an interpolated node was accepted. The tolerance
+	 * is such that cells of more than one size are accepted, and some nodes
+	 * lie on edges shared by large and small cells.
+	 */
+	@Test public final void testFill() throws IOException {
+		int levels = 3;
+		HazardMap.Result map = map(levels, 0.2);
+		Imt imt = Imt.PGA;
+		Set<Integer> sizes = new TreeSet<>();
+		for (int index = 0; index < map.size(); index++) {
+			if (map.isComputed(index)) continue;
+			int row = index / SIZE;
+			int col = index % SIZE;
+			boolean tested = false;
+			boolean found = false;
+			for (int size = 2; size <= 1 << levels && !tested; size *= 2) {
+				for (int r : cellStarts(row, size)) {
+					for (int c : cellStarts(col, size)) {
+						if (!map.isComputed((r + size / 2) * SIZE + c + size / 2)) continue;
+						double[] expected = interpolate(map, imt, r, c, size,
+							(row - r) / (double) size, (col - c) / (double) size);
+						double[] actual = Doubles.toArray(rates(map, imt, index));
+						found |= equals(expected, actual);
+						tested = true;
+					}
+				}
+				if (tested) sizes.add(size);
+			}
+			assertTrue("Node " + row + "," + col, found);
+		}
+		assertTrue(sizes.toString(), sizes.size() > 1);
+	}
+
+	/* The starts of the aligned cells of a size that contain a node. */
+	private static List<Integer> cellStarts(int node, int size) {
+		List<Integer> starts = new ArrayList<>();
+		int start = (node / size) * size;
+		if (start + size < SIZE) starts.add(start);
+		if (start == node && start >= size) starts.add(start - size);
+		return starts;
+	}
+
+	/* Bilinear interpolation, in log space unless any corner rate is zero. */
+	private static double[] interpolate(HazardMap.Result map, Imt imt, int row, int col,
+			int size, double fr, double fc) {
+		double[] c00 = Doubles.toArray(rates(map, imt, row * SIZE + col));
+		double[] c01 = Doubles.toArray(rates(map, imt, row * SIZE + col + size));
+		double[] c10 = Doubles.toArray(rates(map, imt, (row + size) * SIZE + col));
+		double[] c11 = Doubles.toArray(rates(map, imt, (row + size) * SIZE + col + size));
+		double[] curve = new double[c00.length];
+		for (int i = 0; i < curve.length; i++) {
+			double[] corners = { c00[i], c01[i], c10[i], c11[i] };
+			double[] weights = { (1 - fr) * (1 - fc), (1 - fr) * fc, fr * (1 - fc), fr * fc };
+			boolean log = Doubles.min(corners) > 0.0;
+			for (int j = 0; j < 4; j++) {
+				curve[i] += weights[j] * (log ? Math.log(corners[j]) : corners[j]);
+			}
+			if (log) curve[i] = Math.exp(curve[i]);
+		}
+		return curve;
+	}
+
+	private static boolean equals(double[] expected, double[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			if (Math.abs(expected[i] - actual[i]) > 1e-12 * expected[i]) return false;
+		}
+		return true;
+	}
+
+}
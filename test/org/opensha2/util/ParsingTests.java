@@ -1,5 +1,17 @@
 package org.opensha2.util;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.opensha2.data.DataUtils;
+
 /**
  * Add comments here
  *
@@ -37,4 +49,86 @@ public class ParsingTests {
 //		// System.out.println(Arrays.toString(toDoubleArray(dds)));
 //	}
 //
+
+	private static final int CAPACITY = 2000;
+
+	/* The reference conversion that rangeStringToBits replaces. */
+	private static BitSet listBits(String s, int capacity) {
+		return DataUtils.indicesToBits(Parsing.rangeStringToIntList(s), capacity);
+	}
+
+	@Test public final void testRangeStringToBitsRandom() {
+		Random random = new Random(1234L);
+		for (int trial = 0; trial < 500; trial++) {
+			// runs of ascending and descending indices with gaps
+			List<Integer> indices = new ArrayList<>();
+			int next = random.nextInt(100);
+			int runs = 1 + random.nextInt(8);
+			for (int run = 0; run < runs && next < CAPACITY - 100; run++) {
+				int length = 1 + random.nextInt(20);
+				boolean descending = random.nextBoolean();
+				int first = descending ? next + length - 1 : next;
+				for (int i = 0; i < length; i++) {
+					indices.add(descending ? first - i : first + i);
+				}
+				next += length + 1 + random.nextInt(50);
+			}
+			String s = Parsing.intListToRangeString(indices);
+			assertEquals(s, listBits(s, CAPACITY), Parsing.rangeStringToBits(s, CAPACITY));
+			assertEquals(s, DataUtils.indicesToBits(indices, CAPACITY),
+				Parsing.rangeStringToBits(s, CAPACITY));
+		}
+	}
+
+	@Test public final void testRangeStringToBitsForms() {
+		String[] strings = {
+			"7", // single value
+			"0", // first index
+			"1999", // last index
+			"4:9", // ascending range
+			"19:16", // reversed range
+			"5:5", // degenerate range
+			"1:4,10,19:16", // mixed
+			"1:4,10,19:16,1000:1010",
+			" 1 : 4 , 10 ,\t19:16 ", // whitespace
+			"\n12\r\n" };
+		for (String s : strings) {
+			assertEquals(s, listBits(s, CAPACITY), Parsing.rangeStringToBits(s, CAPACITY));
+		}
+		BitSet expected = new BitSet();
+		expected.set(16, 20);
+		assertEquals(expected, Parsing.rangeStringToBits("19:16", CAPACITY));
+	}
+
+	@Test public final void testRangeStringToBitsMalformed() {
+		String[] strings = {
+			"", // empty
+			" ", // blank
+			",", // no values
+			"1,", // trailing comma
+			",1", // leading comma
+			"1,,2", // empty value
+			"1:", // open range
+			":4", // open range
+			"1:2:3", // too many bounds
+			"1 0", // split value
+			"1: 2 3", // split bound
+			"-1", // negative
+			"1-4", // wrong delimiter
+			"[1:4]", // brackets
+			"a", // non numeric
+			"2000", // out of range
+			"1:2000", // range end out of range
+			"2000:1", // range start out of range
+			"2147483648", // int overflow
+			"4294967297", // int overflow to in range index
+			"1:99999999999" }; // range end int overflow
+		for (String s : strings) {
+			try {
+				Parsing.rangeStringToBits(s, CAPACITY);
+				fail("Expected IllegalArgumentException for [" + s + "]");
+			} catch (IllegalArgumentException iae) {}
+		}
+	}
+
 }